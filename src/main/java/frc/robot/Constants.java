@@ -117,20 +117,97 @@ public final class Constants {
         // Assumes the encoders are on a 1:1 reduction with the module shaft.
         (2 * Math.PI) / (double) kEncoderCPR;
 
+    public static final double kTurningGearRatio = 150.0 / 7.0; // Mark 4i steering reduction
+    public static final double kTurningMotorRadiansPerRotation = 2 * Math.PI / kTurningGearRatio; // module radians per turning motor rotation
+
     public static final double kPModuleTurningController = 0.5;
 
+    // MODULE CONTROL ON THE SPARK MAXES
+    public static final boolean MODULE_ONBOARD_CONTROL = false; // run drive velocity and turning position loops on the SPARK MAXes at 1 kHz instead of the RIO; off until the gains below are tuned on the robot
+    public static final double DRIVE_VELOCITY_KP = 0.3; // duty cycle per m/s of wheel speed error, on top of the speed / kMaxSpeed feedforward; a starting point, tune on the robot
+    public static final double DRIVE_VELOCITY_KI = 0.0;
+    public static final double DRIVE_VELOCITY_KD = 0.0;
+    public static final double TURNING_POSITION_KP = kPModuleTurningController; // duty cycle per radian of module angle error
+    public static final double TURNING_POSITION_KI = 0.0;
+    public static final double TURNING_POSITION_KD = 0.0;
+
+    // CAN STATUS FRAMES (CanStatusFrameManager)
+    public static final double CAN_BIT_RATE = 1_000_000; // bits per second on the roboRIO's bus
+    public static final double CAN_CONTROL_PERIOD = 0.02; // seconds between setpoints the RIO sends each controller; the robot loop
+    public static final double CAN_UNUSED_FRAME_PERIOD = 0.5; // seconds between status frames nothing reads
+    public static final double CAN_FAULT_FRAME_PERIOD = 0.1; // seconds; longest status 0 period, so resets and faults are seen quickly
+
+    // SIMULATION CONSTANTS
+    // physics simulation (SwerveDriveSim); masses and inertias are estimates
+    public static final double SIM_PHYSICS_PERIOD = 0.001; // seconds; longest physics step
+    public static final double SIM_ROBOT_MASS = 50.0; // kg, with bumpers and battery
+    public static final double SIM_ROBOT_MOI = SIM_ROBOT_MASS * (0.8 * 0.8 + 0.8 * 0.8) / 12.0; // kg m^2; a uniform 0.8 m square
+    public static final double SIM_WHEEL_EFFECTIVE_MASS = 0.8; // kg; drive rotor and wheel inertia as felt at the tread
+    public static final double SIM_TURNING_INERTIA = 0.05; // kg m^2 about the steering axis; mostly the NEO's rotor through the steering gear
+    public static final double SIM_WHEEL_COF = 1.1; // tread on carpet; wheels slip past this times their share of the weight
+    public static final double SIM_SMART_CURRENT_LIMIT = 80.0; // amps; the SPARK MAX default, which the modules don't change
+    public static final double SIM_BATTERY_VOLTAGE = 12.5; // volts, resting, fully charged
+    public static final double SIM_BATTERY_RESISTANCE = 0.02; // ohms; battery, breaker and wiring
+
     public static final double kPModuleDriveController = 0;
 
     public static final int kDriverControllerPort = 0;
     public static final int kOperatorControllerPort = 1;
 
     // VISION CONSTANTS
-    public static double OBJECT_DETECTION_LATENCY = 0.217; // seconds
+    public static double OBJECT_DETECTION_LATENCY = 0.217; // seconds, used when a frame has no capture time
+    public static final double VISION_UNITS_PER_METER = INCHES_PER_METER; // MonsterVision reports inches
+    public static final boolean ODOMETRY_THREADED = true; // integrate odometry on its own thread instead of once per loop
+    public static final double ODOMETRY_PERIOD = 0.005; // seconds; 200 Hz, the NavX's update rate
+    public static final double ODOMETRY_STD_DEV = 0.1; // meters and radians; how far odometry is trusted against vision, WPILib's default
+    public static final int POSE_HISTORY_SIZE = 400; // odometry samples kept for latency compensation (2 s at 200 Hz)
+    public static final double VISION_DUPLICATE_DISTANCE = 6.0; // inches; closer same-class detections from two cameras are merged
+    public static final double VISION_STALE_SECONDS = 0.5; // cameras with no frame for this long are left out of the merge
     public static final double VISION_NOTE_CAM_TILT = Units.degreesToRadians(0);
     public static final double VISION_APRIL_TAG_PRO_TILT = Units.degreesToRadians(0);
+    public static final int VISION_FRAME_QUEUE_SIZE = 8; // frames kept per camera between loops
+    public static final boolean VISION_THREADED = true; // parse and index each camera's frames on its own thread
+    public static final double VISION_THREAD_PERIOD = 0.005; // seconds between checks for new frames on the vision threads
+    public static final double VISION_HEALTH_WINDOW = 1.0; // seconds over which vision frame rates are measured
+    public static final int VISION_PARSE_TIME_SAMPLES = 128; // recent parse times kept for percentiles
+    public static final int VISION_MAX_OBJECTS_PER_FRAME = 32; // detections past this are ignored
+    public static final double VISION_MIN_OBJECT_CONFIDENCE = 0.40; // label queries skip non-tag detections less confident than this
+    public static final double VISION_INDEX_CELL_SIZE = 0.5; // meters; grid cell of the per-frame spatial index
+    public static final int VISION_MAX_TRACKS = 48; // objects followed across frames at once
+    public static final double VISION_TRACK_GATE = 0.5; // meters; a detection farther than this from every track starts a new one
+    public static final int VISION_TRACK_MAX_MISSES = 5; // frames in a row a track can go unseen before it is dropped
+    public static final double VISION_TRACK_PROCESS_NOISE = 4.0; // (m/s^2)^2; how hard tracked objects can accelerate
+    public static final double VISION_TRACK_MEASUREMENT_NOISE = 0.05 * 0.05; // m^2; variance of one detection's position
+    public static final double VISION_TRACK_INITIAL_VELOCITY_VARIANCE = 4.0; // (m/s)^2; velocity uncertainty of a new track
+    public static final boolean VISION_POSE_FUSION_ENABLED = false; // correct the drivetrain pose with AprilTags; off until a layout for this robot's field is committed
+    public static final double VISION_TAG_STD_DEV_AT_1M = 0.1; // meters; grows with distance squared
+    public static final double VISION_TAG_THETA_STD_DEV = 1e6; // heading comes from the gyro, not from tags
+    public static final double VISION_TAG_MAX_DISTANCE = 4.0; // meters; farther tags are too noisy to use
+    public static final double VISION_TAG_MAX_ROTATION_RATE = 180.0; // degrees/s; tags seen while spinning faster are skipped
+    public static final String APRIL_TAG_LAYOUT_FILE = "apriltags/2024-crescendo.json"; // AprilTagFieldLayout JSON in the deploy directory; a placeholder, the FRC Crescendo field rather than ours, so tag poses and field bounds are wrong until it is replaced
+    public static final double VISION_TAG_FIELD_MARGIN = 0.5; // meters; solved poses farther off the field are rejected
+    public static final double VISION_TAG_MAX_POSE_JUMP = 1.0; // meters from the estimate before a tag is treated as an outlier
+    public static final int VISION_TAG_MAX_JUMP_REJECTS = 10; // outliers in a row before we believe vision over odometry
+    public static final boolean VISION_SIMULATOR_ENABLED = true; // in simulation, publish synthetic MonsterVision frames
+    public static final boolean VISION_RECORDING_ENABLED = false; // log every vision frame for post-match analysis; turn on for events worth replaying
+    public static final String VISION_LOG_DIRECTORY = "vision-logs"; // under the operating directory: /home/lvuser on the robot, the working directory on the desktop
+    public static final int VISION_RECORDER_QUEUE_SIZE = 64; // frames waiting for the log writer before some are dropped
+    public static final int VISION_LOG_SEGMENT_BYTES = 8 * 1024 * 1024; // size of each memory-mapped log file
+    public static final int VISION_LOG_MAX_SEGMENTS = 4; // oldest log files are deleted past this many; 32 MB of flash in all
 
     public static final int TARGET_TRIGGER_DISTANCE_APRIL_TAG = 0;
 
+    // DRIVE TO OBJECT CONSTANTS
+    public static final double VISION_SERVO_INTAKE_OFFSET = 0.45; // meters ahead of the robot's center where objects are picked up; the servo turns about this point
+    public static final double VISION_SERVO_MAX_SPEED = 2.0; // meters per second
+    public static final double VISION_SERVO_MAX_ACCELERATION = 3.0; // meters per second squared, used to slow down onto the object
+    public static final double VISION_SERVO_KP = 1.5; // (m/s) per meter of position error
+    public static final double VISION_SERVO_THETA_KP = 3.0; // (rad/s) per radian of heading error
+    public static final double VISION_SERVO_POSITION_TOLERANCE = 0.05; // meters from the object to be done
+    public static final double VISION_SERVO_ANGLE_TOLERANCE = Units.degreesToRadians(5);
+    public static final double VISION_SERVO_REACQUIRE_DISTANCE = 0.5; // meters; detections farther from the target are other objects
+    public static final double VISION_SERVO_ACQUIRE_TIMEOUT = 1.0; // seconds to wait for a first detection before giving up
+
     // AUTO CONSTANTS
     
     // AUTOMOVESWERVE CONSTANTS
@@ -4,13 +4,19 @@
 
 package frc.robot;
 
-import edu.wpi.first.apriltag.AprilTag;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
-import frc.robot.models.VisionObject;
+import frc.robot.models.CameraConfig;
+import frc.robot.models.VisionFrameFormat;
+import frc.robot.utils.CanStatusFrameManager;
+import frc.robot.utils.VisionSimulator;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -23,25 +29,17 @@ public class Robot extends TimedRobot {
 
   private RobotContainer m_robotContainer;
 
-  // for motion compensate (vision)
-  public static int circularBufferSize = 50;
-  public static int bufferSlotNumber = 0;
-  public static double[] time;
-  public static double[] angle;
-
   public SendableChooser<Command> m_autoChooser;
 
+  // stand-ins for the MonsterVision cameras, only in simulation
+  private final List<VisionSimulator> m_visionSimulators = new ArrayList<>();
+
   /**
    * This function is run when the robot is first started up and should be used for any
    * initialization code.
    */
   @Override
   public void robotInit() {
-    // motion compensate (vision)
-    time = new double[circularBufferSize]; 
-    angle =  new double[circularBufferSize];
-
-
     // Instantiate our RobotContainer.  This will perform all our button bindings, and put our
     // autonomous chooser on the dashboard.
     m_robotContainer = new RobotContainer();
@@ -68,13 +66,11 @@ public class Robot extends TimedRobot {
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
-    RobotContainer.m_objectTrackerSubsystem.data();
-    VisionObject x = RobotContainer.m_objectTrackerSubsystem.getClosestAprilTag();
-    if (x != null) {
-      System.out.println(x);
-    }
+    RobotContainer.m_visionManager.update();
+    RobotContainer.m_drivetrainSubsystem.addVisionMeasurements(RobotContainer.m_visionManager.getMergedFrame());
    
     CommandScheduler.getInstance().run();
+    CanStatusFrameManager.getDefault().periodic();
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
@@ -136,7 +132,24 @@ public class Robot extends TimedRobot {
 
   /** This function is called once when the robot is first started up. */
   @Override
-  public void simulationInit() {}
+  public void simulationInit() {
+    if (!Constants.VISION_SIMULATOR_ENABLED) {
+      return;
+    }
+    // publish synthetic frames for every camera the VisionManager reads
+    for (int i = 0; i < RobotContainer.m_visionManager.getCameraCount(); i++) {
+      CameraConfig camera = RobotContainer.m_visionManager.getCamera(i).getCamera();
+      VisionSimulator.Settings settings = new VisionSimulator.Settings();
+      settings.source = camera.source;
+      settings.binary = camera.format == VisionFrameFormat.BINARY;
+      settings.seed = i + 1;
+      // synthetic tags drift and aren't placed on the field, so they'd pull the fused pose around
+      settings.labels = new String[] {"note", "bunny"};
+      VisionSimulator simulator = new VisionSimulator(NetworkTableInstance.getDefault(), settings);
+      simulator.start();
+      m_visionSimulators.add(simulator);
+    }
+  }
 
   /** This function is called periodically whilst in simulation. */
   @Override
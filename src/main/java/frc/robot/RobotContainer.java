@@ -15,8 +15,11 @@ import edu.wpi.first.wpilibj2.command.button.JoystickButton;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
 import frc.robot.commands.AutonomousCommands;
 import frc.robot.commands.DrivetrainCommand;
+import frc.robot.models.CameraConfig;
+import frc.robot.models.VisionFrameFormat;
 import frc.robot.subsystems.DrivetrainSubsystem;
 import frc.robot.subsystems.ObjectTrackerSubsystem;
+import frc.robot.subsystems.VisionManager;
 
 /**
  * This class is where the bulk of the robot should be declared. Since Command-based is a
@@ -31,7 +34,10 @@ public class RobotContainer {
 
   // Subsystems
   public static final DrivetrainSubsystem m_drivetrainSubsystem = new DrivetrainSubsystem();
-  public static final ObjectTrackerSubsystem m_objectTrackerSubsystem = new ObjectTrackerSubsystem("Eclipse");
+  public static final VisionManager m_visionManager = new VisionManager(
+    m_drivetrainSubsystem.getPoseHistory(),
+    new CameraConfig("Eclipse", VisionFrameFormat.JSON));
+  public static final ObjectTrackerSubsystem m_objectTrackerSubsystem = m_visionManager.getCamera(0);
  
   //Command 
   public static final DrivetrainCommand m_driveTrainCommand = new DrivetrainCommand(m_drivetrainSubsystem);
@@ -4,7 +4,9 @@
 
 package frc.robot.commands;
 
+import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.subsystems.ObjectTrackerSubsystem;
 
 /** Add your docs here. */
 public class AutonomousCommands {
@@ -12,4 +14,9 @@ public class AutonomousCommands {
     public AutonomousCommands(DrivetrainSubsystem dts){
         m_dts = dts;
     }
+
+    /** Drives the intake onto the nearest object with this label that the camera sees */
+    public Command driveToObject(ObjectTrackerSubsystem camera, String label) {
+        return new DriveToObjectCommand(m_dts, camera, label);
+    }
 }
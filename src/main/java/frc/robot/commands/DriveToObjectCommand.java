@@ -0,0 +1,201 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.HolonomicDriveController;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionObject;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.subsystems.ObjectTrackerSubsystem;
+
+/**
+ * Drives the intake onto the nearest object a camera sees, re-aiming every loop.
+ *
+ * <p>Detections are placed on the field with the pose the robot had when the frame was captured,
+ * so the target stays put while the robot moves and the latency doesn't show up as lag. Between
+ * frames, and once the object is too close for the camera, the robot keeps driving to where it
+ * was last seen. The controller steers the intake rather than the robot's center, and the
+ * robot turns about the intake so turning doesn't swing it off the object.
+ */
+public class DriveToObjectCommand extends Command {
+  private final DrivetrainSubsystem m_dts;
+  private final ObjectTrackerSubsystem m_camera;
+  private final String m_label;
+  private final double m_minimumConfidence;
+  private final Translation2d m_intakeOffset = new Translation2d(Constants.VISION_SERVO_INTAKE_OFFSET, 0);
+  private final ProfiledPIDController m_thetaController;
+  private final HolonomicDriveController m_controller;
+  private final VisionObject[] m_nearest = new VisionObject[1];
+  private final double[] m_field = new double[2];
+  private final ChassisSpeeds m_stopped = new ChassisSpeeds();
+
+  private boolean m_hasTarget;
+  private double m_targetX;
+  private double m_targetY;
+  private double m_distance;
+  private double m_headingError;
+  private long m_lastSequence;
+  private double m_startTime;
+  private boolean m_wasFollowingJoystick;
+
+  /**
+   * @param label only objects whose label contains this
+   * @param minimumConfidence only detections at least this confident
+   */
+  public DriveToObjectCommand(DrivetrainSubsystem dts, ObjectTrackerSubsystem camera, String label, double minimumConfidence) {
+    m_dts = dts;
+    m_camera = camera;
+    m_label = label;
+    m_minimumConfidence = minimumConfidence;
+
+    m_thetaController = new ProfiledPIDController(Constants.VISION_SERVO_THETA_KP, 0, 0,
+        new TrapezoidProfile.Constraints(Constants.kMaxModuleAngularSpeedRadiansPerSecond,
+            Constants.kMaxModuleAngularAccelerationRadiansPerSecondSquared));
+    m_thetaController.enableContinuousInput(-Math.PI, Math.PI);
+    m_controller = new HolonomicDriveController(
+        new PIDController(Constants.VISION_SERVO_KP, 0, 0),
+        new PIDController(Constants.VISION_SERVO_KP, 0, 0),
+        m_thetaController);
+    addRequirements(m_dts);
+  }
+
+  /** Drives to the nearest object with this label, at the confidence the tracker uses for it */
+  public DriveToObjectCommand(DrivetrainSubsystem dts, ObjectTrackerSubsystem camera, String label) {
+    this(dts, camera, label, VisionObject.minimumConfidenceFor(label));
+  }
+
+  // Called when the command is initially scheduled.
+  @Override
+  public void initialize() {
+    m_hasTarget = false;
+    m_distance = Double.POSITIVE_INFINITY;
+    m_headingError = Double.POSITIVE_INFINITY;
+    m_lastSequence = -1;
+    m_startTime = Timer.getFPGATimestamp();
+    m_thetaController.reset(m_dts.getPose().getRotation().getRadians());
+    // periodic() would otherwise overwrite our module states with the joystick's
+    m_wasFollowingJoystick = m_dts.isFollowingJoystick();
+    m_dts.setFollowJoystick(false);
+  }
+
+  // Called every time the scheduler runs while the command is scheduled.
+  @Override
+  public void execute() {
+    Pose2d pose = m_dts.getPose();
+    updateTarget(pose);
+    if (!m_hasTarget) {
+      m_dts.setDesiredStates(m_stopped);
+      return;
+    }
+
+    double cos = pose.getRotation().getCos();
+    double sin = pose.getRotation().getSin();
+    double intakeX = pose.getX() + Constants.VISION_SERVO_INTAKE_OFFSET * cos;
+    double intakeY = pose.getY() + Constants.VISION_SERVO_INTAKE_OFFSET * sin;
+    double dx = m_targetX - intakeX;
+    double dy = m_targetY - intakeY;
+    m_distance = Math.hypot(dx, dy);
+
+    // face the object from the robot's center, so the heading settles as the intake arrives
+    Rotation2d heading = pose.getRotation();
+    double centerDistance = Math.hypot(m_targetX - pose.getX(), m_targetY - pose.getY());
+    if (centerDistance > Constants.VISION_SERVO_INTAKE_OFFSET / 2) {
+      heading = new Rotation2d(m_targetX - pose.getX(), m_targetY - pose.getY());
+    }
+    m_headingError = Math.abs(MathUtil.angleModulus(heading.getRadians() - pose.getRotation().getRadians()));
+
+    // feed forward toward the object, slowing so we could stop on it
+    Rotation2d travel = m_distance > Constants.VISION_SERVO_POSITION_TOLERANCE ? new Rotation2d(dx, dy) : heading;
+    double speed = Math.min(Constants.VISION_SERVO_MAX_SPEED,
+        Math.sqrt(2 * Constants.VISION_SERVO_MAX_ACCELERATION * m_distance));
+
+    ChassisSpeeds speeds = m_controller.calculate(
+        new Pose2d(intakeX, intakeY, pose.getRotation()),
+        new Pose2d(m_targetX, m_targetY, travel),
+        speed,
+        heading);
+    // the speeds are the intake's, so turn about it
+    m_dts.setDesiredStates(speeds, m_intakeOffset);
+  }
+
+  /** Re-aims at the object in the newest frame, if a new one has come in */
+  private void updateTarget(Pose2d pose) {
+    VisionFrame frame = m_camera.getLatestFrame();
+    if (frame == null || frame.sequence == m_lastSequence) {
+      return;
+    }
+    m_lastSequence = frame.sequence;
+    if (m_camera.isStale(Constants.VISION_STALE_SECONDS)) {
+      return;
+    }
+
+    // with the capture-time pose the detection lands where the object was, however the robot
+    // has moved since; without it fall back on where the robot is now
+    boolean hasPose = frame.hasRobotPose;
+    double robotX = hasPose ? frame.robotX : pose.getX();
+    double robotY = hasPose ? frame.robotY : pose.getY();
+    double robotTheta = hasPose ? frame.robotTheta : pose.getRotation().getRadians();
+
+    // search around the current target so we don't jump to another object, else around the robot
+    double searchX = m_hasTarget ? m_targetX : robotX;
+    double searchY = m_hasTarget ? m_targetY : robotY;
+    int found;
+    if (hasPose) {
+      found = m_camera.getSpatialIndex().nearest(searchX, searchY, true, 1, m_label, m_minimumConfidence, m_nearest);
+    } else {
+      double cos = Math.cos(robotTheta);
+      double sin = Math.sin(robotTheta);
+      double forward = (searchX - robotX) * cos + (searchY - robotY) * sin;
+      double left = -(searchX - robotX) * sin + (searchY - robotY) * cos;
+      found = m_camera.getSpatialIndex().nearest(forward, left, false, 1, m_label, m_minimumConfidence, m_nearest);
+    }
+    if (found < 1) {
+      return;
+    }
+
+    m_nearest[0].toField(robotX, robotY, robotTheta, m_field);
+    double x = m_field[0];
+    double y = m_field[1];
+    if (m_hasTarget && Math.hypot(x - m_targetX, y - m_targetY) > Constants.VISION_SERVO_REACQUIRE_DISTANCE) {
+      return;
+    }
+    m_targetX = x;
+    m_targetY = y;
+    m_hasTarget = true;
+  }
+
+  /** Whether an object has been picked to drive to */
+  public boolean hasTarget() {
+    return m_hasTarget;
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    m_dts.stopMotors();
+    m_dts.setFollowJoystick(m_wasFollowingJoystick);
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    if (!m_hasTarget) {
+      return Timer.getFPGATimestamp() - m_startTime > Constants.VISION_SERVO_ACQUIRE_TIMEOUT;
+    }
+    return m_distance < Constants.VISION_SERVO_POSITION_TOLERANCE
+        && m_headingError < Constants.VISION_SERVO_ANGLE_TOLERANCE;
+  }
+}
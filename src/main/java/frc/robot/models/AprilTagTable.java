@@ -0,0 +1,169 @@
+package frc.robot.models;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants;
+
+/**
+ * Field poses of the AprilTags, read once from an AprilTagFieldLayout and kept in flat arrays
+ * indexed by tag ID, along with solvers that place the robot on the field from a single tag.
+ *
+ * <p>Lookups and solves are a few multiplications with no allocation, Optional or string work,
+ * so commands can call them every loop.
+ */
+public class AprilTagTable {
+    private static AprilTagTable defaultTable;
+
+    private final boolean[] known;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    private final double[] yaws;
+    private final double fieldLength;
+    private final double fieldWidth;
+
+    public AprilTagTable(AprilTagFieldLayout layout) {
+        int maxId = -1;
+        for (AprilTag tag : layout.getTags()) {
+            maxId = Math.max(maxId, tag.ID);
+        }
+        known = new boolean[maxId + 1];
+        xs = new double[maxId + 1];
+        ys = new double[maxId + 1];
+        zs = new double[maxId + 1];
+        yaws = new double[maxId + 1];
+        for (AprilTag tag : layout.getTags()) {
+            if (tag.ID < 0) {
+                continue;
+            }
+            known[tag.ID] = true;
+            xs[tag.ID] = tag.pose.getX();
+            ys[tag.ID] = tag.pose.getY();
+            zs[tag.ID] = tag.pose.getZ();
+            yaws[tag.ID] = tag.pose.getRotation().getZ();
+        }
+        fieldLength = layout.getFieldLength();
+        fieldWidth = layout.getFieldWidth();
+    }
+
+    /**
+     * Returns the table for {@link Constants#APRIL_TAG_LAYOUT_FILE} in the deploy directory,
+     * loading it the first time. Falls back on WPILib's layout for this season if the file
+     * can't be read. The committed file is a placeholder copy of the FRC Crescendo field, so
+     * its tag poses and {@link #isOnField} bounds don't match the field this robot plays on.
+     */
+    public static synchronized AprilTagTable getDefault() {
+        if (defaultTable == null) {
+            defaultTable = new AprilTagTable(loadLayout());
+        }
+        return defaultTable;
+    }
+
+    private static AprilTagFieldLayout loadLayout() {
+        Path path = Filesystem.getDeployDirectory().toPath().resolve(Constants.APRIL_TAG_LAYOUT_FILE);
+        try {
+            return new AprilTagFieldLayout(path);
+        } catch (IOException e) {
+            DriverStation.reportWarning("Couldn't read " + path + ", using WPILib's AprilTag layout: " + e.getMessage(), false);
+            return AprilTagFields.kDefaultField.loadAprilTagLayoutField();
+        }
+    }
+
+    /** Whether the layout has a tag with this ID */
+    public boolean hasTag(int id) {
+        return id >= 0 && id < known.length && known[id];
+    }
+
+    /** Field x of a tag in meters; only meaningful if {@link #hasTag(int)} */
+    public double getX(int id) {
+        return xs[id];
+    }
+
+    public double getY(int id) {
+        return ys[id];
+    }
+
+    public double getZ(int id) {
+        return zs[id];
+    }
+
+    /** Direction the tag faces on the field, radians counterclockwise from the field's x axis */
+    public double getYaw(int id) {
+        return yaws[id];
+    }
+
+    public double getFieldLength() {
+        return fieldLength;
+    }
+
+    public double getFieldWidth() {
+        return fieldWidth;
+    }
+
+    /** Whether a point is on the field, or within margin meters of its edge */
+    public boolean isOnField(double x, double y, double margin) {
+        return x >= -margin && x <= fieldLength + margin && y >= -margin && y <= fieldWidth + margin;
+    }
+
+    /**
+     * Places the robot on the field from one tag, given which way the robot faces
+     * @param forward how far ahead of the robot's center the tag is, meters
+     * @param left how far left of the robot's center the tag is, meters
+     * @param robotTheta robot heading on the field in radians, e.g. from the gyro
+     * @param out receives the robot's {x, y, theta}
+     * @return false if the tag isn't in the layout
+     */
+    public boolean solveWithHeading(int id, double forward, double left, double robotTheta, double[] out) {
+        if (!hasTag(id)) {
+            return false;
+        }
+        double cosTheta = Math.cos(robotTheta);
+        double sinTheta = Math.sin(robotTheta);
+        out[0] = xs[id] - (forward * cosTheta - left * sinTheta);
+        out[1] = ys[id] - (forward * sinTheta + left * cosTheta);
+        out[2] = robotTheta;
+        return true;
+    }
+
+    /**
+     * Places the robot on the field from one tag alone, taking the robot's heading from the
+     * way the tag is turned
+     * @param forward how far ahead of the robot's center the tag is, meters
+     * @param left how far left of the robot's center the tag is, meters
+     * @param tagYaw how far the tag is turned, radians counterclockwise seen from above, 0 when
+     *     it faces the robot squarely
+     * @param out receives the robot's {x, y, theta}
+     * @return false if the tag isn't in the layout
+     */
+    public boolean solve(int id, double forward, double left, double tagYaw, double[] out) {
+        if (!hasTag(id)) {
+            return false;
+        }
+        // facing the robot squarely, the tag points back along the robot's heading
+        return solveWithHeading(id, forward, left, MathUtil.angleModulus(yaws[id] - Math.PI - tagYaw), out);
+    }
+
+    /**
+     * Places the robot on the field from a robot-relative tag detection and its rotation
+     * @param out receives the robot's {x, y, theta}
+     * @return false if the detection isn't a known tag or has no rotation
+     */
+    public boolean solve(VisionObject tag, double[] out) {
+        if (!tag.hasRotation()) {
+            return false;
+        }
+        return solve(
+            tag.getAprilTagID(),
+            tag.z / Constants.VISION_UNITS_PER_METER,
+            -tag.x / Constants.VISION_UNITS_PER_METER,
+            tag.getRotationY(),
+            out);
+    }
+}
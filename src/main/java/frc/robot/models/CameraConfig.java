@@ -0,0 +1,64 @@
+package frc.robot.models;
+
+import frc.robot.Constants;
+
+/**
+ * A MonsterVision camera and where it sits on the robot.
+ *
+ * <p>Extrinsics move detections from the camera's axes into robot-centric ones: the same axes
+ * (x to the right, y and z as the camera reports them) but with the robot's center as origin
+ * and z pointing out the robot's front.
+ */
+public class CameraConfig {
+    /** MonsterVision source name, e.g. "Eclipse" */
+    public final String source;
+    public final VisionFrameFormat format;
+    /** Camera pitch in radians */
+    public final double tilt;
+    /** Camera heading in radians, counterclockwise from the robot's front */
+    public final double yaw;
+    /** Camera rotation about its optical axis in radians */
+    public final double roll;
+    /** Camera position from the robot's center, {x, y, z} in MonsterVision units (inches) */
+    public final double[] offset;
+    /** All of the above as one precomputed camera-to-robot transform */
+    public final CameraTransform transform;
+
+    public CameraConfig(String source, VisionFrameFormat format, double tilt, double yaw, double roll, double[] offset) {
+        this.source = source;
+        this.format = format;
+        this.tilt = tilt;
+        this.yaw = yaw;
+        this.roll = roll;
+        this.offset = offset.clone();
+        this.transform = new CameraTransform(tilt, yaw, roll, this.offset);
+    }
+
+    public CameraConfig(String source, VisionFrameFormat format, double tilt, double yaw, double[] offset) {
+        this(source, format, tilt, yaw, 0.0, offset);
+    }
+
+    /** A camera with the tilt we've measured for it, if any, and no other offset */
+    public CameraConfig(String source, VisionFrameFormat format) {
+        this(source, format, defaultTilt(source), 0.0, new double[] {0.0, 0.0, 0.0});
+    }
+
+    public CameraConfig(String source) {
+        this(source, VisionFrameFormat.JSON);
+    }
+
+    private static double defaultTilt(String source) {
+        if (source.equals("NoteCam")) {
+            return Constants.VISION_NOTE_CAM_TILT;
+        }
+        else if (source.equals("AprilTagPro")) {
+            return Constants.VISION_APRIL_TAG_PRO_TILT;
+        }
+        return 0.0;
+    }
+
+    /** Whether detections from this camera need transforming at all */
+    public boolean hasExtrinsics() {
+        return !transform.isIdentity();
+    }
+}
@@ -0,0 +1,132 @@
+package frc.robot.models;
+
+/**
+ * A rigid transform of detection positions, precomputed as a 3x4 matrix and applied to a whole
+ * frame at a time.
+ *
+ * <p>Positions use MonsterVision's axes and units: x to the right, y and z as the camera
+ * reports them, inches. A camera's extrinsics roll about its optical axis, then pitch (tilt),
+ * then yaw, then translate by its offset from the robot's center; the same order
+ * ObjectTrackerSubsystem has always applied tilt and offset in.
+ *
+ * <p>{@link #apply} runs over parallel x/y/z arrays in one branch-free loop, which the JIT can
+ * unroll and vectorize, instead of visiting VisionObject fields one object at a time.
+ */
+public class CameraTransform {
+    // rows of the rotation, then the translation column
+    private double m00, m01, m02, m03;
+    private double m10, m11, m12, m13;
+    private double m20, m21, m22, m23;
+    private boolean identity = true;
+
+    /** The identity transform */
+    public CameraTransform() {
+        m00 = m11 = m22 = 1;
+    }
+
+    /**
+     * @param pitch tilt about the camera's x axis, radians
+     * @param yaw heading about the vertical axis, radians counterclockwise from the robot's front
+     * @param roll rotation about the camera's optical axis, radians
+     * @param offset camera position from the robot's center, {x, y, z} in inches
+     */
+    public CameraTransform(double pitch, double yaw, double roll, double[] offset) {
+        double cosRoll = Math.cos(roll), sinRoll = Math.sin(roll);
+        double cosPitch = Math.cos(pitch), sinPitch = Math.sin(pitch);
+        double cosYaw = Math.cos(yaw), sinYaw = Math.sin(yaw);
+
+        // pitch * roll
+        double p00 = cosRoll,            p01 = -sinRoll,           p02 = 0;
+        double p10 = sinRoll * cosPitch, p11 = cosRoll * cosPitch, p12 = -sinPitch;
+        double p20 = sinRoll * sinPitch, p21 = cosRoll * sinPitch, p22 = cosPitch;
+
+        // yaw * pitch * roll
+        m00 = cosYaw * p00 - sinYaw * p20;
+        m01 = cosYaw * p01 - sinYaw * p21;
+        m02 = cosYaw * p02 - sinYaw * p22;
+        m10 = p10;
+        m11 = p11;
+        m12 = p12;
+        m20 = sinYaw * p00 + cosYaw * p20;
+        m21 = sinYaw * p01 + cosYaw * p21;
+        m22 = sinYaw * p02 + cosYaw * p22;
+        m03 = offset[0];
+        m13 = offset[1];
+        m23 = offset[2];
+        identity = pitch == 0 && yaw == 0 && roll == 0 && offset[0] == 0 && offset[1] == 0 && offset[2] == 0;
+    }
+
+    /** Copies another transform into this one */
+    public void set(CameraTransform other) {
+        m00 = other.m00; m01 = other.m01; m02 = other.m02; m03 = other.m03;
+        m10 = other.m10; m11 = other.m11; m12 = other.m12; m13 = other.m13;
+        m20 = other.m20; m21 = other.m21; m22 = other.m22; m23 = other.m23;
+        identity = other.identity;
+    }
+
+    /**
+     * Follows this transform with the robot's own motion, moving positions from the robot frame
+     * at capture time into the robot frame now. Same math as {@link VisionObject#motionCompensate}.
+     * @param forward meters driven forward since capture
+     * @param left meters driven to the left since capture
+     * @param rotation radians turned counterclockwise since capture
+     * @param unitsPerMeter MonsterVision units in a meter
+     */
+    public void thenRobotMotion(double forward, double left, double rotation, double unitsPerMeter) {
+        double c = Math.cos(rotation);
+        double s = Math.sin(rotation);
+        double tx = unitsPerMeter * (left * c - forward * s);
+        double tz = -unitsPerMeter * (forward * c + left * s);
+
+        double r00 = c * m00 + s * m20, r01 = c * m01 + s * m21, r02 = c * m02 + s * m22, r03 = c * m03 + s * m23 + tx;
+        double r20 = -s * m00 + c * m20, r21 = -s * m01 + c * m21, r22 = -s * m02 + c * m22, r23 = -s * m03 + c * m23 + tz;
+        m00 = r00; m01 = r01; m02 = r02; m03 = r03;
+        m20 = r20; m21 = r21; m22 = r22; m23 = r23;
+        identity = identity && forward == 0 && left == 0 && rotation == 0;
+    }
+
+    /** Returns how far this turns directions about the vertical axis, radians counterclockwise */
+    public double getYaw() {
+        // where the camera's optical axis ends up
+        return Math.atan2(-m02, m22);
+    }
+
+    /** Whether applying this would leave every position as it is */
+    public boolean isIdentity() {
+        return identity;
+    }
+
+    /** Transforms count positions in place */
+    public void apply(double[] xs, double[] ys, double[] zs, int count) {
+        final double a00 = m00, a01 = m01, a02 = m02, a03 = m03;
+        final double a10 = m10, a11 = m11, a12 = m12, a13 = m13;
+        final double a20 = m20, a21 = m21, a22 = m22, a23 = m23;
+        for (int i = 0; i < count; i++) {
+            double x = xs[i];
+            double y = ys[i];
+            double z = zs[i];
+            xs[i] = a00 * x + a01 * y + a02 * z + a03;
+            ys[i] = a10 * x + a11 * y + a12 * z + a13;
+            zs[i] = a20 * x + a21 * y + a22 * z + a23;
+        }
+    }
+
+    /**
+     * Places robot-frame positions on the field
+     * @param xs robot-frame x (right), MonsterVision units
+     * @param zs robot-frame z (forward), MonsterVision units
+     * @param robotX robot pose the positions are relative to, meters and radians
+     * @param fieldXs receives field x, meters
+     * @param fieldYs receives field y, meters
+     */
+    public static void toField(double[] xs, double[] zs, int count, double robotX, double robotY, double robotTheta,
+                               double unitsPerMeter, double[] fieldXs, double[] fieldYs) {
+        double cosTheta = Math.cos(robotTheta) / unitsPerMeter;
+        double sinTheta = Math.sin(robotTheta) / unitsPerMeter;
+        for (int i = 0; i < count; i++) {
+            // forward = z, left = -x
+            fieldXs[i] = robotX + zs[i] * cosTheta + xs[i] * sinTheta;
+            fieldYs[i] = robotY + zs[i] * sinTheta - xs[i] * cosTheta;
+        }
+    }
+}
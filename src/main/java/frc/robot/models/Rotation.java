@@ -0,0 +1,8 @@
+package frc.robot.models;
+
+/** Orientation of a {@link VisionObject}, radians about each camera axis, as ObjectTracker sends it */
+public class Rotation {
+    public double x;
+    public double y;
+    public double z;
+}
@@ -0,0 +1,106 @@
+package frc.robot.models;
+
+import frc.robot.Constants;
+
+/**
+ * One ObjectTracker publication from a MonsterVision camera.
+ *
+ * <p>Frames and the VisionObjects in them are pooled by
+ * {@link frc.robot.subsystems.ObjectTrackerSubsystem} and overwritten once they fall off the end
+ * of its frame queue, so copy anything you need to keep.
+ */
+public class VisionFrame {
+    /** Time the frame reached NetworkTables, in seconds on the FPGA clock */
+    public double timestamp;
+    /** Time the camera captured the frame, in seconds on the FPGA clock */
+    public double captureTimestamp;
+    /** Increases by one for every frame ingested from a source */
+    public long sequence;
+    /** Sequence number sent by the coprocessor, or -1 if the format doesn't carry one */
+    public long sourceSequence = -1;
+
+    /** Whether the detections were motion compensated to the robot pose below */
+    public boolean hasRobotPose;
+    /** Time of the odometry pose the detections are relative to, FPGA seconds */
+    public double poseTimestamp;
+    /** Odometry pose the detections are relative to, in meters and radians */
+    public double robotX, robotY, robotTheta;
+    /** Detection slots; only the first {@link #count} hold this frame's objects */
+    public final VisionObject[] objects = new VisionObject[Constants.VISION_MAX_OBJECTS_PER_FRAME];
+    /** Number of detections in this frame, with zero-depth objects already removed */
+    public int count;
+
+    /** VisionFrameCodec class ID of each object, -1 for labels it doesn't know */
+    public final int[] classIds = new int[Constants.VISION_MAX_OBJECTS_PER_FRAME];
+    /** AprilTag ID of each object, -1 for anything that isn't a tag */
+    public final int[] tagIds = new int[Constants.VISION_MAX_OBJECTS_PER_FRAME];
+    /** Positions of the objects as parallel arrays, for the batched transforms in CameraTransform */
+    public final double[] xs = new double[Constants.VISION_MAX_OBJECTS_PER_FRAME];
+    public final double[] ys = new double[Constants.VISION_MAX_OBJECTS_PER_FRAME];
+    public final double[] zs = new double[Constants.VISION_MAX_OBJECTS_PER_FRAME];
+    /** Field position of each object in meters, valid when {@link #hasRobotPose} */
+    public final double[] fieldXs = new double[Constants.VISION_MAX_OBJECTS_PER_FRAME];
+    public final double[] fieldYs = new double[Constants.VISION_MAX_OBJECTS_PER_FRAME];
+    // Raw decoded values for binary frames, see VisionFrameCodec for the layout
+    public final double[] values = new double[Constants.VISION_MAX_OBJECTS_PER_FRAME * VisionFrameCodec.VALUES_PER_OBJECT];
+
+    public VisionFrame() {
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = new VisionObject();
+        }
+    }
+
+    public int numberOfObjects() {
+        return count;
+    }
+
+    /** Copies another frame's timing, pose and detections into this one's own slots */
+    public void set(VisionFrame other) {
+        timestamp = other.timestamp;
+        captureTimestamp = other.captureTimestamp;
+        sequence = other.sequence;
+        sourceSequence = other.sourceSequence;
+        hasRobotPose = other.hasRobotPose;
+        poseTimestamp = other.poseTimestamp;
+        robotX = other.robotX;
+        robotY = other.robotY;
+        robotTheta = other.robotTheta;
+        count = other.count;
+        for (int i = 0; i < count; i++) {
+            objects[i].set(other.objects[i]);
+        }
+        System.arraycopy(other.classIds, 0, classIds, 0, count);
+        System.arraycopy(other.tagIds, 0, tagIds, 0, count);
+        System.arraycopy(other.xs, 0, xs, 0, count);
+        System.arraycopy(other.ys, 0, ys, 0, count);
+        System.arraycopy(other.zs, 0, zs, 0, count);
+        System.arraycopy(other.fieldXs, 0, fieldXs, 0, count);
+        System.arraycopy(other.fieldYs, 0, fieldYs, 0, count);
+        System.arraycopy(other.values, 0, values, 0, count * VisionFrameCodec.VALUES_PER_OBJECT);
+    }
+
+    /** Copies the objects' positions into {@link #xs}, {@link #ys} and {@link #zs} */
+    public void gatherPositions() {
+        for (int i = 0; i < count; i++) {
+            xs[i] = objects[i].x;
+            ys[i] = objects[i].y;
+            zs[i] = objects[i].z;
+        }
+    }
+
+    /** Copies {@link #xs}, {@link #ys} and {@link #zs} back into the objects */
+    public void scatterPositions() {
+        for (int i = 0; i < count; i++) {
+            objects[i].x = xs[i];
+            objects[i].y = ys[i];
+            objects[i].z = zs[i];
+        }
+    }
+
+    /** Fills {@link #fieldXs} and {@link #fieldYs} from the positions and robot pose, if there is one */
+    public void computeFieldPositions() {
+        if (hasRobotPose) {
+            CameraTransform.toField(xs, zs, count, robotX, robotY, robotTheta, Constants.VISION_UNITS_PER_METER, fieldXs, fieldYs);
+        }
+    }
+}
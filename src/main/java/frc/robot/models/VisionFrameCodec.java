@@ -0,0 +1,242 @@
+package frc.robot.models;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import frc.robot.Constants;
+
+/**
+ * Compact binary form of an ObjectTracker frame, published by MonsterVision as a raw
+ * NetworkTables topic next to the JSON one.
+ *
+ * <p>Layout, little-endian:
+ * <pre>
+ *   header   uint8  version (= VERSION)
+ *            uint8  reserved
+ *            uint16 object count
+ *            uint32 frame sequence number, counted by the coprocessor
+ *            int64  capture time in microseconds on the NetworkTables server clock
+ *   classes  int16  class ID per object, an index into CLASS_LABELS
+ *   tags     int16  AprilTag ID per object, -1 for anything that isn't a tag
+ *   padding  zero bytes up to the next multiple of 8
+ *   values   float64[VALUES_PER_OBJECT] per object:
+ *            x, y, z, r, xa, ya, confidence, rotation x, rotation y, rotation z
+ * </pre>
+ * A NaN rotation x means the object has no rotation.
+ *
+ * <p>Encoding is static. Decoding reuses a buffer and a cache of labels held by the codec, so
+ * each thread that decodes, e.g. each camera's, has its own codec.
+ */
+public final class VisionFrameCodec {
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int VALUES_PER_OBJECT = 10;
+
+    public static final int CLASS_TAG_16H5 = 0;
+    public static final int CLASS_TAG_36H11 = 1;
+    /** Labels MonsterVision uses for each class ID; tags get ": id" appended */
+    public static final String[] CLASS_LABELS = {"tag16h5", "tag36h11", "note", "cone", "cube", "bunny", "tote"};
+
+    private static final int MAX_TAG_ID = 1024;
+    // "tag16h5: 28" style labels, built the first time each tag is seen and reused after that
+    private final String[][] tagLabels = new String[CLASS_LABELS.length][];
+    // each frame is copied in here to be read; only grows for a frame with more objects than
+    // VISION_MAX_OBJECTS_PER_FRAME
+    private ByteBuffer buffer = ByteBuffer.allocate(encodedSize(Constants.VISION_MAX_OBJECTS_PER_FRAME))
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+    /** Returns the number of bytes needed to encode a frame with this many objects */
+    public static int encodedSize(int objectCount) {
+        return valuesOffset(objectCount) + objectCount * VALUES_PER_OBJECT * Double.BYTES;
+    }
+
+    private static int valuesOffset(int objectCount) {
+        return (HEADER_SIZE + objectCount * 2 * Short.BYTES + 7) & ~7;
+    }
+
+    /**
+     * Decodes a binary frame into a pooled VisionFrame, filling its primitive arrays and its
+     * VisionObject slots. Zero-depth objects are dropped, as they are for JSON frames.
+     * @param bytes encoded frame
+     * @param frame frame to fill; its timestamp is left for the caller to set
+     * @return number of objects decoded, or -1 if the frame is malformed
+     */
+    public int decode(byte[] bytes, VisionFrame frame) {
+        if (bytes == null || bytes.length < HEADER_SIZE || (bytes[0] & 0xff) != VERSION) {
+            return -1;
+        }
+        int objectCount = (bytes[2] & 0xff) | (bytes[3] & 0xff) << 8;
+        if (bytes.length < encodedSize(objectCount)) {
+            return -1;
+        }
+        // only the objects that fit in the frame are read
+        int length = valuesOffset(objectCount)
+            + Math.min(objectCount, frame.objects.length) * VALUES_PER_OBJECT * Double.BYTES;
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        buffer.put(bytes, 0, length);
+
+        frame.sourceSequence = buffer.getInt(4) & 0xffffffffL;
+        frame.captureTimestamp = buffer.getLong(8) * 1.0e-6;
+
+        int classOffset = HEADER_SIZE;
+        int tagOffset = classOffset + objectCount * Short.BYTES;
+        int valueOffset = valuesOffset(objectCount);
+        double[] values = frame.values;
+        int count = 0;
+        for (int i = 0; i < objectCount && count < frame.objects.length; i++) {
+            int src = valueOffset + i * VALUES_PER_OBJECT * Double.BYTES;
+            // same as JSON frames, ignore the (0, 0, 0) objects MonsterVision can't range
+            if (buffer.getDouble(src + 2 * Double.BYTES) == 0) {
+                continue;
+            }
+            int dst = count * VALUES_PER_OBJECT;
+            for (int v = 0; v < VALUES_PER_OBJECT; v++) {
+                values[dst + v] = buffer.getDouble(src + v * Double.BYTES);
+            }
+            frame.classIds[count] = buffer.getShort(classOffset + i * Short.BYTES);
+            frame.tagIds[count] = buffer.getShort(tagOffset + i * Short.BYTES);
+            count++;
+        }
+
+        for (int i = 0; i < count; i++) {
+            fillObject(frame, i);
+        }
+        frame.count = count;
+        return count;
+    }
+
+    private void fillObject(VisionFrame frame, int i) {
+        VisionObject vo = frame.objects[i];
+        double[] values = frame.values;
+        int base = i * VALUES_PER_OBJECT;
+        vo.reset();
+        vo.objectLabel = labelFor(frame.classIds[i], frame.tagIds[i]);
+        vo.tagId = frame.tagIds[i];
+        vo.x = values[base];
+        vo.y = values[base + 1];
+        vo.z = values[base + 2];
+        vo.r = values[base + 3];
+        vo.xa = values[base + 4];
+        vo.ya = values[base + 5];
+        vo.confidence = values[base + 6];
+        if (!Double.isNaN(values[base + 7])) {
+            vo.rotation = vo.pooledRotation;
+            vo.rotation.x = values[base + 7];
+            vo.rotation.y = values[base + 8];
+            vo.rotation.z = values[base + 9];
+        }
+    }
+
+    /**
+     * Encodes the objects in a frame. Used by the recorder and test publishers; MonsterVision
+     * writes the same layout from Python.
+     * @param frame frame to encode; class and tag IDs come from its classIds and tagIds, as
+     *     the parser or decoder filled them
+     * @param sequence frame sequence number to write in the header
+     * @param captureTimestamp capture time in seconds on the NetworkTables server clock
+     * @param buffer destination, at least {@link #encodedSize} bytes from its position
+     * @return number of bytes written
+     */
+    public static int encode(VisionFrame frame, long sequence, double captureTimestamp, ByteBuffer buffer) {
+        // only absolute puts below, so a little-endian buffer can be written directly without a view
+        ByteBuffer out = buffer.order() == ByteOrder.LITTLE_ENDIAN ? buffer : buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = buffer.position();
+        int count = frame.count;
+        out.put(start, (byte) VERSION);
+        out.put(start + 1, (byte) 0);
+        out.putShort(start + 2, (short) count);
+        out.putInt(start + 4, (int) sequence);
+        out.putLong(start + 8, Math.round(captureTimestamp * 1.0e6));
+
+        int classOffset = start + HEADER_SIZE;
+        int tagOffset = classOffset + count * Short.BYTES;
+        int valueOffset = start + valuesOffset(count);
+        for (int p = tagOffset + count * Short.BYTES; p < valueOffset; p++) {
+            out.put(p, (byte) 0);
+        }
+        for (int i = 0; i < count; i++) {
+            VisionObject vo = frame.objects[i];
+            out.putShort(classOffset + i * Short.BYTES, (short) frame.classIds[i]);
+            out.putShort(tagOffset + i * Short.BYTES, (short) frame.tagIds[i]);
+            int dst = valueOffset + i * VALUES_PER_OBJECT * Double.BYTES;
+            out.putDouble(dst, vo.x);
+            out.putDouble(dst + 8, vo.y);
+            out.putDouble(dst + 16, vo.z);
+            out.putDouble(dst + 24, vo.r);
+            out.putDouble(dst + 32, vo.xa);
+            out.putDouble(dst + 40, vo.ya);
+            out.putDouble(dst + 48, vo.confidence);
+            out.putDouble(dst + 56, vo.rotation == null ? Double.NaN : vo.rotation.x);
+            out.putDouble(dst + 64, vo.rotation == null ? 0 : vo.rotation.y);
+            out.putDouble(dst + 72, vo.rotation == null ? 0 : vo.rotation.z);
+        }
+        int size = encodedSize(count);
+        buffer.position(start + size);
+        return size;
+    }
+
+    /** Returns the label MonsterVision would have sent for this class and tag ID */
+    public String labelFor(int classId, int tagId) {
+        if (classId < 0 || classId >= CLASS_LABELS.length) {
+            return "unknown";
+        }
+        if (tagId < 0 || tagId >= MAX_TAG_ID) {
+            return CLASS_LABELS[classId];
+        }
+        String[] labels = tagLabels[classId];
+        if (labels == null) {
+            labels = new String[MAX_TAG_ID];
+            tagLabels[classId] = labels;
+        }
+        String label = labels[tagId];
+        if (label == null) {
+            label = CLASS_LABELS[classId] + ": " + tagId;
+            labels[tagId] = label;
+        }
+        return label;
+    }
+
+    /** Returns the class ID for a MonsterVision label, or -1 if it isn't a known class */
+    public static int classIdOf(String label) {
+        if (label == null) {
+            return -1;
+        }
+        int end = label.indexOf(':');
+        int length = end < 0 ? label.length() : end;
+        for (int i = 0; i < CLASS_LABELS.length; i++) {
+            if (CLASS_LABELS[i].length() == length && label.startsWith(CLASS_LABELS[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the AprilTag ID in a label like "tag16h5: 28", or -1 if there isn't one */
+    public static int tagIdOf(String label) {
+        if (label == null || !label.startsWith("tag")) {
+            return -1;
+        }
+        int i = label.indexOf(':');
+        if (i < 0) {
+            return -1;
+        }
+        i++;
+        while (i < label.length() && label.charAt(i) == ' ') {
+            i++;
+        }
+        int id = 0;
+        int digits = 0;
+        for (; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (c < '0' || c > '9' || digits == 6) {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+            digits++;
+        }
+        return digits == 0 ? -1 : id;
+    }
+}
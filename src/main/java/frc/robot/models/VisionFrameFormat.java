@@ -0,0 +1,9 @@
+package frc.robot.models;
+
+/** How a MonsterVision source publishes its ObjectTracker frames */
+public enum VisionFrameFormat {
+    /** JSON string on MonsterVision/ObjectTracker-&lt;source&gt; */
+    JSON,
+    /** {@link VisionFrameCodec} bytes on MonsterVision/ObjectTrackerBinary-&lt;source&gt; */
+    BINARY
+}
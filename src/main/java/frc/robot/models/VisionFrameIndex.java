@@ -0,0 +1,182 @@
+package frc.robot.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import frc.robot.Constants;
+
+/**
+ * Lookup tables over one frame's detections, rebuilt once per frame so that repeated queries
+ * from commands don't rescan the frame.
+ *
+ * <p>Objects are grouped by class ID, AprilTags are indexed by tag ID, and the results of label
+ * and confidence queries are memoized until the next {@link #rebuild}. Result arrays are owned
+ * by the index and reused from frame to frame, so don't modify them or keep them around.
+ */
+public class VisionFrameIndex {
+    private static final int MAX_TAG_ID = 1024;
+    private static final int MAX_OBJECTS = Constants.VISION_MAX_OBJECTS_PER_FRAME;
+    private static final VisionObject[] NO_OBJECTS = new VisionObject[0];
+
+    private VisionObject[] objects = NO_OBJECTS;
+    private int count = 0;
+    private long version = 0;
+
+    // object indexes by class ID; the extra last row holds unknown labels
+    private final int[][] classMembers = new int[VisionFrameCodec.CLASS_LABELS.length + 1][MAX_OBJECTS];
+    private final int[] classCounts = new int[VisionFrameCodec.CLASS_LABELS.length + 1];
+
+    // tag ID -> index of the first (closest) detection of it, -1 if it wasn't seen
+    private final int[] tagIndex = new int[MAX_TAG_ID];
+    private final int[] seenTagIds = new int[MAX_OBJECTS];
+    private int seenTagCount = 0;
+
+    private final HashMap<String, Query> labelQueries = new HashMap<>();
+    private final Query confidenceQuery = new Query();
+    private double confidenceQueryMinimum = Double.NaN;
+    private final VisionObject[] scratch = new VisionObject[MAX_OBJECTS];
+
+    /** A memoized query result, valid while its version matches the index */
+    private static class Query {
+        long version = -1;
+        VisionObject[] result = NO_OBJECTS;
+    }
+
+    public VisionFrameIndex() {
+        Arrays.fill(tagIndex, -1);
+    }
+
+    /**
+     * Indexes a new frame's detections. Call once whenever the detections change.
+     * @param objects detection slots
+     * @param classIds class ID per object, as filled by the parser or binary decoder
+     * @param tagIds tag ID per object, -1 for non-tags
+     * @param count number of valid objects
+     */
+    public void rebuild(VisionObject[] objects, int[] classIds, int[] tagIds, int count) {
+        version++;
+        this.objects = objects;
+        this.count = Math.min(count, MAX_OBJECTS);
+
+        for (int i = 0; i < seenTagCount; i++) {
+            tagIndex[seenTagIds[i]] = -1;
+        }
+        seenTagCount = 0;
+        Arrays.fill(classCounts, 0);
+
+        for (int i = 0; i < this.count; i++) {
+            int classId = classIds[i];
+            int row = classId < 0 || classId >= VisionFrameCodec.CLASS_LABELS.length ? classCounts.length - 1 : classId;
+            classMembers[row][classCounts[row]++] = i;
+
+            int tagId = tagIds[i];
+            if (tagId >= 0 && tagId < MAX_TAG_ID && tagIndex[tagId] < 0) {
+                tagIndex[tagId] = i;
+                seenTagIds[seenTagCount++] = tagId;
+            }
+        }
+    }
+
+    /** Forgets the current frame, e.g. after a malformed one */
+    public void clear() {
+        rebuild(NO_OBJECTS, null, null, 0);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Returns the first detection of an AprilTag ID, or null if it isn't in the frame */
+    public VisionObject getAprilTag(int id) {
+        if (id < 0 || id >= MAX_TAG_ID) {
+            return null;
+        }
+        int i = tagIndex[id];
+        return i < 0 ? null : objects[i];
+    }
+
+    /** Returns the number of detections of a VisionFrameCodec class ID */
+    public int countOfClass(int classId) {
+        if (classId < 0 || classId >= VisionFrameCodec.CLASS_LABELS.length) {
+            return 0;
+        }
+        return classCounts[classId];
+    }
+
+    /** Returns the n-th detection of a VisionFrameCodec class ID, in frame order */
+    public VisionObject getOfClass(int classId, int n) {
+        if (n < 0 || n >= countOfClass(classId)) {
+            return null;
+        }
+        return objects[classMembers[classId][n]];
+    }
+
+    /**
+     * Returns detections whose label contains the query and whose confidence is at least
+     * {@link VisionObject#minimumConfidenceFor} the query, in frame order, as in the spatial
+     * index. Memoized per label per frame. The array is only valid until the next
+     * {@link #rebuild}, which overwrites it in place.
+     */
+    public VisionObject[] getObjectsOfType(String objectLabel) {
+        Query query = labelQueries.get(objectLabel);
+        if (query == null) {
+            query = new Query();
+            labelQueries.put(objectLabel, query);
+        }
+        if (query.version == version) {
+            return query.result;
+        }
+
+        double minimumConfidence = VisionObject.minimumConfidenceFor(objectLabel);
+        int classId = VisionFrameCodec.classIdOf(objectLabel);
+        int matches = 0;
+        // labels of an exact class name's bucket start with the name, so only the rest are searched
+        boolean exactClass = classId >= 0 && VisionFrameCodec.CLASS_LABELS[classId].equals(objectLabel);
+        int[] members = exactClass ? classMembers[classId] : null;
+        int memberCount = exactClass ? classCounts[classId] : 0;
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            VisionObject vo = objects[i];
+            boolean labelMatches;
+            if (next < memberCount && members[next] == i) {
+                next++;
+                labelMatches = true;
+            } else {
+                labelMatches = vo.objectLabel != null && vo.objectLabel.contains(objectLabel);
+            }
+            if (labelMatches && vo.confidence >= minimumConfidence) {
+                scratch[matches++] = vo;
+            }
+        }
+        store(query, matches);
+        return query.result;
+    }
+
+    /**
+     * Returns detections with at least this confidence, memoized for the last minimum asked for.
+     * The array is only valid until the next {@link #rebuild}, which overwrites it in place.
+     */
+    public VisionObject[] getObjects(double minimumConfidence) {
+        if (confidenceQuery.version == version && confidenceQueryMinimum == minimumConfidence) {
+            return confidenceQuery.result;
+        }
+        int matches = 0;
+        for (int i = 0; i < count; i++) {
+            if (objects[i].confidence >= minimumConfidence) {
+                scratch[matches++] = objects[i];
+            }
+        }
+        confidenceQueryMinimum = minimumConfidence;
+        store(confidenceQuery, matches);
+        return confidenceQuery.result;
+    }
+
+    private void store(Query query, int matches) {
+        // callers expect an exactly sized array, but it only needs replacing when the size changes
+        if (query.result.length != matches) {
+            query.result = matches == 0 ? NO_OBJECTS : new VisionObject[matches];
+        }
+        System.arraycopy(scratch, 0, query.result, 0, matches);
+        query.version = version;
+    }
+}
@@ -1,25 +1,10 @@
 package frc.robot.models;
 
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.util.Units;
 import frc.robot.Constants;
-import frc.robot.Robot;
-// import frc.robot.subsystems.DrivetrainSubsystem;
-import frc.robot.subsystems.DrivetrainSubsystem;
-import edu.wpi.first.wpilibj.Timer;
-
-//networktables
-import edu.wpi.first.networktables.NetworkTable;
-import edu.wpi.first.networktables.NetworkTableEntry;
-import edu.wpi.first.networktables.NetworkTableInstance;
-class Rotation
-{
-    public double x;
-    public double y; 
-    public double z;
-}
+
 public class VisionObject {
     public String objectLabel;
     /**
@@ -32,15 +17,25 @@ public class VisionObject {
     public double y;
     public double z;
     public double r;
+    /**
+     * Orientation of a tag, null for anything else. y is how far the tag is turned about the
+     * vertical axis, radians counterclockwise seen from above, 0 when it faces the camera
+     * squarely; once the frame is in the robot frame it is relative to the robot instead.
+     */
     public Rotation rotation;
     public double xa;
     public double ya;
     public double confidence;
 
+    // Parsed frames reuse their VisionObjects, so each one owns a Rotation to fill in.
+    // transient keeps Gson from writing it out alongside rotation.
+    transient final Rotation pooledRotation = new Rotation();
+    // AprilTag ID filled in by the parser and codec, -1 when it has to come from the label
+    transient int tagId = -1;
+
     //public DrivetrainSubsystem m_drivetrainSubsystem;
     public VisionObject()
     {
-        NetworkTable monsterVision = NetworkTableInstance.getDefault().getTable("MonsterVision");
     }
 
     public VisionObject(String objectType, double x, double y, double z, double r, double xa, double ya) {
@@ -49,6 +44,7 @@ public class VisionObject {
         this.y = y;
         this.z = z;
         this.r = r;
+        this.rotation = pooledRotation;
         this.rotation.x = 0;
         this.rotation.y = 0;
         this.rotation.z = 0;
@@ -59,60 +55,165 @@ public class VisionObject {
         //m_drivetrainSubsystem = new DrivetrainSubsystem();
     }
 
-    // public void motionCompensate(DrivetrainSubsystem drivetrainSubsystem, boolean compensateTranslation) {
-    //     Constants.OBJECT_DETECTION_LATENCY = SmartDashboard.getNumber("Object detection latency", 0.217);
-    //     /*
-    //     if (compensateTranslation) {
-    //     // Normally, we'd subtract the distance travelled.  However, the camera points off the back
-    //     // of the robot.  Therefore, motion in the direction the camera is aiming is returned by
-    //     // getVelocityX() as negative.
-    //         z += drivetrainSubsystem.getKinematicVelocity().x * RobotMap.OBJECT_DETECTION_LATENCY;
-    //         x -= drivetrainSubsystem.getKinematicVelocity().y * RobotMap.OBJECT_DETECTION_LATENCY;
-    //         SmartDashboard.putNumber("X Velocity", drivetrainSubsystem.getKinematicVelocity().x);
-    //         SmartDashboard.putNumber("Z Velocity", drivetrainSubsystem.getKinematicPosition().y);
-    //     }
-    //     */
-        
-    //     // double omega = drivetrainSubsystem.getGyroscope().getRate();
-    //     // double theta = omega * RobotMap.OBJECT_DETECTION_LATENCY;
-
-    //     double theta = 0;
-    //     double targetTime = Timer.getFPGATimestamp() - Constants.OBJECT_DETECTION_LATENCY; // seconds
-
-    //     for (int i = 0; i < Robot.circularBufferSize; i++) {
-    //         int indexOfInterest = (Robot.bufferSlotNumber + Robot.circularBufferSize - i) % Robot.circularBufferSize; 
-
-    //         if (Robot.time[indexOfInterest] < targetTime) {
-    //             theta = Units.degreesToRadians(m_drivetrainSubsystem.getGyroscope().getAngle()) - Robot.angle[Robot.bufferSlotNumber] ;// TODO: Turn angle to radiance
-    //             break;
-    //         }
-    //     }
-        
-    //     double cosTheta = Math.cos(theta);
-    //     double sinTheta = Math.sin(theta);
-
-    //     double newZ = z * cosTheta - x * sinTheta;
-    //     double newX = z * sinTheta + x * cosTheta;
-
-    //     z = newZ;
-    //     x = newX;
-    // }
-
-    /** Return ID of AprilTag on field */
+    /**
+     * Moves this detection from the robot frame at capture time into the robot frame now.
+     *
+     * <p>Detections use the camera's axes (x to the right, z straight out) with the robot's
+     * center as origin and z along the robot's forward direction, in MonsterVision units.
+     * The robot's motion since capture is given in meters and radians, expressed in the robot
+     * frame at capture time.
+     * @param forward meters driven forward since capture
+     * @param left meters driven to the left since capture
+     * @param rotation radians turned counterclockwise since capture
+     */
+    public void motionCompensate(double forward, double left, double rotation) {
+        // into WPILib's robot axes (x forward, y left) in meters
+        double objectForward = z / Constants.VISION_UNITS_PER_METER - forward;
+        double objectLeft = -x / Constants.VISION_UNITS_PER_METER - left;
+
+        double cosTheta = Math.cos(rotation);
+        double sinTheta = Math.sin(rotation);
+        double newForward = objectForward * cosTheta + objectLeft * sinTheta;
+        double newLeft = -objectForward * sinTheta + objectLeft * cosTheta;
+
+        z = newForward * Constants.VISION_UNITS_PER_METER;
+        x = -newLeft * Constants.VISION_UNITS_PER_METER;
+        rotateYaw(-rotation);
+    }
+
+    /** Turns the tag's rotation about the vertical axis, e.g. from the camera's frame to the robot's */
+    public void rotateYaw(double yaw) {
+        if (this.rotation != null) {
+            this.rotation.y += yaw;
+        }
+    }
+
+    /**
+     * Returns where this detection is on the field
+     * @param robotPose pose of the robot the detection is relative to
+     */
+    public Translation2d toField(Pose2d robotPose) {
+        double forward = z / Constants.VISION_UNITS_PER_METER;
+        double left = -x / Constants.VISION_UNITS_PER_METER;
+        double cosTheta = robotPose.getRotation().getCos();
+        double sinTheta = robotPose.getRotation().getSin();
+        return new Translation2d(
+            robotPose.getX() + forward * cosTheta - left * sinTheta,
+            robotPose.getY() + forward * sinTheta + left * cosTheta);
+    }
+
+    /** Copies every field of another detection into this one */
+    public void set(VisionObject other) {
+        objectLabel = other.objectLabel;
+        x = other.x;
+        y = other.y;
+        z = other.z;
+        r = other.r;
+        xa = other.xa;
+        ya = other.ya;
+        confidence = other.confidence;
+        tagId = other.tagId;
+        if (other.rotation == null) {
+            rotation = null;
+        } else {
+            rotation = pooledRotation;
+            rotation.x = other.rotation.x;
+            rotation.y = other.rotation.y;
+            rotation.z = other.rotation.z;
+        }
+    }
+
+    /** Clears every field so the object can be refilled by {@link VisionObjectParser} */
+    void reset() {
+        objectLabel = null;
+        x = 0;
+        y = 0;
+        z = 0;
+        r = 0;
+        rotation = null;
+        pooledRotation.x = 0;
+        pooledRotation.y = 0;
+        pooledRotation.z = 0;
+        xa = 0;
+        ya = 0;
+        confidence = 0;
+        tagId = -1;
+    }
+
+    /** Returns whether this is an AprilTag or a neural network detection */
+    public VisionObjectType getType() {
+        return objectLabel != null && objectLabel.startsWith("tag") ? VisionObjectType.APRIL_TAG : VisionObjectType.OBJECT;
+    }
+
+    public boolean isAprilTag() {
+        return getType() == VisionObjectType.APRIL_TAG;
+    }
+
+    /**
+     * The confidence a detection needs to match a label query: tags count at any confidence,
+     * other objects need {@link Constants#VISION_MIN_OBJECT_CONFIDENCE}. Every query compares
+     * with confidence &gt;= this.
+     */
+    public static double minimumConfidenceFor(String objectLabel) {
+        return objectLabel.contains("tag") ? 0.0 : Constants.VISION_MIN_OBJECT_CONFIDENCE;
+    }
+
+    /** Return ID of AprilTag on field, or -1 if this isn't a tag */
     public int getAprilTagID() {
-        return Integer.valueOf(objectLabel.substring(objectLabel.indexOf(" ") + 1, objectLabel.length()));
+        // only hand-built and Gson-loaded objects need the label parsed
+        return tagId >= 0 ? tagId : VisionFrameCodec.tagIdOf(objectLabel);
+    }
+
+    /** Whether MonsterVision sent a rotation for this detection; only tags have one */
+    public boolean hasRotation() {
+        return rotation != null;
+    }
+
+    public double getRotationX() {
+        return rotation == null ? 0 : rotation.x;
+    }
+
+    public double getRotationY() {
+        return rotation == null ? 0 : rotation.y;
+    }
+
+    public double getRotationZ() {
+        return rotation == null ? 0 : rotation.z;
+    }
+
+    /** Returns the distance along the floor from the robot's center, MonsterVision units */
+    public double getRadius() {
+        return Math.sqrt(x * x + z * z);
+    }
+
+    /** Returns the angle to the detection in radians, counterclockwise from the robot's front */
+    public double getBearing() {
+        return Math.atan2(-x, z);
+    }
+
+    /**
+     * Puts this detection on the field without allocating, as {@link #toField(Pose2d)} does
+     * @param robotX robot pose the detection is relative to, meters and radians
+     * @param out receives {field x, field y}, meters
+     */
+    public void toField(double robotX, double robotY, double robotTheta, double[] out) {
+        double cosTheta = Math.cos(robotTheta);
+        double sinTheta = Math.sin(robotTheta);
+        out[0] = robotX + (z * cosTheta + x * sinTheta) / Constants.VISION_UNITS_PER_METER;
+        out[1] = robotY + (z * sinTheta - x * cosTheta) / Constants.VISION_UNITS_PER_METER;
     }
     
-    /** Returns FIELD centric coordinates of the Robot*/
-    public Translation2d getFieldXY() {
-        Translation2d FieldXY = new Translation2d(x,z);
-        return FieldXY;
+    /**
+     * Returns FIELD centric coordinates of the detection
+     * @param robotPose pose of the robot the detection is relative to
+     */
+    public Translation2d getFieldXY(Pose2d robotPose) {
+        return toField(robotPose);
     }
 
     /** Returns robot's heading (angle bot needs to rotate to to be pointing at the apriltag) */
     public Rotation2d getHeadingOffset() {
-        Rotation2d HeadingOffset = new Rotation2d(x,z);
-        return HeadingOffset;
+        return new Rotation2d(getBearing());
     }
 
     public String toString() {
@@ -0,0 +1,470 @@
+package frc.robot.models;
+
+/**
+ * Streaming parser for the MonsterVision ObjectTracker payload, a JSON array of objects with the
+ * fields of {@link VisionObject}.
+ *
+ * <p>Unlike Gson this never creates VisionObjects. It fills the reusable slots of a pooled
+ * {@link VisionFrame}, interns labels so the same label string is handed out every frame along
+ * with its class and tag ID, and drops objects with zero depth in the same pass. Unknown keys
+ * are skipped so MonsterVision can add fields without breaking the robot.
+ *
+ * <p>Numbers are read the way Gson's lenient reader reads them into double fields, so the
+ * NaN, Infinity and -Infinity that Python's json.dumps writes are accepted, as are quoted
+ * numbers, and null leaves a field at 0. Anything Gson would reject makes the whole frame
+ * malformed.
+ */
+public class VisionObjectParser {
+    private static final int MAX_LABELS = 64;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final String[] labels = new String[MAX_LABELS];
+    private final int[] labelClassIds = new int[MAX_LABELS];
+    private final int[] labelTagIds = new int[MAX_LABELS];
+    private int labelCount = 0;
+    // which interned label the last parsed object used, -1 if it wasn't interned
+    private int lastLabelIndex;
+
+    private String json;
+    private int pos;
+
+    /**
+     * Parses one ObjectTracker frame into a pooled frame's objects, class IDs and tag IDs
+     * @param payload the JSON string published by MonsterVision
+     * @param frame frame to fill; objects past its capacity are skipped
+     * @return number of objects parsed, or -1 if the payload is malformed
+     */
+    public int parse(String payload, VisionFrame frame) {
+        json = payload;
+        pos = 0;
+        try {
+            return parseArray(frame);
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            return -1;
+        } finally {
+            json = null;
+        }
+    }
+
+    private int parseArray(VisionFrame frame) {
+        VisionObject[] slots = frame.objects;
+        if (json == null) {
+            return -1;
+        }
+        skipWhitespace();
+        if (!consume('[')) {
+            return -1;
+        }
+        int count = 0;
+        skipWhitespace();
+        if (consume(']')) {
+            return finish(count);
+        }
+        while (true) {
+            if (count < slots.length) {
+                lastLabelIndex = -1;
+                VisionObject vo = slots[count];
+                if (!parseObject(vo)) {
+                    return -1;
+                }
+                if (lastLabelIndex >= 0) {
+                    frame.classIds[count] = labelClassIds[lastLabelIndex];
+                    frame.tagIds[count] = labelTagIds[lastLabelIndex];
+                } else {
+                    frame.classIds[count] = VisionFrameCodec.classIdOf(vo.objectLabel);
+                    frame.tagIds[count] = VisionFrameCodec.tagIdOf(vo.objectLabel);
+                }
+                vo.tagId = frame.tagIds[count];
+                // drop the (0, 0, 0) objects MonsterVision reports for things it can't range
+                if (vo.z != 0) {
+                    count++;
+                }
+            } else if (!skipValue()) {
+                return -1;
+            }
+            skipWhitespace();
+            if (consume(']')) {
+                return finish(count);
+            }
+            if (!consume(',')) {
+                return -1;
+            }
+            skipWhitespace();
+        }
+    }
+
+    private int finish(int count) {
+        skipWhitespace();
+        return pos == json.length() ? count : -1;
+    }
+
+    private boolean parseObject(VisionObject vo) {
+        vo.reset();
+        if (!consume('{')) {
+            return false;
+        }
+        skipWhitespace();
+        if (consume('}')) {
+            return true;
+        }
+        while (true) {
+            if (!consume('"')) {
+                return false;
+            }
+            int keyStart = pos;
+            int keyEnd = json.indexOf('"', keyStart);
+            if (keyEnd < 0) {
+                return false;
+            }
+            pos = keyEnd + 1;
+            skipWhitespace();
+            if (!consume(':')) {
+                return false;
+            }
+            skipWhitespace();
+
+            boolean ok;
+            if (keyIs("objectLabel", keyStart, keyEnd)) {
+                if (json.startsWith("null", pos)) {
+                    pos += 4;
+                    vo.objectLabel = null;
+                    lastLabelIndex = -1;
+                    ok = true;
+                } else {
+                    vo.objectLabel = parseLabel();
+                    ok = vo.objectLabel != null;
+                }
+            } else if (keyIs("x", keyStart, keyEnd)) {
+                vo.x = parseNumberField(vo.x);
+                ok = true;
+            } else if (keyIs("y", keyStart, keyEnd)) {
+                vo.y = parseNumberField(vo.y);
+                ok = true;
+            } else if (keyIs("z", keyStart, keyEnd)) {
+                vo.z = parseNumberField(vo.z);
+                ok = true;
+            } else if (keyIs("r", keyStart, keyEnd)) {
+                vo.r = parseNumberField(vo.r);
+                ok = true;
+            } else if (keyIs("xa", keyStart, keyEnd)) {
+                vo.xa = parseNumberField(vo.xa);
+                ok = true;
+            } else if (keyIs("ya", keyStart, keyEnd)) {
+                vo.ya = parseNumberField(vo.ya);
+                ok = true;
+            } else if (keyIs("confidence", keyStart, keyEnd)) {
+                vo.confidence = parseNumberField(vo.confidence);
+                ok = true;
+            } else if (keyIs("rotation", keyStart, keyEnd)) {
+                ok = parseRotation(vo);
+            } else {
+                ok = skipValue();
+            }
+            if (!ok) {
+                return false;
+            }
+
+            skipWhitespace();
+            if (consume('}')) {
+                return true;
+            }
+            if (!consume(',')) {
+                return false;
+            }
+            skipWhitespace();
+        }
+    }
+
+    private boolean parseRotation(VisionObject vo) {
+        if (json.startsWith("null", pos)) {
+            pos += 4;
+            return true;
+        }
+        Rotation rotation = vo.pooledRotation;
+        if (!consume('{')) {
+            return false;
+        }
+        vo.rotation = rotation;
+        skipWhitespace();
+        if (consume('}')) {
+            return true;
+        }
+        while (true) {
+            if (!consume('"')) {
+                return false;
+            }
+            int keyStart = pos;
+            int keyEnd = json.indexOf('"', keyStart);
+            if (keyEnd < 0) {
+                return false;
+            }
+            pos = keyEnd + 1;
+            skipWhitespace();
+            if (!consume(':')) {
+                return false;
+            }
+            skipWhitespace();
+
+            if (keyIs("x", keyStart, keyEnd)) {
+                rotation.x = parseNumberField(rotation.x);
+            } else if (keyIs("y", keyStart, keyEnd)) {
+                rotation.y = parseNumberField(rotation.y);
+            } else if (keyIs("z", keyStart, keyEnd)) {
+                rotation.z = parseNumberField(rotation.z);
+            } else if (!skipValue()) {
+                return false;
+            }
+
+            skipWhitespace();
+            if (consume('}')) {
+                return true;
+            }
+            if (!consume(',')) {
+                return false;
+            }
+            skipWhitespace();
+        }
+    }
+
+    private boolean keyIs(String key, int start, int end) {
+        return end - start == key.length() && json.regionMatches(start, key, 0, key.length());
+    }
+
+    /** Reads a string value, returning the interned copy of it if one has been seen before */
+    private String parseLabel() {
+        if (!consume('"')) {
+            return null;
+        }
+        int start = pos;
+        int end = json.indexOf('"', start);
+        if (end < 0) {
+            return null;
+        }
+        if (json.lastIndexOf('\\', end) >= start) {
+            // escaped labels never come from MonsterVision, let the slow path deal with them
+            return parseEscapedString(start);
+        }
+        pos = end + 1;
+        return intern(start, end);
+    }
+
+    private String intern(int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < labelCount; i++) {
+            String label = labels[i];
+            if (label.length() == length && json.regionMatches(start, label, 0, length)) {
+                lastLabelIndex = i;
+                return label;
+            }
+        }
+        String label = json.substring(start, end);
+        if (labelCount < labels.length) {
+            labels[labelCount] = label;
+            labelClassIds[labelCount] = VisionFrameCodec.classIdOf(label);
+            labelTagIds[labelCount] = VisionFrameCodec.tagIdOf(label);
+            lastLabelIndex = labelCount;
+            labelCount++;
+        }
+        return label;
+    }
+
+    private String parseEscapedString(int start) {
+        StringBuilder sb = new StringBuilder();
+        pos = start;
+        while (true) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char escaped = json.charAt(pos++);
+            switch (escaped) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    pos += 4;
+                    break;
+                default: sb.append(escaped); break;
+            }
+        }
+    }
+
+    /** Reads a number field; null leaves it as it was, as Gson does for primitive fields */
+    private double parseNumberField(double current) {
+        if (json.startsWith("null", pos)) {
+            pos += 4;
+            return current;
+        }
+        return parseNumber();
+    }
+
+    /**
+     * Reads a number, as Gson's lenient reader does. Plain JSON numbers are read without
+     * allocating; anything with more precision than a double can represent exactly falls back
+     * to Double.parseDouble, as do quoted numbers and unquoted words like NaN, so results
+     * always match Gson.
+     */
+    private double parseNumber() {
+        int start = pos;
+        char first = json.charAt(pos);
+        if (first == '"') {
+            return Double.parseDouble(parseEscapedString(pos + 1));
+        }
+        if (!isDigit(first) && !(first == '-' && pos + 1 < json.length() && isDigit(json.charAt(pos + 1)))) {
+            return parseLiteral(start);
+        }
+        boolean negative = consume('-');
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+
+        while (pos < json.length() && isDigit(json.charAt(pos))) {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (json.charAt(pos) - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exact = false;
+            }
+            pos++;
+        }
+        if (pos < json.length() && json.charAt(pos) == '.') {
+            pos++;
+            while (pos < json.length() && isDigit(json.charAt(pos))) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (json.charAt(pos) - '0');
+                    exponent--;
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                } else {
+                    exact = false;
+                }
+                pos++;
+            }
+        }
+        if (pos < json.length() && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {
+            pos++;
+            boolean negativeExponent = consume('-');
+            if (!negativeExponent) {
+                consume('+');
+            }
+            int e = 0;
+            int exponentStart = pos;
+            while (pos < json.length() && isDigit(json.charAt(pos))) {
+                e = Math.min(e * 10 + (json.charAt(pos) - '0'), 10000);
+                pos++;
+            }
+            if (pos == exponentStart) {
+                // no exponent digits, which Double.parseDouble rejects too
+                return parseLiteral(start);
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (pos < json.length() && isLiteral(json.charAt(pos))) {
+            // e.g. 1.5d, which Gson reads as one unquoted word
+            return parseLiteral(start);
+        }
+
+        if (exact && mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            // both operands are exact doubles, so one multiply or divide is correctly rounded
+            double value = exponent >= 0
+                ? mantissa * POWERS_OF_TEN[exponent]
+                : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(json.substring(start, pos));
+    }
+
+    /** Reads an unquoted word, e.g. NaN or -Infinity, and parses it as Gson would */
+    private double parseLiteral(int start) {
+        pos = start;
+        while (pos < json.length() && isLiteral(json.charAt(pos))) {
+            pos++;
+        }
+        return Double.parseDouble(json.substring(start, pos));
+    }
+
+    private boolean skipValue() {
+        char c = json.charAt(pos);
+        if (c == '"') {
+            pos++;
+            while (true) {
+                char s = json.charAt(pos++);
+                if (s == '\\') {
+                    pos++;
+                } else if (s == '"') {
+                    return true;
+                }
+            }
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                char s = json.charAt(pos++);
+                if (s == '"') {
+                    pos--;
+                    skipValue();
+                } else if (s == '{' || s == '[') {
+                    depth++;
+                } else if (s == '}' || s == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+            return true;
+        }
+        // a number, true, false, null or any other unquoted word, which lenient Gson skips
+        int start = pos;
+        while (pos < json.length() && isLiteral(json.charAt(pos))) {
+            pos++;
+        }
+        return pos > start;
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private boolean consume(char expected) {
+        if (pos < json.length() && json.charAt(pos) == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** Whether Gson's lenient reader takes this character as part of an unquoted word */
+    private static boolean isLiteral(char c) {
+        switch (c) {
+            case '/': case '\\': case ';': case '#': case '=':
+            case '{': case '}': case '[': case ']': case ':': case ',':
+            case ' ': case '\t': case '\f': case '\r': case '\n':
+                return false;
+            default:
+                return true;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package frc.robot.models;
+
+/** What kind of detector a {@link VisionObject} came from */
+public enum VisionObjectType {
+    /** An AprilTag; its label carries the tag ID and it may have a rotation */
+    APRIL_TAG,
+    /** A game piece or other object found by the neural network */
+    OBJECT
+}
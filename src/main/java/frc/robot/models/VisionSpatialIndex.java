@@ -0,0 +1,335 @@
+package frc.robot.models;
+
+import frc.robot.Constants;
+
+/**
+ * Where-is-it queries over one frame's detections: k nearest to a point, everything inside a
+ * sector (say, in front of the intake) or inside a polygon, filtered by label and confidence.
+ *
+ * <p>Positions are in meters, x forward and y left of the robot's center, or field coordinates
+ * when a query is field relative and the frame carries a robot pose. Detections are bucketed
+ * into a uniform grid the first time a frame is queried, so a query only looks at the cells it
+ * can reach rather than every detection. Results are written closest first into arrays the
+ * caller owns, and nothing is allocated.
+ */
+public class VisionSpatialIndex {
+    private static final int MAX_OBJECTS = Constants.VISION_MAX_OBJECTS_PER_FRAME;
+    private static final int MAX_CELLS_PER_SIDE = 16;
+    public static final int MAX_POLYGON_VERTICES = 16;
+
+    private VisionFrame frame;
+    private boolean built = false;
+    private int count = 0;
+
+    // robot-frame positions in meters
+    private final double[] xs = new double[MAX_OBJECTS];
+    private final double[] ys = new double[MAX_OBJECTS];
+
+    // grid: the items of cell c are cellItems[cellStart[c] .. cellStart[c + 1])
+    private double originX, originY, cellSize;
+    private int columns, rows;
+    private final int[] cellStart = new int[MAX_CELLS_PER_SIDE * MAX_CELLS_PER_SIDE + 1];
+    private final int[] cellItems = new int[MAX_OBJECTS];
+    private final int[] itemCell = new int[MAX_OBJECTS];
+
+    // query scratch
+    private final double[] resultDistances = new double[MAX_OBJECTS];
+    private final double[] polygonX = new double[MAX_POLYGON_VERTICES];
+    private final double[] polygonY = new double[MAX_POLYGON_VERTICES];
+    private final double[] point = new double[2];
+    private String queryLabel;
+    private int queryClass;
+    private double queryConfidence;
+
+    /** Points the index at a new frame, or null for no detections. Cheap; the grid is built on the first query. */
+    public void update(VisionFrame frame) {
+        this.frame = frame;
+        built = false;
+    }
+
+    /** Number of detections in the indexed frame */
+    public int size() {
+        return frame == null ? 0 : Math.min(frame.count, MAX_OBJECTS);
+    }
+
+    private void build() {
+        built = true;
+        count = size();
+        if (count == 0) {
+            columns = rows = 0;
+            return;
+        }
+
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            VisionObject vo = frame.objects[i];
+            xs[i] = vo.z / Constants.VISION_UNITS_PER_METER;
+            ys[i] = -vo.x / Constants.VISION_UNITS_PER_METER;
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+
+        // cells of the configured size, grown if the detections are spread out too far for that
+        double extent = Math.max(maxX - minX, maxY - minY);
+        cellSize = Math.max(Constants.VISION_INDEX_CELL_SIZE, extent / MAX_CELLS_PER_SIDE * 1.0001);
+        originX = minX;
+        originY = minY;
+        columns = Math.min(MAX_CELLS_PER_SIDE, (int) ((maxX - minX) / cellSize) + 1);
+        rows = Math.min(MAX_CELLS_PER_SIDE, (int) ((maxY - minY) / cellSize) + 1);
+
+        // counting sort of the detections by cell
+        int cells = columns * rows;
+        for (int c = 0; c <= cells; c++) {
+            cellStart[c] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            itemCell[i] = rowOf(ys[i]) * columns + columnOf(xs[i]);
+            cellStart[itemCell[i] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            cellItems[--cellStart[itemCell[i] + 1]] = i;
+        }
+        // the decrements above shifted every start down by one cell; undo that
+        for (int c = 0; c < cells; c++) {
+            cellStart[c] = cellStart[c + 1];
+        }
+        cellStart[cells] = count;
+    }
+
+    private int columnOf(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - originX) / cellSize)));
+    }
+
+    private int rowOf(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - originY) / cellSize)));
+    }
+
+    /**
+     * Finds the k detections nearest to a point, by true distance
+     * @param x forward, or field x if fieldRelative, meters
+     * @param y left, or field y if fieldRelative, meters
+     * @param k how many to find, at most out.length
+     * @param label only detections whose label contains this, or null for any
+     * @param minimumConfidence only detections at least this confident
+     * @param out receives the detections, nearest first
+     * @return number of detections written to out; 0 for field-relative queries on frames without a pose
+     */
+    public int nearest(double x, double y, boolean fieldRelative, int k, String label, double minimumConfidence, VisionObject[] out) {
+        k = Math.min(k, out.length);
+        if (!prepare(fieldRelative, label, minimumConfidence) || k <= 0) {
+            return 0;
+        }
+        toRobot(x, y, fieldRelative);
+        double qx = point[0];
+        double qy = point[1];
+
+        int found = 0;
+        int column = columnOf(qx);
+        int row = rowOf(qy);
+        int rings = Math.max(columns, rows);
+        for (int r = 0; r <= rings; r++) {
+            // everything in ring r is at least (r - 1) cells away
+            double bound = (r - 1) * cellSize;
+            if (found == k && r > 1 && resultDistances[k - 1] <= bound * bound) {
+                break;
+            }
+            for (int gy = row - r; gy <= row + r; gy++) {
+                if (gy < 0 || gy >= rows) {
+                    continue;
+                }
+                boolean edgeRow = gy == row - r || gy == row + r;
+                // inside the ring only the first and last column are on it
+                int step = edgeRow ? 1 : Math.max(1, 2 * r);
+                for (int gx = column - r; gx <= column + r; gx += step) {
+                    if (gx < 0 || gx >= columns) {
+                        continue;
+                    }
+                    int cell = gy * columns + gx;
+                    for (int n = cellStart[cell]; n < cellStart[cell + 1]; n++) {
+                        int i = cellItems[n];
+                        if (matches(i)) {
+                            double dx = xs[i] - qx;
+                            double dy = ys[i] - qy;
+                            found = insert(out, found, k, i, dx * dx + dy * dy);
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds detections inside a circular sector, e.g. the area in front of the intake
+     * @param x sector apex, forward or field x, meters
+     * @param y sector apex, left or field y, meters
+     * @param heading direction the sector faces, radians counterclockwise from forward (or field x)
+     * @param halfAngle how far either side of heading the sector reaches, radians
+     * @param range sector radius, meters
+     * @param out receives the detections, nearest to the apex first; extra ones are left out
+     * @return number of detections written to out
+     */
+    public int inSector(double x, double y, double heading, double halfAngle, double range, boolean fieldRelative,
+                        String label, double minimumConfidence, VisionObject[] out) {
+        if (!prepare(fieldRelative, label, minimumConfidence) || out.length == 0) {
+            return 0;
+        }
+        toRobot(x, y, fieldRelative);
+        double ox = point[0];
+        double oy = point[1];
+        if (fieldRelative) {
+            heading -= frame.robotTheta;
+        }
+        double cosHeading = Math.cos(heading);
+        double sinHeading = Math.sin(heading);
+        double cosHalf = Math.cos(Math.min(halfAngle, Math.PI));
+
+        int found = 0;
+        int minColumn = columnOf(ox - range), maxColumn = columnOf(ox + range);
+        int minRow = rowOf(oy - range), maxRow = rowOf(oy + range);
+        for (int gy = minRow; gy <= maxRow; gy++) {
+            for (int gx = minColumn; gx <= maxColumn; gx++) {
+                int cell = gy * columns + gx;
+                for (int n = cellStart[cell]; n < cellStart[cell + 1]; n++) {
+                    int i = cellItems[n];
+                    double dx = xs[i] - ox;
+                    double dy = ys[i] - oy;
+                    double distanceSquared = dx * dx + dy * dy;
+                    if (distanceSquared > range * range || !matches(i)) {
+                        continue;
+                    }
+                    // inside the angle when the cosine to the heading is at least cos(halfAngle)
+                    double distance = Math.sqrt(distanceSquared);
+                    if (distance > 0 && (dx * cosHeading + dy * sinHeading) < cosHalf * distance) {
+                        continue;
+                    }
+                    found = insert(out, found, out.length, i, distanceSquared);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds detections inside a simple polygon
+     * @param polygonXs vertex x coordinates, forward or field x, meters
+     * @param polygonYs vertex y coordinates, left or field y, meters
+     * @param vertices number of vertices, at most {@link #MAX_POLYGON_VERTICES}
+     * @param out receives the detections, nearest to the robot first; extra ones are left out
+     * @return number of detections written to out
+     */
+    public int inPolygon(double[] polygonXs, double[] polygonYs, int vertices, boolean fieldRelative,
+                         String label, double minimumConfidence, VisionObject[] out) {
+        if (vertices > MAX_POLYGON_VERTICES) {
+            throw new IllegalArgumentException("polygons can have at most " + MAX_POLYGON_VERTICES + " vertices");
+        }
+        if (!prepare(fieldRelative, label, minimumConfidence) || vertices < 3 || out.length == 0) {
+            return 0;
+        }
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < vertices; v++) {
+            toRobot(polygonXs[v], polygonYs[v], fieldRelative);
+            polygonX[v] = point[0];
+            polygonY[v] = point[1];
+            minX = Math.min(minX, point[0]);
+            maxX = Math.max(maxX, point[0]);
+            minY = Math.min(minY, point[1]);
+            maxY = Math.max(maxY, point[1]);
+        }
+
+        int found = 0;
+        for (int gy = rowOf(minY); gy <= rowOf(maxY); gy++) {
+            for (int gx = columnOf(minX); gx <= columnOf(maxX); gx++) {
+                int cell = gy * columns + gx;
+                for (int n = cellStart[cell]; n < cellStart[cell + 1]; n++) {
+                    int i = cellItems[n];
+                    if (xs[i] < minX || xs[i] > maxX || ys[i] < minY || ys[i] > maxY) {
+                        continue;
+                    }
+                    if (contains(vertices, xs[i], ys[i]) && matches(i)) {
+                        found = insert(out, found, out.length, i, xs[i] * xs[i] + ys[i] * ys[i]);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Even-odd crossing test against the transformed polygon */
+    private boolean contains(int vertices, double x, double y) {
+        boolean inside = false;
+        for (int a = 0, b = vertices - 1; a < vertices; b = a++) {
+            if ((polygonY[a] > y) != (polygonY[b] > y)
+                && x < (polygonX[b] - polygonX[a]) * (y - polygonY[a]) / (polygonY[b] - polygonY[a]) + polygonX[a]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private boolean prepare(boolean fieldRelative, String label, double minimumConfidence) {
+        if (size() == 0 || (fieldRelative && !frame.hasRobotPose)) {
+            return false;
+        }
+        if (!built) {
+            build();
+        }
+        queryLabel = label;
+        queryConfidence = minimumConfidence;
+        // an exact class name matches its own class on the class ID, and other labels on their text
+        int classId = VisionFrameCodec.classIdOf(label);
+        queryClass = classId >= 0 && VisionFrameCodec.CLASS_LABELS[classId].equals(label) ? classId : -1;
+        return true;
+    }
+
+    private boolean matches(int i) {
+        VisionObject vo = frame.objects[i];
+        if (vo.confidence < queryConfidence) {
+            return false;
+        }
+        if (queryLabel == null) {
+            return true;
+        }
+        if (queryClass >= 0 && frame.classIds[i] == queryClass) {
+            return true;
+        }
+        return vo.objectLabel != null && vo.objectLabel.contains(queryLabel);
+    }
+
+    /** Inserts into out keeping it sorted by distance and at most k long, returns the new length */
+    private int insert(VisionObject[] out, int found, int k, int i, double distance) {
+        if (found == k && distance >= resultDistances[k - 1]) {
+            return found;
+        }
+        int slot = found == k ? k - 1 : found;
+        while (slot > 0 && resultDistances[slot - 1] > distance) {
+            out[slot] = out[slot - 1];
+            resultDistances[slot] = resultDistances[slot - 1];
+            slot--;
+        }
+        out[slot] = frame.objects[i];
+        resultDistances[slot] = distance;
+        return found == k ? k : found + 1;
+    }
+
+    private void toRobot(double x, double y, boolean fieldRelative) {
+        if (!fieldRelative) {
+            point[0] = x;
+            point[1] = y;
+            return;
+        }
+        double dx = x - frame.robotX;
+        double dy = y - frame.robotY;
+        double cosTheta = Math.cos(frame.robotTheta);
+        double sinTheta = Math.sin(frame.robotTheta);
+        point[0] = dx * cosTheta + dy * sinTheta;
+        point[1] = -dx * sinTheta + dy * cosTheta;
+    }
+}
@@ -0,0 +1,42 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import frc.robot.Constants;
+
+/** The hardware a {@link DrivetrainSubsystem} drives: four swerve modules and a gyro */
+public class DrivetrainIO {
+  public final SwerveModuleIO frontLeft;
+  public final SwerveModuleIO frontRight;
+  public final SwerveModuleIO backLeft;
+  public final SwerveModuleIO backRight;
+  public final GyroIO gyro;
+
+  public DrivetrainIO(SwerveModuleIO frontLeft, SwerveModuleIO frontRight, SwerveModuleIO backLeft, SwerveModuleIO backRight, GyroIO gyro) {
+    this.frontLeft = frontLeft;
+    this.frontRight = frontRight;
+    this.backLeft = backLeft;
+    this.backRight = backRight;
+    this.gyro = gyro;
+  }
+
+  /** The robot's SPARK MAXes, analog encoders and NavX */
+  public static DrivetrainIO real() {
+    return new DrivetrainIO(
+        new SwerveModuleIOSparkMax(Constants.DRIVETRAIN_FRONT_LEFT_DRIVE_MOTOR,
+                                   Constants.DRIVETRAIN_FRONT_LEFT_ANGLE_MOTOR,
+                                   Constants.DRIVETRAIN_FRONT_LEFT_ANGLE_ENCODER),
+        new SwerveModuleIOSparkMax(Constants.DRIVETRAIN_FRONT_RIGHT_DRIVE_MOTOR,
+                                   Constants.DRIVETRAIN_FRONT_RIGHT_ANGLE_MOTOR,
+                                   Constants.DRIVETRAIN_FRONT_RIGHT_ANGLE_ENCODER),
+        new SwerveModuleIOSparkMax(Constants.DRIVETRAIN_BACK_LEFT_DRIVE_MOTOR,
+                                   Constants.DRIVETRAIN_BACK_LEFT_ANGLE_MOTOR,
+                                   Constants.DRIVETRAIN_BACK_LEFT_ANGLE_ENCODER),
+        new SwerveModuleIOSparkMax(Constants.DRIVETRAIN_BACK_RIGHT_DRIVE_MOTOR,
+                                   Constants.DRIVETRAIN_BACK_RIGHT_ANGLE_MOTOR,
+                                   Constants.DRIVETRAIN_BACK_RIGHT_ANGLE_ENCODER),
+        new GyroIONavX());
+  }
+}
@@ -7,7 +7,6 @@ package frc.robot.subsystems;
 import java.util.List;
 import java.util.function.Supplier;
 
-import com.kauailabs.navx.frc.AHRS;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.ProfiledPIDController;
@@ -16,8 +15,6 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
-import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.trajectory.Trajectory;
 import edu.wpi.first.math.trajectory.TrajectoryConfig;
@@ -25,21 +22,32 @@ import edu.wpi.first.math.trajectory.TrajectoryGenerator;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Joystick;
-import edu.wpi.first.wpilibj.SPI;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.SwerveControllerCommand;
 import frc.robot.Constants;
-import frc.robot.RobotContainer;
+import frc.robot.models.AprilTagTable;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionObject;
+import frc.robot.utils.DriveSensorSnapshot;
+import frc.robot.utils.PoseHistory;
+import frc.robot.utils.SeqLockPose;
+import frc.robot.utils.SwerveKinematicsSolver;
+import frc.robot.utils.SwervePoseEstimator;
+import frc.robot.utils.TripleBuffer;
 
 public class DrivetrainSubsystem extends SubsystemBase {
     public static final double kMaxSpeed = 3.63; // 3.63 meters per second  Max Speed for Front, Back, Left, Right
     public final double kMaxAngularSpeed = Math.PI; // 1/2 rotation per second   Max Speed for Rotation
-    private SwerveModuleState[] swerveModuleStates;
 
-    public static Joystick rightJoystick = RobotContainer.rightJoystick;
-    public static Joystick leftJoystick = RobotContainer.leftJoystick;
+    // the same sticks as RobotContainer's, opened here so a drivetrain can be built without it
+    public static Joystick rightJoystick = new Joystick(Constants.RIGHT_JOYSTICK_CHANNEL);
+    public static Joystick leftJoystick = new Joystick(Constants.LEFT_JOYSTICK_CHANNEL);
 
     public final double m_drivetrainWheelbaseWidth =  Constants.DRIVETRAIN_WHEELBASE_WIDTH;  //Calibrated for 2024 BunnyBots
     public final double m_drivetrainWheelbaseLength = Constants.DRIVETRAIN_WHEELBASE_LENGTH; //Calibrated for 2024 BunnyBots
@@ -58,55 +66,132 @@ public class DrivetrainSubsystem extends SubsystemBase {
     public final Translation2d m_backRightLocation = 
             new Translation2d(m_drivetrainWheelbaseWidth/2, -m_drivetrainWheelbaseLength/2);
 
-    public final SwerveModule m_frontLeft = new SwerveModule(Constants.DRIVETRAIN_FRONT_LEFT_DRIVE_MOTOR, 
-                                                              Constants.DRIVETRAIN_FRONT_LEFT_ANGLE_MOTOR, 
-                                                              Constants.DRIVETRAIN_FRONT_LEFT_ANGLE_ENCODER, 
-                                                              Constants.FRONT_LEFT_ANGLE_OFFSET_COMPETITION,
-                                                              1.0);
-    public final SwerveModule m_frontRight = new SwerveModule(Constants.DRIVETRAIN_FRONT_RIGHT_DRIVE_MOTOR, 
-                                                              Constants.DRIVETRAIN_FRONT_RIGHT_ANGLE_MOTOR, 
-                                                              Constants.DRIVETRAIN_FRONT_RIGHT_ANGLE_ENCODER, 
-                                                              Constants.FRONT_RIGHT_ANGLE_OFFSET_COMPETITION,
-                                                              1.0);
-    public final SwerveModule m_backLeft = new SwerveModule(Constants.DRIVETRAIN_BACK_LEFT_DRIVE_MOTOR, 
-                                                              Constants.DRIVETRAIN_BACK_LEFT_ANGLE_MOTOR, 
-                                                              Constants.DRIVETRAIN_BACK_LEFT_ANGLE_ENCODER, 
-                                                              Constants.BACK_LEFT_ANGLE_OFFSET_COMPETITION,
-                                                              1.0);
-    public final SwerveModule m_backRight = new SwerveModule(Constants.DRIVETRAIN_BACK_RIGHT_DRIVE_MOTOR, 
-                                                              Constants.DRIVETRAIN_BACK_RIGHT_ANGLE_MOTOR, 
-                                                              Constants.DRIVETRAIN_BACK_RIGHT_ANGLE_ENCODER, 
-                                                              Constants.BACK_RIGHT_ANGLE_OFFSET_COMPETITION,
-                                                              1.0);
+    /** Module locations in kinematics order: front left, front right, back left, back right */
+    public static Translation2d[] getModuleLocations() {
+      return new Translation2d[] {
+        new Translation2d(-Constants.DRIVETRAIN_WHEELBASE_WIDTH/2, Constants.DRIVETRAIN_WHEELBASE_LENGTH/2),
+        new Translation2d(Constants.DRIVETRAIN_WHEELBASE_WIDTH/2, Constants.DRIVETRAIN_WHEELBASE_LENGTH/2),
+        new Translation2d(-Constants.DRIVETRAIN_WHEELBASE_WIDTH/2, -Constants.DRIVETRAIN_WHEELBASE_LENGTH/2),
+        new Translation2d(Constants.DRIVETRAIN_WHEELBASE_WIDTH/2, -Constants.DRIVETRAIN_WHEELBASE_LENGTH/2)};
+    }
+
+    /**
+     * Where each module has to be for the drive code to move the robot as asked, in module order:
+     * at the location of the kinematics state it is driven with (see STATE_MODULES). Simulations
+     * put the modules here.
+     */
+    public static Translation2d[] getModulePlacements() {
+      Translation2d[] locations = getModuleLocations();
+      Translation2d[] placements = new Translation2d[locations.length];
+      for (int state = 0; state < locations.length; state++) {
+        placements[STATE_MODULES[state]] = locations[state];
+      }
+      return placements;
+    }
+
+    public final SwerveModule m_frontLeft;
+    public final SwerveModule m_frontRight;
+    public final SwerveModule m_backLeft;
+    public final SwerveModule m_backRight;
   
-    public final AHRS m_gyro = new AHRS(SPI.Port.kMXP, (byte) 200);
+    public final GyroIO m_gyro;
 
     private final SwerveDriveKinematics m_kinematics = new SwerveDriveKinematics(
       m_frontLeftLocation,
       m_frontRightLocation, 
       m_backLeftLocation, 
       m_backRightLocation);
+
+    // The same kinematics on plain arrays, so the drive and odometry loops don't allocate
+    private final SwerveKinematicsSolver m_kinematicsSolver = new SwerveKinematicsSolver(
+      m_frontLeftLocation,
+      m_frontRightLocation, 
+      m_backLeftLocation, 
+      m_backRightLocation);
+
+    // modules in kinematics order, the order of the sensor snapshots
+    private final SwerveModule[] m_modules;
+    // index in m_modules of the module driven by each kinematics state: FL takes state 1, FR 0, BL 3 and BR 2
+    private static final int[] STATE_MODULES = {1, 0, 3, 2};
+
+    // last commanded module states in kinematics order, reused every loop
+    private final double[] m_stateSpeeds = new double[4];
+    private final double[] m_stateAngles = new double[4];
+    private final double[] m_chassisSpeeds = new double[3];
+
+    // Sensors are read once per odometry update and handed to the robot loop, which uses the
+    // newest reading for everything it does that loop
+    private final TripleBuffer<DriveSensorSnapshot> m_sensorBuffer =
+        new TripleBuffer<>(() -> new DriveSensorSnapshot(4));
+    private DriveSensorSnapshot m_sensors = m_sensorBuffer.getFront();
+    // for resetOdometry(), which can't wait for the odometry thread's next reading
+    private final DriveSensorSnapshot m_resetSensors = new DriveSensorSnapshot(4);
     
     private boolean followJoystics = true;
   
-    public final SwerveDriveOdometry m_odometry =
-        new SwerveDriveOdometry(
-            m_kinematics,
-            m_gyro.getRotation2d().unaryMinus(),
-            new SwerveModulePosition[] {
-              m_frontLeft.getPosition(),
-              m_frontRight.getPosition(),
-              m_backLeft.getPosition(),
-              m_backRight.getPosition()
-            });
-
-  /** Creates a new DrivetrianSubsystem. */
+    // Odometry fused with AprilTag sightings; with vision fusion off it is plain odometry.
+    // Updated on the odometry thread, so only touch it while holding m_odometryLock
+    private final SwervePoseEstimator m_poseEstimator = new SwervePoseEstimator(
+        m_kinematicsSolver,
+        new double[] {Constants.ODOMETRY_STD_DEV, Constants.ODOMETRY_STD_DEV, Constants.ODOMETRY_STD_DEV},
+        Constants.POSE_HISTORY_SIZE);
+
+  // Timestamped pose estimates (heading from the gyro) for lining vision frames up with where
+  // the robot was when the camera captured them
+  private final PoseHistory m_poseHistory = new PoseHistory(Constants.POSE_HISTORY_SIZE);
+
+  private final Object m_odometryLock = new Object();
+  // the newest estimate, for getPose() to read without waiting on the odometry thread
+  private final SeqLockPose m_latestPose = new SeqLockPose();
+  private final Notifier m_odometryThread;
+  // poses periodic() compares to log how far the robot moved
+  private final double[] m_lastPose = new double[3];
+  private final double[] m_currentPose = new double[3];
+  private final double[] m_loggingState = new double[8];
+  private final double[] m_actualLoggingState = new double[8];
+
+  private final AprilTagTable m_tagTable = AprilTagTable.getDefault();
+  private final double[] m_visionPose = new double[3];
+  private boolean m_visionFusion = Constants.VISION_POSE_FUSION_ENABLED;
+  private long m_lastVisionSequence = -1;
+  // until vision has been accepted once the odometry origin is arbitrary, so don't gate on it
+  private boolean m_visionSeeded = false;
+  private int m_visionJumpRejects = 0;
+
+  /** Creates a new DrivetrianSubsystem on the robot's hardware, or simulated hardware in the simulator. */
   public DrivetrainSubsystem() {
+    this(RobotBase.isReal() ? DrivetrainIO.real() : new SwerveDriveSim(Timer::getFPGATimestamp).getIO(),
+        Constants.ODOMETRY_THREADED);
+  }
+
+  /**
+   * Creates a new DrivetrianSubsystem.
+   *
+   * @param io The modules and gyro to drive.
+   * @param odometryThread Whether to integrate odometry on its own thread rather than in periodic().
+   */
+  public DrivetrainSubsystem(DrivetrainIO io, boolean odometryThread) {
+    m_frontLeft = new SwerveModule(io.frontLeft, Constants.FRONT_LEFT_ANGLE_OFFSET_COMPETITION, 1.0);
+    m_frontRight = new SwerveModule(io.frontRight, Constants.FRONT_RIGHT_ANGLE_OFFSET_COMPETITION, 1.0);
+    m_backLeft = new SwerveModule(io.backLeft, Constants.BACK_LEFT_ANGLE_OFFSET_COMPETITION, 1.0);
+    m_backRight = new SwerveModule(io.backRight, Constants.BACK_RIGHT_ANGLE_OFFSET_COMPETITION, 1.0);
+    m_modules = new SwerveModule[] {m_frontLeft, m_frontRight, m_backLeft, m_backRight};
+    m_gyro = io.gyro;
+
     getPose();
 
     // resetAngle() should be called before zeroOdometry() because reseting odometry uses gyro values to do the reset
     resetAngle();
     zeroOdometry();
+
+    // the NavX updates at 200 Hz; integrating at the same rate keeps fast moves from cutting corners
+    if (odometryThread) {
+      m_odometryThread = new Notifier(this::updateOdometry);
+      m_odometryThread.setName("Odometry");
+      m_odometryThread.startPeriodic(Constants.ODOMETRY_PERIOD);
+    } else {
+      m_odometryThread = null;
+    }
   }
 
   public void stopMotors(){   //Zero motorPower
@@ -156,13 +241,22 @@ public class DrivetrainSubsystem extends SubsystemBase {
       endPose = new Pose2d(-endPose.getX(), endPose.getY(), new Rotation2d(Math.toRadians(toRedHead(endPose.getRotation().getDegrees()))));
       endRot*=-1;
     }
-    // angleSupplier expects a final variable so we create desiredRot and give the value of endRot
-    final double desiredRot =endRot;
 
+    Trajectory trajectory = createTrajectory(startPose, middlePose, endPose,
+      Constants.maxModuleLinearSpeed,  // 3.5
+      Constants.maxModuleLinearAccelaration);// 4
+    return createPath(trajectory, endRot);
+  }
 
+  /**
+   * A trajectory through the poses for this drivetrain, as createPath() follows, but with the
+   * speed limits given and without flipping for the red alliance.
+   */
+  public Trajectory createTrajectory(Pose2d startPose, Translation2d middlePose, Pose2d endPose,
+      double maxSpeed, double maxAcceleration) {
     TrajectoryConfig trajectoryConfig = new TrajectoryConfig(
-      Constants.maxModuleLinearSpeed,  // 3.5
-      Constants.maxModuleLinearAccelaration)// 4
+      maxSpeed,
+      maxAcceleration)
       .setKinematics(m_kinematics);
 
     Trajectory trajectory = TrajectoryGenerator.generateTrajectory(
@@ -191,6 +285,17 @@ public class DrivetrainSubsystem extends SubsystemBase {
     
     // Trajectory trajectory = TrajectoryGenerator.generateTrajectory(cvl , trajectoryConfig);
 
+    return trajectory;
+  }
+
+  /**
+   * Follows a trajectory, turning to a heading on the way.
+   * @param endRot heading to turn to, degrees
+   */
+  public Command createPath(Trajectory trajectory, double endRot) {
+    // angleSupplier expects a final variable so we create desiredRot and give the value of endRot
+    final double desiredRot =endRot;
+
     TrapezoidProfile.Constraints kThetaControllerConstraints = new TrapezoidProfile.Constraints(Constants.kMaxModuleAngularSpeedRadiansPerSecond, Constants.kMaxModuleAngularAccelerationRadiansPerSecondSquared);
 
     PIDController xController = new PIDController(0.4, 0, 0);
@@ -233,6 +338,10 @@ public class DrivetrainSubsystem extends SubsystemBase {
     this.followJoystics =followJoystics;
   }
 
+  public boolean isFollowingJoystick() {
+    return followJoystics;
+  }
+
 
   private static double xPowerCommanded = 0;
   private static double yPowerCommanded = 0;
@@ -253,6 +362,15 @@ public class DrivetrainSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
+      getPose(m_lastPose);
+      if (m_odometryThread == null) {
+        updateOdometry();
+      }
+      // everything this loop reads the same sensor values, those of the newest odometry update
+      m_sensorBuffer.update();
+      m_sensors = m_sensorBuffer.getFront();
+      getPose(m_currentPose);
+
       //Hat Power Overides for Trimming Position and Rotation
       // System.out.println("X: "+getPose().getX()+"\tY: "+getPose().getY()+"\tRot: "+getPose().getRotation().getDegrees());
       if (followJoystics) {
@@ -298,40 +416,34 @@ public class DrivetrainSubsystem extends SubsystemBase {
       
       SmartDashboard.putNumber("rotCommanded", rotCommanded);
 
-      double loggingState[] = {     //Array for predicted values
-        swerveModuleStates[3].angle.getDegrees(), // Order here is BR, FR, BL, FL; order on Advantage Scope is FL, FR, BL, BR, but it works like this and we don't know why
-        swerveModuleStates[3].speedMetersPerSecond,
-        swerveModuleStates[1].angle.getDegrees(),
-        swerveModuleStates[1].speedMetersPerSecond,
-        swerveModuleStates[2].angle.getDegrees(),
-        swerveModuleStates[2].speedMetersPerSecond,
-        swerveModuleStates[0].angle.getDegrees(),
-        swerveModuleStates[0].speedMetersPerSecond,
-      };
-
-      double actualLoggingState[] = {
-        m_backRight.getTurningEncoderRadians() * 180 / Math.PI, // same order problem as predicted values
-        m_backRight.getVelocity(),
-        m_frontRight.getTurningEncoderRadians() * 180 / Math.PI,
-        m_frontRight.getVelocity(),
-        m_backLeft.getTurningEncoderRadians() * 180 / Math.PI,
-        m_backLeft.getVelocity(),
-        m_frontLeft.getTurningEncoderRadians() * 180 / Math.PI,
-        m_frontLeft.getVelocity(),
-      };
-
-      SmartDashboard.putNumberArray("SwerveModuleStates",loggingState);
-      SmartDashboard.putNumberArray("ActualSwerveModuleState", actualLoggingState);
+      //Array for predicted values
+      // Order here is BR, FR, BL, FL; order on Advantage Scope is FL, FR, BL, BR, but it works like this and we don't know why
+      m_loggingState[0] = Math.toDegrees(m_stateAngles[3]);
+      m_loggingState[1] = m_stateSpeeds[3];
+      m_loggingState[2] = Math.toDegrees(m_stateAngles[1]);
+      m_loggingState[3] = m_stateSpeeds[1];
+      m_loggingState[4] = Math.toDegrees(m_stateAngles[2]);
+      m_loggingState[5] = m_stateSpeeds[2];
+      m_loggingState[6] = Math.toDegrees(m_stateAngles[0]);
+      m_loggingState[7] = m_stateSpeeds[0];
+
+      m_actualLoggingState[0] = m_sensors.angles[3] * 180 / Math.PI; // same order problem as predicted values
+      m_actualLoggingState[1] = m_sensors.velocities[3];
+      m_actualLoggingState[2] = m_sensors.angles[1] * 180 / Math.PI;
+      m_actualLoggingState[3] = m_sensors.velocities[1];
+      m_actualLoggingState[4] = m_sensors.angles[2] * 180 / Math.PI;
+      m_actualLoggingState[5] = m_sensors.velocities[2];
+      m_actualLoggingState[6] = m_sensors.angles[0] * 180 / Math.PI;
+      m_actualLoggingState[7] = m_sensors.velocities[0];
+
+      SmartDashboard.putNumberArray("SwerveModuleStates",m_loggingState);
+      SmartDashboard.putNumberArray("ActualSwerveModuleState", m_actualLoggingState);
 
       
 
-    Pose2d lastPose2d = m_odometry.getPoseMeters();
-    updateOdometry();
-    Pose2d currentPose2d = m_odometry.getPoseMeters();
-
-    SmartDashboard.putNumber("deltaX", currentPose2d.getX()-lastPose2d.getX());
-    SmartDashboard.putNumber("deltaY", currentPose2d.getY()-lastPose2d.getY());
-    SmartDashboard.putNumber("deltaRotation", currentPose2d.getRotation().getDegrees()-lastPose2d.getRotation().getDegrees());
+    SmartDashboard.putNumber("deltaX", m_currentPose[0]-m_lastPose[0]);
+    SmartDashboard.putNumber("deltaY", m_currentPose[1]-m_lastPose[1]);
+    SmartDashboard.putNumber("deltaRotation", Math.toDegrees(m_currentPose[2]-m_lastPose[2]));
     putDTSToSmartDashboard();
     tuneAngleOffsetPutToDTS();
     // System.out.println("FL: " + m_frontLeft.printVoltage());
@@ -356,40 +468,180 @@ public class DrivetrainSubsystem extends SubsystemBase {
   public void drive(double xSpeed, double ySpeed, double rot, boolean fieldRelative) {
     // TODO: Move kMaxSpeed and kMaxRotation into this method for ySpeed and xSpeed, and rot
     // TODO: Add another parameter for kMaxSpeed so you have an option to set it
-    swerveModuleStates =
-        m_kinematics.toSwerveModuleStates(
-            fieldRelative
-                ? ChassisSpeeds.fromFieldRelativeSpeeds(xSpeed, ySpeed, rot, m_gyro.getRotation2d().unaryMinus())
-                : new ChassisSpeeds(xSpeed, ySpeed, rot));
-    SwerveDriveKinematics.desaturateWheelSpeeds(swerveModuleStates, kMaxSpeed);
-    // m_frontLeft.setDesiredState(swerveModuleStates[0]);
-    // m_frontRight.setDesiredState(swerveModuleStates[1]);
-    // m_backLeft.setDesiredState(swerveModuleStates[2]);
-    // m_backRight.setDesiredState(swerveModuleStates[3]);
-    m_frontLeft.setDesiredState(swerveModuleStates[1]);
-    m_frontRight.setDesiredState(swerveModuleStates[0]);
-    m_backLeft.setDesiredState(swerveModuleStates[3]);
-    m_backRight.setDesiredState(swerveModuleStates[2]);
+    double vx = xSpeed;
+    double vy = ySpeed;
+    if (fieldRelative) {
+      // same as ChassisSpeeds.fromFieldRelativeSpeeds with the gyro's counterclockwise heading
+      double heading = m_sensors.gyroYaw;
+      double cos = Math.cos(heading);
+      double sin = Math.sin(heading);
+      vx = xSpeed * cos + ySpeed * sin;
+      vy = -xSpeed * sin + ySpeed * cos;
+    }
+    driveModules(vx, vy, rot, 0, 0, kMaxSpeed);
     SmartDashboard.putNumber("xSpeed", xSpeed);
     SmartDashboard.putNumber("ySpeed", ySpeed);
     SmartDashboard.putNumber("rot", rot);
   }
 
-  /** Updates the field relative position of the robot. */
+  /**
+   * Turns robot-relative speeds into module states and drives the modules with them
+   * @param centerX forward position of the point to turn about, meters
+   * @param centerY left position of the point to turn about, meters
+   * @param maxSpeed fastest a module may go, meters per second
+   */
+  private void driveModules(double vx, double vy, double omega, double centerX, double centerY, double maxSpeed) {
+    m_kinematicsSolver.toModuleStates(vx, vy, omega, centerX, centerY, m_stateSpeeds, m_stateAngles);
+    SwerveKinematicsSolver.desaturate(m_stateSpeeds, maxSpeed);
+    driveModules();
+  }
+
+  private void driveModules() {
+    for (int i = 0; i < STATE_MODULES.length; i++) {
+      int module = STATE_MODULES[i];
+      m_modules[module].setDesiredState(m_stateSpeeds[i], m_stateAngles[i],
+          m_sensors.angles[module], m_sensors.velocities[module]);
+    }
+  }
+
+  /**
+   * Updates the field relative position of the robot from the gyro and module positions.
+   * Runs on the odometry thread, or from periodic() when {@link Constants#ODOMETRY_THREADED} is off.
+   */
   public void updateOdometry() {
-    m_odometry.update(
-        m_gyro.getRotation2d().unaryMinus(),
-        new SwerveModulePosition[] {
-          m_frontLeft.getPosition(),
-          m_frontRight.getPosition(),
-          m_backLeft.getPosition(),
-          m_backRight.getPosition()
-        });
+    synchronized (m_odometryLock) {
+      DriveSensorSnapshot sensors = m_sensorBuffer.getBack();
+      readSensors(sensors);
+      m_poseEstimator.update(sensors.timestamp, sensors.gyroYaw, sensors.distances, sensors.angles);
+      publishPose(sensors.timestamp);
+      m_sensorBuffer.publish();
+    }
+  }
+
+  /** Reads every module and the gyro once, together, so they agree on when the reading was taken */
+  private void readSensors(DriveSensorSnapshot sensors) {
+    sensors.timestamp = Timer.getFPGATimestamp();
+    double voltage5V = RobotController.getVoltage5V();
+    for (int i = 0; i < m_modules.length; i++) {
+      sensors.distances[i] = m_modules[i].getDistance();
+      sensors.velocities[i] = m_modules[i].getVelocity();
+      sensors.angles[i] = m_modules[i].getTurningEncoderRadians(voltage5V);
+    }
+    // counterclockwise, the same as getRotation2d().unaryMinus()
+    sensors.gyroYaw = Math.toRadians(m_gyro.getAngle());
+    sensors.gyroRate = m_gyro.getRate();
+  }
+
+  /** The sensor readings the robot loop is working from this cycle */
+  public DriveSensorSnapshot getSensors() {
+    return m_sensors;
   }
 
-  /** Get pose from odometry field **/
+  // call while holding m_odometryLock
+  private void publishPose(double timestamp) {
+    double x = m_poseEstimator.getX();
+    double y = m_poseEstimator.getY();
+    double theta = m_poseEstimator.getTheta();
+    m_latestPose.write(timestamp, x, y, theta);
+    m_poseHistory.record(timestamp, x, y, theta);
+  }
+
+  /** Pose estimates from the last {@link Constants#POSE_HISTORY_SIZE} updates */
+  public PoseHistory getPoseHistory() {
+    return m_poseHistory;
+  }
+
+  /** Get pose from the pose estimator, odometry fused with vision. Never waits on the odometry thread. **/
   public Pose2d getPose() {
-    return m_odometry.getPoseMeters();
+    return m_latestPose.getPose();
+  }
+
+  /**
+   * Copies the latest pose without allocating
+   * @param out receives {x, y, theta}
+   * @return when the pose was estimated, seconds on the FPGA clock
+   */
+  public double getPose(double[] out) {
+    return m_latestPose.read(out);
+  }
+
+  /** Turns correcting the pose from AprilTags on or off; odometry keeps running either way */
+  public void setVisionFusion(boolean enabled) {
+    m_visionFusion = enabled;
+  }
+
+  public boolean isVisionFusionEnabled() {
+    return m_visionFusion;
+  }
+
+  /**
+   * Corrects the pose estimate with the AprilTags in a merged vision frame. Call once per loop
+   * after the VisionManager update; a frame that was already used is skipped.
+   *
+   * <p>Each tag gives a robot position from the tag's field position, where the tag appears
+   * relative to the robot, and the gyro heading. Its standard deviation grows with the square
+   * of the distance to the tag. Tags that are too far, unknown, put the robot off the field, or
+   * are seen while spinning fast are rejected, as are positions that jump too far from the
+   * estimate, unless they keep disagreeing with it for several frames in a row.
+   */
+  public void addVisionMeasurements(VisionFrame frame) {
+    if (frame.sequence == m_lastVisionSequence) {
+      return;
+    }
+    m_lastVisionSequence = frame.sequence;
+    // detections are relative to where the robot was at poseTimestamp, nothing to solve without it
+    if (!m_visionFusion || !frame.hasRobotPose) {
+      return;
+    }
+    if (Math.abs(m_sensors.gyroRate) > Constants.VISION_TAG_MAX_ROTATION_RATE) {
+      return;
+    }
+
+    boolean corrected = false;
+    for (int i = 0; i < frame.count; i++) {
+      int tagId = frame.tagIds[i];
+      if (tagId < 0) {
+        continue;
+      }
+      VisionObject tag = frame.objects[i];
+      double forward = tag.z / Constants.VISION_UNITS_PER_METER;
+      double left = -tag.x / Constants.VISION_UNITS_PER_METER;
+      double distance = Math.hypot(forward, left);
+      if (distance > Constants.VISION_TAG_MAX_DISTANCE) {
+        continue;
+      }
+      if (!m_tagTable.solveWithHeading(tagId, forward, left, frame.robotTheta, m_visionPose)) {
+        continue;
+      }
+
+      double x = m_visionPose[0];
+      double y = m_visionPose[1];
+      if (!m_tagTable.isOnField(x, y, Constants.VISION_TAG_FIELD_MARGIN)) {
+        continue;
+      }
+      if (m_visionSeeded && Math.hypot(x - frame.robotX, y - frame.robotY) > Constants.VISION_TAG_MAX_POSE_JUMP
+          && ++m_visionJumpRejects < Constants.VISION_TAG_MAX_JUMP_REJECTS) {
+        continue;
+      }
+
+      double xyStdDev = Constants.VISION_TAG_STD_DEV_AT_1M * Math.max(1.0, distance * distance);
+      synchronized (m_odometryLock) {
+        if (!m_poseEstimator.addVisionMeasurement(
+            x, y, frame.robotTheta, frame.poseTimestamp,
+            xyStdDev, xyStdDev, Constants.VISION_TAG_THETA_STD_DEV)) {
+          continue;
+        }
+      }
+      m_visionSeeded = true;
+      m_visionJumpRejects = 0;
+      corrected = true;
+    }
+    if (corrected) {
+      // show the correction now rather than at the next odometry update
+      synchronized (m_odometryLock) {
+        publishPose(Timer.getFPGATimestamp());
+      }
+    }
   }
 
   public SwerveDriveKinematics getSwerveDriveKinematics() {
@@ -409,31 +661,22 @@ public class DrivetrainSubsystem extends SubsystemBase {
    * @param pose The pose to which to set the odometry.
    */
   public void resetOdometry(Pose2d pose) {
-    m_odometry.resetPosition(
-        m_gyro.getRotation2d().unaryMinus(),
-        new SwerveModulePosition[] {
-          m_frontLeft.getPosition(),
-          m_frontRight.getPosition(),
-          m_backLeft.getPosition(),
-          m_backRight.getPosition()
-        },
-        pose);
+    synchronized (m_odometryLock) {
+      readSensors(m_resetSensors);
+      m_poseEstimator.resetPosition(m_resetSensors.gyroYaw, m_resetSensors.distances,
+          pose.getX(), pose.getY(), pose.getRotation().getRadians());
+      // poses from before the reset aren't comparable with the ones after it
+      m_poseHistory.clear();
+      publishPose(Timer.getFPGATimestamp());
+    }
   }
 
   /** Sets the swerve ModuleStates.
    * @param cs The desired SwerveModule states as a ChassisSpeeds object
    */
   public void setDesiredStates(ChassisSpeeds cs) {
-    SwerveModuleState[] desiredStates = m_kinematics.toSwerveModuleStates(cs);
-
-    SwerveDriveKinematics.desaturateWheelSpeeds(
-        desiredStates, 4);
-
-    m_frontLeft.setDesiredState(desiredStates[1]);
-    m_frontRight.setDesiredState(desiredStates[0]);
-    m_backLeft.setDesiredState(desiredStates[3]);
-    m_backRight.setDesiredState(desiredStates[2]);
-  } 
+    driveModules(cs.vxMetersPerSecond, cs.vyMetersPerSecond, cs.omegaRadiansPerSecond, 0, 0, 4);
+  }
 
   /** Sets the swerve ModuleStates. Accept a center of rotation for when you DON'T want to rotate
    * around the center of the robot
@@ -442,22 +685,16 @@ public class DrivetrainSubsystem extends SubsystemBase {
    */
   public void setDesiredStates(ChassisSpeeds cs, Translation2d centerOfRotation) {
     // System.out.println("vX: " + Math.round(cs.vxMetersPerSecond*100.0)/100.0 + "  vY: " + Math.round(cs.vyMetersPerSecond));
-    SwerveModuleState[] desiredStates = m_kinematics.toSwerveModuleStates(cs, centerOfRotation);
-
-    SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, 4);
-
-    m_frontLeft.setDesiredState(desiredStates[1]);
-    m_frontRight.setDesiredState(desiredStates[0]);
-    m_backLeft.setDesiredState(desiredStates[3]);
-    m_backRight.setDesiredState(desiredStates[2]);
+    driveModules(cs.vxMetersPerSecond, cs.vyMetersPerSecond, cs.omegaRadiansPerSecond,
+        centerOfRotation.getX(), centerOfRotation.getY(), 4);
   } 
 
 public ChassisSpeeds getChassisSpeeds() {
-    ChassisSpeeds chassisSpeeds = m_kinematics.toChassisSpeeds(m_frontLeft.getState(), m_frontRight.getState(), m_backLeft.getState(), m_backRight.getState());
-    return chassisSpeeds;
+    m_kinematicsSolver.toChassisMotion(m_sensors.velocities, m_sensors.angles, m_chassisSpeeds);
+    return new ChassisSpeeds(m_chassisSpeeds[0], m_chassisSpeeds[1], m_chassisSpeeds[2]);
   }
 
-  public AHRS getGyroscope() {
+  public GyroIO getGyroscope() {
     return m_gyro; 
   }
 
@@ -465,12 +702,12 @@ public ChassisSpeeds getChassisSpeeds() {
    * @param desiredStates The desired SwerveModule states. Array of `SwerveModuleState[]`
    */
   public void setModuleStates(SwerveModuleState[] desiredStates) {
-    SwerveDriveKinematics.desaturateWheelSpeeds(
-        desiredStates, DrivetrainSubsystem.kMaxSpeed);
-    m_frontLeft.setDesiredState(desiredStates[1]);
-    m_frontRight.setDesiredState(desiredStates[0]);
-    m_backLeft.setDesiredState(desiredStates[3]);
-    m_backRight.setDesiredState(desiredStates[2]);
+    for (int i = 0; i < m_stateSpeeds.length; i++) {
+      m_stateSpeeds[i] = desiredStates[i].speedMetersPerSecond;
+      m_stateAngles[i] = desiredStates[i].angle.getRadians();
+    }
+    SwerveKinematicsSolver.desaturate(m_stateSpeeds, DrivetrainSubsystem.kMaxSpeed);
+    driveModules();
   }
 
   /** Displays all 4 module positions + robot pose (forward/back) in SmartDashboard. 
@@ -487,10 +724,10 @@ public ChassisSpeeds getChassisSpeeds() {
   public void tuneAngleOffsetPutToDTS() {
     // TUNE ANGLE OFFSETS
     
-    SmartDashboard.putNumber("FL encoder pos", Math.toDegrees(m_frontLeft.getTurningEncoderRadians()));
-    SmartDashboard.putNumber("FR encoder pos", Math.toDegrees(m_frontRight.getTurningEncoderRadians()));
-    SmartDashboard.putNumber("BL encoder pos", Math.toDegrees(m_backLeft.getTurningEncoderRadians()));
-    SmartDashboard.putNumber("BR encoder pos", Math.toDegrees(m_backRight.getTurningEncoderRadians())); 
+    SmartDashboard.putNumber("FL encoder pos", Math.toDegrees(m_sensors.angles[0]));
+    SmartDashboard.putNumber("FR encoder pos", Math.toDegrees(m_sensors.angles[1]));
+    SmartDashboard.putNumber("BL encoder pos", Math.toDegrees(m_sensors.angles[2]));
+    SmartDashboard.putNumber("BR encoder pos", Math.toDegrees(m_sensors.angles[3])); 
 
 
     // SmartDashboard.putNumber("FL SMS Speed", swerveModuleStates[0].speedMetersPerSecond);
@@ -510,9 +747,9 @@ public ChassisSpeeds getChassisSpeeds() {
     // SmartDashboard.putNumber("Gyro Speed X",m_gyro.getVelocityX());
     // SmartDashboard.putNumber("Gyro Speed Y",m_gyro.getVelocityY());
 
-    SmartDashboard.putNumber("getPose.getX", getPose().getX());
-    SmartDashboard.putNumber("getPose.getY", getPose().getY());
-    SmartDashboard.putNumber("gyro.getAngle", m_gyro.getAngle());
-    SmartDashboard.putNumber("getPose.getRotation", getPose().getRotation().getDegrees());
+    SmartDashboard.putNumber("getPose.getX", m_currentPose[0]);
+    SmartDashboard.putNumber("getPose.getY", m_currentPose[1]);
+    SmartDashboard.putNumber("gyro.getAngle", Math.toDegrees(m_sensors.gyroYaw));
+    SmartDashboard.putNumber("getPose.getRotation", Math.toDegrees(m_currentPose[2]));
   }
 }
\ No newline at end of file
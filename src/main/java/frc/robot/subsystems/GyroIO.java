@@ -0,0 +1,23 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+/**
+ * The drivetrain's gyro, so the drive code runs the same against the NavX ({@link GyroIONavX})
+ * or a simulation ({@link SwerveDriveSim}). Angles follow the NavX's conventions.
+ */
+public interface GyroIO {
+  /** Continuous heading in degrees, including the angle adjustment, as AHRS.getAngle() */
+  double getAngle();
+
+  /** Turn rate in degrees per second, as AHRS.getRate() */
+  double getRate();
+
+  /** Makes the current heading zero */
+  void reset();
+
+  /** Degrees added to every heading from now on */
+  void setAngleAdjustment(double adjustment);
+}
@@ -0,0 +1,34 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import com.kauailabs.navx.frc.AHRS;
+
+import edu.wpi.first.wpilibj.SPI;
+
+/** The NavX on the roboRIO's MXP port */
+public class GyroIONavX implements GyroIO {
+  public final AHRS m_gyro = new AHRS(SPI.Port.kMXP, (byte) 200);
+
+  @Override
+  public double getAngle() {
+    return m_gyro.getAngle();
+  }
+
+  @Override
+  public double getRate() {
+    return m_gyro.getRate();
+  }
+
+  @Override
+  public void reset() {
+    m_gyro.reset();
+  }
+
+  @Override
+  public void setAngleAdjustment(double adjustment) {
+    m_gyro.setAngleAdjustment(adjustment);
+  }
+}
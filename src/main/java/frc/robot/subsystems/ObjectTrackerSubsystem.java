@@ -1,32 +1,67 @@
 package frc.robot.subsystems;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import com.google.gson.Gson;
 
+import edu.wpi.first.networktables.DoubleArrayPublisher;
 import edu.wpi.first.networktables.NetworkTable;
-import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.RawSubscriber;
+import edu.wpi.first.networktables.StringSubscriber;
+import edu.wpi.first.networktables.TimestampedRaw;
+import edu.wpi.first.networktables.TimestampedString;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.models.CameraConfig;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionFrameFormat;
 import frc.robot.models.VisionObject;
+import frc.robot.models.VisionSpatialIndex;
+import frc.robot.utils.PoseHistory;
+import frc.robot.utils.VisionHealth;
+import frc.robot.utils.VisionPipeline;
+import frc.robot.utils.TripleBuffer;
+import frc.robot.utils.VisionRecorder;
+import frc.robot.utils.VisionSnapshot;
 
 
 public class ObjectTrackerSubsystem extends SubsystemBase {
 	  NetworkTable monsterVision; 
-    public VisionObject[] foundObjects; 
-    private String jsonString;
     private String source;
-    private Gson gson = new Gson();
-
+    private final CameraConfig camera;
+    // parsing, transforms and indexing; this class only feeds it from NetworkTables
+    private final VisionPipeline pipeline;
+    private final VisionObject[] nearest = new VisionObject[2];
+
+    // The pipeline runs on its own thread when Constants.VISION_THREADED, and on the robot loop
+    // inside data() otherwise. Either way the loop only reads snapshots of it, and only swaps
+    // in a newer one in data(), so everything below stays put for the rest of the loop.
+    private final Notifier visionThread;
+    private final TripleBuffer<VisionSnapshot> snapshots = new TripleBuffer<>(VisionSnapshot::new);
+    private VisionSnapshot snapshot;
+    private double lastPublishTime = Double.NEGATIVE_INFINITY;
+    private long lastFrameCount = 0;
+    private int newFrameCount = 0;
+
+    // Every ObjectTracker update is queued by NetworkTables until data() drains it, so frames
+    // that arrive between loops are not lost and unchanged data is never parsed twice
+    private final VisionFrameFormat format;
+    private final StringSubscriber trackerSubscriber;
+    private final RawSubscriber binaryTrackerSubscriber;
+    // NetworkTables time of the newest update already drained; readQueue() allocates even when
+    // empty, so it is only called once getLastChange(), which doesn't, shows something new
+    private long lastChange = 0;
+
+    // VisionHealth figures as one array per camera, see VisionHealth for the layout
+    private final DoubleArrayPublisher healthPublisher;
+    private final double[] healthValues = new double[VisionHealth.FIELD_COUNT];
 
     /*
      * Red Alliance Community (right to left) – IDs 1, 2, 3
@@ -35,100 +70,195 @@ public class ObjectTrackerSubsystem extends SubsystemBase {
      * Blue Alliance Community (right to left) – IDs 6, 7, 8
     */
 
-    // rotation matrix
-    private double cameraTilt= 0.0 * Math.PI / 180.0;
-    private double[] cameraOffset = {0.0, 0.0, 0.0}; // goes {x, y, z} // In inches // TODO: figure this offset
-
-    private double sinTheta;
-    private double cosTheta;
-
 	// Put methods for controlling this subsystem
     // here. Call these from Commands.
 	public ObjectTrackerSubsystem(String source){
+        this(source, VisionFrameFormat.JSON);
+    }
+
+    /**
+     * @param source MonsterVision camera name, e.g. "Eclipse"
+     * @param format which ObjectTracker topic this camera publishes
+     */
+    public ObjectTrackerSubsystem(String source, VisionFrameFormat format){
+        this(source, format, null);
+    }
+
+    /**
+     * @param source MonsterVision camera name, e.g. "Eclipse"
+     * @param format which ObjectTracker topic this camera publishes
+     * @param poseHistory drivetrain pose history used to undo the robot's motion between
+     *     capture and ingestion, or null to leave detections as captured
+     */
+    public ObjectTrackerSubsystem(String source, VisionFrameFormat format, PoseHistory poseHistory){
+        this(new CameraConfig(source, format), poseHistory);
+    }
+
+    /**
+     * @param camera which MonsterVision camera to read and where it is mounted
+     * @param poseHistory drivetrain pose history used to undo the robot's motion between
+     *     capture and ingestion, or null to leave detections as captured
+     */
+    public ObjectTrackerSubsystem(CameraConfig camera, PoseHistory poseHistory){
         NetworkTableInstance inst = NetworkTableInstance.getDefault();
-        this.source = source; 
+        this.camera = camera;
+        this.source = camera.source; 
+        this.format = camera.format;
         monsterVision = inst.getTable("MonsterVision");
-        jsonString = "";
-
-        if (source == "NoteCam") {
-            cameraTilt= Constants.VISION_NOTE_CAM_TILT;
+        pipeline = new VisionPipeline(camera, poseHistory);
+
+        // keepDuplicates so a camera repeating the same detections still counts as a fresh frame
+        if (format == VisionFrameFormat.BINARY) {
+            trackerSubscriber = null;
+            binaryTrackerSubscriber = monsterVision.getRawTopic("ObjectTrackerBinary-" + source).subscribe(
+                "raw",
+                new byte[0],
+                PubSubOption.keepDuplicates(true),
+                PubSubOption.pollStorage(Constants.VISION_FRAME_QUEUE_SIZE));
+        } else {
+            binaryTrackerSubscriber = null;
+            trackerSubscriber = monsterVision.getStringTopic("ObjectTracker-" + source).subscribe(
+                "",
+                PubSubOption.keepDuplicates(true),
+                PubSubOption.pollStorage(Constants.VISION_FRAME_QUEUE_SIZE));
         }
-        else if(source == "AprilTagPro"){
-            cameraTilt=Constants.VISION_APRIL_TAG_PRO_TILT;
+        healthPublisher = inst.getTable("VisionHealth").getDoubleArrayTopic(source).publish();
+        snapshot = snapshots.getFront();
+
+        if (Constants.VISION_THREADED) {
+            visionThread = new Notifier(this::process);
+            visionThread.setName("Vision " + source);
+            visionThread.startPeriodic(Constants.VISION_THREAD_PERIOD);
+        } else {
+            visionThread = null;
         }
-
-        sinTheta = Math.sin(cameraTilt);
-        cosTheta = Math.cos(cameraTilt);
-
-        // monsterVision.addEntryListener(
-        //     "ObjectTracker",
-        //     (monsterVision, key, entry, value, flags) -> {
-        //    System.out.println("ObjectTracker changed value: " + value.getValue());
-        // }, 
-        // EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);          
     }
     
-    
+    /**
+     * Picks up every ObjectTracker frame processed since the last call. Call once per loop;
+     * the detections and queries here only change when it is called. When nothing new has
+     * arrived the previous detections are kept.
+     */
     public void data() {
-        NetworkTableEntry entry = monsterVision.getEntry("ObjectTracker-" + source);
-        if(entry==null) {
-            return;
-        }
-        jsonString = entry.getString("ObjectTracker");
-        
-        try {
-            foundObjects = gson.fromJson(jsonString, VisionObject[].class);
-        } catch (Exception e) {
-            foundObjects = null; 
+        if (visionThread == null) {
+            process();
         }
+        snapshots.update();
+        snapshot = snapshots.getFront();
+
+        long frameCount = snapshot.getFrameCount();
+        newFrameCount = (int) Math.min(frameCount - lastFrameCount, Constants.VISION_FRAME_QUEUE_SIZE);
+        lastFrameCount = frameCount;
 
-        // loop over list of visionobjects, deletes them from list if z=0
-        // this handles case found on 3/22 where a cone is (0, 0, 0) despite being far away
-        try {
-            ArrayList<VisionObject> tmp = new ArrayList<VisionObject>(Arrays.asList(foundObjects));
-            for (int i = 0; i < tmp.size(); i++) {
-                VisionObject vo = tmp.get(i);
-                if (vo.z == 0) {
-                    tmp.remove(vo);
+        double[] health = snapshot.getHealthValues();
+        System.arraycopy(health, 0, healthValues, 0, health.length);
+        healthValues[VisionHealth.FRAME_AGE] = snapshot.getFrameAge(Timer.getFPGATimestamp());
+        healthPublisher.set(healthValues);
+    }
+
+    /**
+     * Ingests every ObjectTracker frame published since the last call and publishes a snapshot
+     * if any arrived. Runs on the vision thread, or inside data() when vision isn't threaded.
+     */
+    private void process() {
+        pipeline.beginBatch();
+        int received = 0;
+        // NetworkTables timestamps are in microseconds on the same clock as the FPGA timer.
+        // The queue arrays and the values in them are allocated by NetworkTables for each frame
+        // that arrives; polls that find nothing new allocate nothing.
+        long change = format == VisionFrameFormat.BINARY
+            ? binaryTrackerSubscriber.getLastChange()
+            : trackerSubscriber.getLastChange();
+        if (change != lastChange) {
+            lastChange = change;
+            if (format == VisionFrameFormat.BINARY) {
+                TimestampedRaw[] updates = binaryTrackerSubscriber.readQueue();
+                for (TimestampedRaw update : updates) {
+                    pipeline.ingestBinary(update.value, update.timestamp * 1.0e-6);
                 }
+                received = updates.length;
+            } else {
+                TimestampedString[] updates = trackerSubscriber.readQueue();
+                for (TimestampedString update : updates) {
+                    pipeline.ingestJson(update.value, update.timestamp * 1.0e-6);
+                }
+                received = updates.length;
             }
-            // convert arraylist to array via for loop bc .toArray() is being uncooperative
-            VisionObject[] tmp2 = new VisionObject[tmp.size()];
-            for (int i = 0; i<tmp.size();i++){
-                tmp2[i] = tmp.get(i);
-            }
-            foundObjects = tmp2;
-        } catch (Exception e) {
-            foundObjects = null;
         }
-        
-        if (foundObjects != null && source.contains("Chassis")) {
-            applyRotationTranslationMatrix();
+
+        double now = Timer.getFPGATimestamp();
+        pipeline.getHealth().update(now);
+        // a camera that went quiet still gets its rates refreshed once per health window
+        if (received > 0 || now - lastPublishTime >= Constants.VISION_HEALTH_WINDOW) {
+            snapshots.getBack().copyFrom(pipeline, now);
+            snapshots.publish();
+            lastPublishTime = now;
         }
-        // TODO: Comment this part
-        // for (VisionObject object : foundObjects){
-        //     System.out.format("%s %.1f %.1f %.1f %.1f\n",object.objectLabel, object.x, object.y, object.z, object.confidence);
-        // }       
     }
 
-    private void applyRotationTranslationMatrix() {
-        // sets reference to be the CENTER of the robot 
-        
-        for (int i = 0; i < foundObjects.length; i++) {
-            double x = foundObjects[i].x; 
-            double y = foundObjects[i].y; 
-            double z = foundObjects[i].z; 
-
-            // rotation + translation
-            foundObjects[i].x = x + cameraOffset[0]; 
-            foundObjects[i].y = y * cosTheta - z * sinTheta + cameraOffset[1]; 
-            foundObjects[i].z = y * sinTheta + z * cosTheta + cameraOffset[2];
-        }
+    public CameraConfig getCamera() {
+        return camera;
     }
-    
+
+    /**
+     * Logs every frame from now on
+     * @param recorder the match log, or null to stop recording
+     * @param cameraId number this camera's frames are tagged with in the log
+     */
+    public void setRecorder(VisionRecorder recorder, int cameraId) {
+        pipeline.setRecorder(recorder, cameraId);
+    }
+
+    /**
+     * Frame age, rates, parse times and drops for this camera as of the last call to data(),
+     * indexed by the constants in {@link VisionHealth}. Don't modify the array.
+     */
+    public double[] getHealthValues() {
+        return healthValues;
+    }
+
+    /** Whether this camera's latest detections were captured more than maxAge seconds ago, or there are none */
+    public boolean isStale(double maxAge) {
+        return !(snapshot.getFrameAge(Timer.getFPGATimestamp()) <= maxAge);
+    }
+
+    /**
+     * The NetworkTables-free part of this subsystem. When vision is threaded it belongs to the
+     * vision thread, so read its results through this class instead.
+     */
+    public VisionPipeline getPipeline() {
+        return pipeline;
+    }
+
     public String getObjectsJson()
     {
-        return jsonString;
+        return snapshot.getObjectsJson();
+    }
+
+    /** Returns the most recently ingested frame, or null if none has arrived yet */
+    public VisionFrame getLatestFrame() {
+        return snapshot.getFrame(0);
+    }
+
+    /**
+     * Returns a queued frame by age
+     * @param age 0 for the latest frame, 1 for the one before it, and so on
+     * @return the frame, or null if the queue does not reach back that far
+     */
+    public VisionFrame getFrame(int age) {
+        return snapshot.getFrame(age);
+    }
+
+    /** Returns how many frames the last call to data() picked up */
+    public int getNewFrameCount() {
+        return newFrameCount;
+    }
+
+    /** Hands every frame picked up by the last call to data() to the consumer, oldest first */
+    public void forEachNewFrame(Consumer<VisionFrame> consumer) {
+        for (int age = getNewFrameCount() - 1; age >= 0; age--) {
+            consumer.accept(getFrame(age));
+        }
     }
     
     // private NetworkTableEntry getEntry(Integer index, String subkey) {
@@ -142,29 +272,25 @@ public class ObjectTrackerSubsystem extends SubsystemBase {
     //     } 
     // }
 	
-	public VisionObject getClosestObject(String objectLabel) {
+    /** Nearest, sector and polygon queries over the latest frame, in robot or field coordinates */
+    public VisionSpatialIndex getSpatialIndex() {
+        return snapshot.getSpatialIndex();
+    }
 
-        VisionObject[] objects = getObjectsOfType(objectLabel);
-        if (objects == null || objects.length == 0) {
-            return null; 
-        }
-        return objects[0];
+	/** Returns the detection nearest the robot whose label contains objectLabel, or null */
+	public VisionObject getClosestObject(String objectLabel) {
+        int found = getSpatialIndex().nearest(0, 0, false, 1, objectLabel, VisionObject.minimumConfidenceFor(objectLabel), nearest);
+        return found < 1 ? null : nearest[0];
     }
 
     public VisionObject getClosestObject() {
-        VisionObject[] objects = getObjects(0.5);
-        if (objects == null || objects.length == 0) {
-            return null; 
-        }
-        return objects[0];
+        int found = getSpatialIndex().nearest(0, 0, false, 1, null, 0.5, nearest);
+        return found < 1 ? null : nearest[0];
     }
 
     public VisionObject getSecondClosestObject(String objectLabel) {
-        VisionObject[] objects = getObjectsOfType(objectLabel);
-        if (objects == null || objects.length == 0) {
-            return null; 
-        }
-        return objects[1];
+        int found = getSpatialIndex().nearest(0, 0, false, 2, objectLabel, VisionObject.minimumConfidenceFor(objectLabel), nearest);
+        return found < 2 ? null : nearest[1];
     }
 
     /** Returns closest AprilTag */
@@ -177,12 +303,7 @@ public class ObjectTrackerSubsystem extends SubsystemBase {
     }
 
     public VisionObject getSpecificAprilTag(int id) {
-        String objectLabel = "tag16h5: " + id;
-        VisionObject[] objects = getObjectsOfType(objectLabel);
-        if (objects == null || objects.length == 0) {
-            return null; 
-        }
-        return objects[0];
+        return snapshot.getAprilTag(id);
     }
 
 
@@ -199,46 +320,28 @@ public class ObjectTrackerSubsystem extends SubsystemBase {
     
 
     public int numberOfObjects() {
-        return foundObjects.length; 
+        return snapshot.numberOfObjects();
     }
     
+    /** Returns detections with at least this confidence. Don't modify the array or use it after the next data(). */
     public VisionObject[] getObjects(double minimumConfidence) {
-
-        if (foundObjects == null || foundObjects.length == 0)
-            return null;
-
-        List<VisionObject> filteredResult = Arrays.asList(foundObjects)
-            .stream()
-            .filter(vo -> vo.confidence >= minimumConfidence )
-            .collect(Collectors.toList());
-
-        VisionObject filteredArray[] = new VisionObject[filteredResult.size()];
-        return filteredResult.toArray(filteredArray);
-
+        return snapshot.getObjects(minimumConfidence);
     }
 
+    /** Returns detections whose label contains objectLabel. Don't modify the array or use it after the next data(). */
     public VisionObject[] getObjectsOfType(String objectLabel) {
-        if (foundObjects == null || foundObjects.length == 0)
-            return null;
-        List<VisionObject> filteredResult = Arrays.asList(foundObjects)
-            .stream()
-            .filter(vo -> vo.objectLabel.contains(objectLabel) && (objectLabel.contains("tag") || vo.confidence > .40))//Uses .contains because vo.ObjectLabel has ID, ObjectLabel does not
-            .collect(Collectors.toList());
-
-
-            VisionObject filteredArray[] = new VisionObject[filteredResult.size()];
-        return filteredResult.toArray(filteredArray);
-
+        return snapshot.getObjectsOfType(objectLabel);
     }
-    public void saveVisionSnapshot(String fileName) 
-    throws IOException {
-        data();    
-        Gson gson = new Gson();
-        String str = gson.toJson(foundObjects);
-        BufferedWriter writer = new BufferedWriter(new FileWriter(fileName));
-        writer.write(str);
-        
-        writer.close();
+
+    /**
+     * Saves the latest detections as JSON for loadVisionSnapshot. The recorder's thread writes
+     * the file, so this returns right away and never touches the disk on the loop.
+     * @return false if no recorder is attached or it dropped the snapshot
+     */
+    public boolean saveVisionSnapshot(String fileName) {
+        // data() drains the frame queue, so snapshot what the last loop already ingested
+        VisionRecorder recorder = pipeline.getRecorder();
+        return recorder != null && recorder.exportSnapshot(fileName, getLatestFrame());
     }
 
     public VisionObject[] loadVisionSnapshot(String fileName) 
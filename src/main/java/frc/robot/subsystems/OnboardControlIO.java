@@ -0,0 +1,32 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+/**
+ * A {@link SwerveModuleIO} whose motor controllers can run the module's loops themselves.
+ * {@link SwerveModule} uses them when its IO implements this and MODULE_ONBOARD_CONTROL is on.
+ * The gains are the DRIVE_VELOCITY_* and TURNING_POSITION_* constants.
+ */
+public interface OnboardControlIO extends SwerveModuleIO {
+  /**
+   * Holds a wheel speed with the drive controller's velocity loop
+   * @param velocity meters per second
+   * @param feedforward duty cycle added to the loop's output
+   */
+  void setDriveVelocity(double velocity, double feedforward);
+
+  /**
+   * Holds a module angle with the turning controller's position loop
+   * @param angle radians, as SwerveModule measures it
+   */
+  void setTurningPosition(double angle);
+
+  /**
+   * Sets the turning motor's encoder to the module's absolute angle, so the position loop
+   * measures angles the way SwerveModule does
+   * @param angle radians
+   */
+  void seedTurningPosition(double angle);
+}
@@ -0,0 +1,500 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.system.plant.DCMotor;
+import frc.robot.Constants;
+
+/**
+ * Physics of the whole swerve drive, for running drive code off the robot: a rigid robot on four
+ * modules, each with a NEO driving the wheel and a NEO steering it.
+ *
+ * <p>The motors are DC motors fed their duty cycle times the battery voltage, limited to the
+ * SPARK MAX's current limit, and the battery sags with the current they draw. Wheels push the
+ * robot through friction with the carpet, solved as impulses each step: a wheel grips until the
+ * force it needs, along and across it together, passes its share of the weight times the
+ * friction coefficient, and then slips. The drive encoders count wheel turns, so slip shows up in
+ * odometry as it would on the robot. The modules support onboard control like the SPARK MAXes,
+ * running the velocity and position loops every step with the same gains.
+ *
+ * <p>The state catches up with the clock whenever it's read or written, in steps of at most
+ * {@link Constants#SIM_PHYSICS_PERIOD}, so it works with the odometry thread, and a clock stepped
+ * with SimHooks runs it as fast as the desktop can go. {@link #getIO()} gives the modules and
+ * gyro to build a {@link DrivetrainSubsystem} on; robot simulation uses it that way. Positions
+ * are meters and radians counterclockwise, in the drivetrain's kinematics frame. Thread-safe.
+ */
+public class SwerveDriveSim {
+  private static final DCMotor NEO = DCMotor.getNEO(1);
+  private static final double VOLTAGE_5V = 5.0; // what the simulated 5 V rail reads
+  private static final double GRAVITY = 9.81;
+  private static final int SOLVER_ITERATIONS = 8;
+
+  // wheel force per newton meter of drive motor torque, and motor radians per meter of tread
+  private static final double DRIVE_REDUCTION = 2 * Math.PI / Constants.kDriveEncoderDistancePerPulse;
+
+  private final DoubleSupplier m_clock;
+  private final int m_moduleCount;
+  private final double[] m_moduleX;
+  private final double[] m_moduleY;
+  private final double[] m_turningOffsets;
+  private final double m_maxFriction;
+  private double m_lastTime = Double.NaN;
+
+  // robot, field frame
+  private double m_x, m_y, m_theta;
+  private double m_vx, m_vy, m_omega;
+
+  // modules
+  private final double[] m_driveOutput;
+  private final double[] m_turningOutput;
+  private final double[] m_wheelSpeed;
+  private final double[] m_drivePosition;
+  private final double[] m_angle;
+  private final double[] m_turningRate;
+  // motor speeds, radians per second
+  private final double[] m_driveSpeed;
+  private final double[] m_turningSpeed;
+  private final double[] m_slip;
+  private final double[] m_impulseAlong;
+  private final double[] m_impulseAcross;
+
+  private double m_batteryVoltage = Constants.SIM_BATTERY_VOLTAGE;
+  private double m_batteryCurrent;
+
+  private final ModuleView[] m_modules;
+  private final GyroView m_gyro = new GyroView();
+
+  /**
+   * @param clock current time in seconds, e.g. Timer::getFPGATimestamp
+   * @param modules where each module is, relative to the robot's center, meters
+   * @param turningOffsets each module's encoder offset, as given to {@link SwerveModule}
+   */
+  public SwerveDriveSim(DoubleSupplier clock, Translation2d[] modules, double[] turningOffsets) {
+    m_clock = clock;
+    m_moduleCount = modules.length;
+    m_moduleX = new double[m_moduleCount];
+    m_moduleY = new double[m_moduleCount];
+    for (int i = 0; i < m_moduleCount; i++) {
+      m_moduleX[i] = modules[i].getX();
+      m_moduleY[i] = modules[i].getY();
+    }
+    m_turningOffsets = turningOffsets.clone();
+    m_maxFriction = Constants.SIM_WHEEL_COF * Constants.SIM_ROBOT_MASS * GRAVITY / m_moduleCount;
+
+    m_driveOutput = new double[m_moduleCount];
+    m_turningOutput = new double[m_moduleCount];
+    m_wheelSpeed = new double[m_moduleCount];
+    m_drivePosition = new double[m_moduleCount];
+    m_angle = new double[m_moduleCount];
+    m_turningRate = new double[m_moduleCount];
+    m_driveSpeed = new double[m_moduleCount];
+    m_turningSpeed = new double[m_moduleCount];
+    m_slip = new double[m_moduleCount];
+    m_impulseAlong = new double[m_moduleCount];
+    m_impulseAcross = new double[m_moduleCount];
+    m_modules = new ModuleView[m_moduleCount];
+    for (int i = 0; i < m_moduleCount; i++) {
+      m_modules[i] = new ModuleView(i);
+    }
+  }
+
+  /** The drivetrain's modules, placed where the drivetrain drives them, with their offsets */
+  public SwerveDriveSim(DoubleSupplier clock) {
+    this(clock, DrivetrainSubsystem.getModulePlacements(), new double[] {
+      Constants.FRONT_LEFT_ANGLE_OFFSET_COMPETITION,
+      Constants.FRONT_RIGHT_ANGLE_OFFSET_COMPETITION,
+      Constants.BACK_LEFT_ANGLE_OFFSET_COMPETITION,
+      Constants.BACK_RIGHT_ANGLE_OFFSET_COMPETITION});
+  }
+
+  /** The simulated modules, in the order given, and gyro */
+  public DrivetrainIO getIO() {
+    return new DrivetrainIO(m_modules[0], m_modules[1], m_modules[2], m_modules[3], m_gyro);
+  }
+
+  /** Puts the robot at a pose, standing still with its wheels straight */
+  public synchronized void resetPose(double x, double y, double theta) {
+    advance();
+    m_x = x;
+    m_y = y;
+    m_theta = theta;
+    m_vx = 0;
+    m_vy = 0;
+    m_omega = 0;
+    for (int i = 0; i < m_moduleCount; i++) {
+      m_wheelSpeed[i] = 0;
+      m_angle[i] = 0;
+      m_turningRate[i] = 0;
+      m_slip[i] = 0;
+    }
+  }
+
+  public synchronized double getX() {
+    advance();
+    return m_x;
+  }
+
+  public synchronized double getY() {
+    advance();
+    return m_y;
+  }
+
+  /** Heading, radians counterclockwise, not wrapped */
+  public synchronized double getTheta() {
+    advance();
+    return m_theta;
+  }
+
+  /** Robot speed over the carpet, meters per second */
+  public synchronized double getSpeed() {
+    advance();
+    return Math.hypot(m_vx, m_vy);
+  }
+
+  /** How much faster the module's wheel turns than it moves over the carpet, meters per second */
+  public synchronized double getSlip(int module) {
+    advance();
+    return m_slip[module];
+  }
+
+  /** Battery voltage under the current load */
+  public synchronized double getBatteryVoltage() {
+    advance();
+    return m_batteryVoltage;
+  }
+
+  /** Current drawn from the battery by the drive, amps */
+  public synchronized double getBatteryCurrent() {
+    advance();
+    return m_batteryCurrent;
+  }
+
+  private void advance() {
+    double now = m_clock.getAsDouble();
+    if (Double.isNaN(m_lastTime)) {
+      m_lastTime = now;
+      return;
+    }
+    double dt = now - m_lastTime;
+    if (dt <= 0) {
+      return;
+    }
+    m_lastTime = now;
+    int steps = (int) Math.ceil(dt / Constants.SIM_PHYSICS_PERIOD - 1e-9);
+    for (int i = 0; i < steps; i++) {
+      step(dt / steps);
+    }
+  }
+
+  private void step(double dt) {
+    for (int i = 0; i < m_moduleCount; i++) {
+      m_modules[i].runLoops();
+      m_driveSpeed[i] = m_wheelSpeed[i] * DRIVE_REDUCTION;
+      m_turningSpeed[i] = m_turningRate[i] * Constants.kTurningGearRatio;
+    }
+    updateBattery();
+
+    // motors push the wheels and turn the modules
+    for (int i = 0; i < m_moduleCount; i++) {
+      double driveCurrent = motorCurrent(m_driveOutput[i], m_driveSpeed[i]);
+      m_wheelSpeed[i] += NEO.KtNMPerAmp * driveCurrent * DRIVE_REDUCTION / Constants.SIM_WHEEL_EFFECTIVE_MASS * dt;
+
+      double turningCurrent = motorCurrent(m_turningOutput[i], m_turningSpeed[i]);
+      double torque = NEO.KtNMPerAmp * turningCurrent * Constants.kTurningGearRatio;
+      if (Math.abs(turningCurrent) < Constants.SIM_SMART_CURRENT_LIMIT) {
+        // back EMF brakes the module hard enough that plain Euler steps would oscillate, so
+        // follow the motor's exponential approach to its steady speed exactly
+        double damping = NEO.KtNMPerAmp / (NEO.rOhms * NEO.KvRadPerSecPerVolt)
+            * Constants.kTurningGearRatio * Constants.kTurningGearRatio;
+        double steadyRate = m_turningRate[i] + torque / damping;
+        double decay = Math.exp(-damping / Constants.SIM_TURNING_INERTIA * dt);
+        double rate = steadyRate + (m_turningRate[i] - steadyRate) * decay;
+        m_angle[i] += (m_turningRate[i] + rate) / 2 * dt;
+        m_turningRate[i] = rate;
+      } else {
+        m_turningRate[i] += torque / Constants.SIM_TURNING_INERTIA * dt;
+        m_angle[i] += m_turningRate[i] * dt;
+      }
+    }
+
+    // robot velocity in its own frame
+    double cos = Math.cos(m_theta);
+    double sin = Math.sin(m_theta);
+    double vx = m_vx * cos + m_vy * sin;
+    double vy = -m_vx * sin + m_vy * cos;
+    double omega = m_omega;
+
+    // friction impulses that make each wheel roll without slipping, at most what the carpet can
+    // give; sequential impulses, so each module sees what the others have done
+    double maxImpulse = m_maxFriction * dt;
+    for (int i = 0; i < m_moduleCount; i++) {
+      m_impulseAlong[i] = 0;
+      m_impulseAcross[i] = 0;
+    }
+    for (int iteration = 0; iteration < SOLVER_ITERATIONS; iteration++) {
+      for (int i = 0; i < m_moduleCount; i++) {
+        double px = m_moduleX[i];
+        double py = m_moduleY[i];
+        double ux = Math.cos(m_angle[i]);
+        double uy = Math.sin(m_angle[i]);
+        double groundX = vx - omega * py;
+        double groundY = vy + omega * px;
+        double armAlong = px * uy - py * ux;
+        double armAcross = px * ux + py * uy;
+
+        double slipAlong = m_wheelSpeed[i] - (groundX * ux + groundY * uy);
+        double slipAcross = -groundX * uy + groundY * ux;
+        double massAlong = 1 / Constants.SIM_ROBOT_MASS + armAlong * armAlong / Constants.SIM_ROBOT_MOI
+            + 1 / Constants.SIM_WHEEL_EFFECTIVE_MASS;
+        double massAcross = 1 / Constants.SIM_ROBOT_MASS + armAcross * armAcross / Constants.SIM_ROBOT_MOI;
+
+        double along = m_impulseAlong[i] + slipAlong / massAlong;
+        double across = m_impulseAcross[i] - slipAcross / massAcross;
+        double total = Math.hypot(along, across);
+        if (total > maxImpulse) {
+          along *= maxImpulse / total;
+          across *= maxImpulse / total;
+        }
+        double deltaAlong = along - m_impulseAlong[i];
+        double deltaAcross = across - m_impulseAcross[i];
+        m_impulseAlong[i] = along;
+        m_impulseAcross[i] = across;
+
+        vx += (deltaAlong * ux - deltaAcross * uy) / Constants.SIM_ROBOT_MASS;
+        vy += (deltaAlong * uy + deltaAcross * ux) / Constants.SIM_ROBOT_MASS;
+        omega += (deltaAlong * armAlong + deltaAcross * armAcross) / Constants.SIM_ROBOT_MOI;
+        m_wheelSpeed[i] -= deltaAlong / Constants.SIM_WHEEL_EFFECTIVE_MASS;
+      }
+    }
+
+    for (int i = 0; i < m_moduleCount; i++) {
+      double groundX = vx - omega * m_moduleY[i];
+      double groundY = vy + omega * m_moduleX[i];
+      m_slip[i] = m_wheelSpeed[i] - (groundX * Math.cos(m_angle[i]) + groundY * Math.sin(m_angle[i]));
+      m_drivePosition[i] += m_wheelSpeed[i] * dt;
+    }
+
+    m_vx = vx * cos - vy * sin;
+    m_vy = vx * sin + vy * cos;
+    m_omega = omega;
+    m_x += m_vx * dt;
+    m_y += m_vy * dt;
+    m_theta += m_omega * dt;
+  }
+
+  /** Current a NEO draws at this duty cycle and speed, within the SPARK MAX's current limit */
+  private double motorCurrent(double output, double motorSpeed) {
+    double current = (output * m_batteryVoltage - motorSpeed / NEO.KvRadPerSecPerVolt) / NEO.rOhms;
+    return Math.max(-Constants.SIM_SMART_CURRENT_LIMIT, Math.min(current, Constants.SIM_SMART_CURRENT_LIMIT));
+  }
+
+  /**
+   * Finds the battery voltage under the motors' load. Each controller draws its duty cycle times
+   * its motor's current from the battery, and that current depends on the voltage, so solve
+   * V = V0 - R sum(d I) with I = (d V - emf) / Rm for V. Motors at the current limit draw a fixed
+   * current; which ones those are depends on V, so check once and solve again.
+   */
+  private void updateBattery() {
+    double voltage = Constants.SIM_BATTERY_VOLTAGE;
+    for (int pass = 0; pass < 2; pass++) {
+      double numerator = Constants.SIM_BATTERY_VOLTAGE;
+      double denominator = 1;
+      for (int i = 0; i < 2 * m_moduleCount; i++) {
+        double output = i < m_moduleCount ? m_driveOutput[i] : m_turningOutput[i - m_moduleCount];
+        double speed = i < m_moduleCount ? m_driveSpeed[i] : m_turningSpeed[i - m_moduleCount];
+        double emf = speed / NEO.KvRadPerSecPerVolt;
+        double current = (output * voltage - emf) / NEO.rOhms;
+        if (Math.abs(current) >= Constants.SIM_SMART_CURRENT_LIMIT) {
+          numerator -= Constants.SIM_BATTERY_RESISTANCE * output * Math.copySign(Constants.SIM_SMART_CURRENT_LIMIT, current);
+        } else {
+          numerator += Constants.SIM_BATTERY_RESISTANCE * output * emf / NEO.rOhms;
+          denominator += Constants.SIM_BATTERY_RESISTANCE * output * output / NEO.rOhms;
+        }
+      }
+      voltage = Math.max(0, numerator / denominator);
+    }
+    m_batteryVoltage = voltage;
+    m_batteryCurrent = (Constants.SIM_BATTERY_VOLTAGE - voltage) / Constants.SIM_BATTERY_RESISTANCE;
+  }
+
+  private static double wrap(double angle) {
+    angle %= 2.0 * Math.PI;
+    return angle < 0.0 ? angle + 2.0 * Math.PI : angle;
+  }
+
+  /** One module's motors and encoders */
+  private class ModuleView implements OnboardControlIO {
+    private final int m_index;
+    // onboard loops; like the SPARK MAX's, the I and D terms are per loop, and a loop runs every step
+    private boolean m_velocityControl;
+    private double m_velocitySetpoint;
+    private double m_feedforward;
+    private double m_velocityErrorSum;
+    private double m_lastVelocityError;
+    private boolean m_positionControl;
+    private double m_positionSetpoint;
+    private double m_positionErrorSum;
+    private double m_lastPositionError;
+    // turning motor encoder minus module angle
+    private double m_turningEncoderOffset;
+
+    ModuleView(int index) {
+      m_index = index;
+    }
+
+    @Override
+    public double getDrivePosition() {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        return m_drivePosition[m_index];
+      }
+    }
+
+    @Override
+    public double getDriveVelocity() {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        return m_wheelSpeed[m_index];
+      }
+    }
+
+    @Override
+    public double getTurningEncoderVoltage() {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        // inverse of SwerveModule.getTurningEncoderRadians()
+        double raw = wrap(m_angle[m_index] - m_turningOffsets[m_index]);
+        return (1.0 - raw / (2.0 * Math.PI)) * VOLTAGE_5V;
+      }
+    }
+
+    @Override
+    public double getTurningMotorPosition() {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        return m_angle[m_index] + m_turningEncoderOffset;
+      }
+    }
+
+    @Override
+    public void setDriveOutput(double output) {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        m_velocityControl = false;
+        m_driveOutput[m_index] = Math.max(-1.0, Math.min(output, 1.0));
+      }
+    }
+
+    @Override
+    public void setTurningOutput(double output) {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        m_positionControl = false;
+        m_turningOutput[m_index] = Math.max(-1.0, Math.min(output, 1.0));
+      }
+    }
+
+    @Override
+    public void setDriveVelocity(double velocity, double feedforward) {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        if (!m_velocityControl) {
+          m_velocityControl = true;
+          m_velocityErrorSum = 0;
+          m_lastVelocityError = velocity - m_wheelSpeed[m_index];
+        }
+        m_velocitySetpoint = velocity;
+        m_feedforward = feedforward;
+      }
+    }
+
+    @Override
+    public void setTurningPosition(double angle) {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        if (!m_positionControl) {
+          m_positionControl = true;
+          m_positionErrorSum = 0;
+          m_lastPositionError = positionError(angle);
+        }
+        m_positionSetpoint = angle;
+      }
+    }
+
+    @Override
+    public void seedTurningPosition(double angle) {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        m_turningEncoderOffset = angle - m_angle[m_index];
+      }
+    }
+
+    /** Error to a module angle, the short way around, as with position wrapping over a turn */
+    private double positionError(double setpoint) {
+      return MathUtil.angleModulus(setpoint - (m_angle[m_index] + m_turningEncoderOffset));
+    }
+
+    /** One pass of the onboard loops that are running */
+    void runLoops() {
+      if (m_velocityControl) {
+        double error = m_velocitySetpoint - m_wheelSpeed[m_index];
+        m_velocityErrorSum += error;
+        double output = Constants.DRIVE_VELOCITY_KP * error + Constants.DRIVE_VELOCITY_KI * m_velocityErrorSum
+            + Constants.DRIVE_VELOCITY_KD * (error - m_lastVelocityError) + m_feedforward;
+        m_lastVelocityError = error;
+        m_driveOutput[m_index] = Math.max(-1.0, Math.min(output, 1.0));
+      }
+      if (m_positionControl) {
+        double error = positionError(m_positionSetpoint);
+        m_positionErrorSum += error;
+        double output = Constants.TURNING_POSITION_KP * error + Constants.TURNING_POSITION_KI * m_positionErrorSum
+            + Constants.TURNING_POSITION_KD * (error - m_lastPositionError);
+        m_lastPositionError = error;
+        m_turningOutput[m_index] = Math.max(-1.0, Math.min(output, 1.0));
+      }
+    }
+  }
+
+  /** A gyro on the simulated robot, reading its heading counterclockwise */
+  private class GyroView implements GyroIO {
+    private double m_zero;
+    private double m_adjustment;
+
+    @Override
+    public double getAngle() {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        return Math.toDegrees(m_theta) - m_zero + m_adjustment;
+      }
+    }
+
+    @Override
+    public double getRate() {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        return Math.toDegrees(m_omega);
+      }
+    }
+
+    @Override
+    public void reset() {
+      synchronized (SwerveDriveSim.this) {
+        advance();
+        m_zero = Math.toDegrees(m_theta);
+      }
+    }
+
+    @Override
+    public void setAngleAdjustment(double adjustment) {
+      synchronized (SwerveDriveSim.this) {
+        m_adjustment = adjustment;
+      }
+    }
+  }
+}
@@ -4,28 +4,20 @@
 
 package frc.robot.subsystems;
 
-import com.revrobotics.CANSparkBase.IdleMode;
-import com.revrobotics.CANSparkLowLevel.MotorType;
-import com.revrobotics.CANSparkMax;
-import com.revrobotics.REVLibError;
-import com.revrobotics.RelativeEncoder;
-
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.networktables.NetworkTableEntry;
-import edu.wpi.first.wpilibj.AnalogInput;
 import edu.wpi.first.wpilibj.RobotController;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Constants;
 
 public class SwerveModule {
-  private final CANSparkMax m_driveMotor;
-  public final CANSparkMax m_turningMotor;
-
-  public final RelativeEncoder m_driveEncoder;
-  public final AnalogInput m_turningEncoder;
+  private final SwerveModuleIO m_io;
+  // drive velocity and turning position loops on the motor controllers rather than here; null
+  // when they run here
+  private final OnboardControlIO m_onboardIO;
 
   private double turningMotorOffset;
 
@@ -36,7 +28,7 @@ public class SwerveModule {
 
   private double m_driveMotorGain;
   /**
-   * Constructs a SwerveModule.
+   * Constructs a SwerveModule on SPARK MAXes.
    *
    * @param driveMotorChannel ID for the drive motor.
    * @param turningMotorChannel ID for the turning motor.
@@ -48,68 +40,59 @@ public class SwerveModule {
       double turningMotorOffset,
       double driveMotorGain // tuning motor module
       ) {
+    this(new SwerveModuleIOSparkMax(driveMotorChannel, turningMotorChannel, analogEncoderPort),
+        turningMotorOffset, driveMotorGain);
+  }
 
-    m_driveMotor = new CANSparkMax(driveMotorChannel, MotorType.kBrushless);
-    m_turningMotor = new CANSparkMax(turningMotorChannel, MotorType.kBrushless);
+  /**
+   * Constructs a SwerveModule on any hardware, real or simulated.
+   *
+   * @param io The module's motors and encoders.
+   */
+  public SwerveModule(SwerveModuleIO io, double turningMotorOffset, double driveMotorGain) {
+    m_io = io;
     this.turningMotorOffset = turningMotorOffset;
-
     m_driveMotorGain = driveMotorGain;
 
-    m_driveMotor.setIdleMode(IdleMode.kBrake);
-    m_turningMotor.setIdleMode(IdleMode.kBrake);
-
-    /**
-     * Parameters can be set by calling the appropriate Set method on the CANSparkMax object
-     * whose properties you want to change
-     * 
-     * Set methods will return one of three REVLibError values which will let you know if the 
-     * parameter was successfully set:
-     *  REVLibError.kOk
-     *  REVLibError.kError
-     *  REVLibError.kTimeout
-     * https://github.com/REVrobotics/SPARK-MAX-Examples/blob/master/Java/Get%20and%20Set%20Parameters/src/main/java/frc/robot/Robot.java
-     */
-    if(m_driveMotor.setIdleMode(IdleMode.kBrake) != REVLibError.kOk){
-      SmartDashboard.putString("Idle Mode", "Error");
-    }
-
-    
-    m_turningEncoder = new AnalogInput(analogEncoderPort);
-
-    m_driveEncoder = m_driveMotor.getEncoder();
-    
-    // Set the distance per pulse for the drive encoder. We can simply use the
-    // distance traveled for one rotation of the wheel divided by the encoder
-    // resolution.
-    m_driveEncoder.setPositionConversionFactor(Constants.kDriveEncoderDistancePerPulse);
-    m_driveEncoder.setVelocityConversionFactor(Constants.kDriveEncoderDistancePerPulse/60.0);
-
-
-    // Set whether drive encoder should be reversed or not
-    // m_driveEncoder.setReverseDirection(driveEncoderReversed);
-
-    // Set the distance (in this case, angle) per pulse for the turning encoder.
-    // This is the the angle through an entire rotation (2 * pi) divided by the
-    // encoder resolution.
-
-    // Set whether turning encoder should be reversed or not
-    // m_turningEncoder.setReverseDirection(turningEncoderReversed);
-
     // Limit the PID Controller's input range between -pi and pi and set the input
     // to be continuous.
     m_turningPIDController.enableContinuousInput(-Math.PI, Math.PI);
+
+    m_onboardIO = Constants.MODULE_ONBOARD_CONTROL && io instanceof OnboardControlIO
+        ? (OnboardControlIO) io : null;
+    if (m_onboardIO != null) {
+      m_onboardIO.seedTurningPosition(getTurningEncoderRadians());
+    }
+  }
+
+  /** Whether the module's loops run on its motor controllers */
+  public boolean isOnboardControl() {
+    return m_onboardIO != null;
   }
 
   public void updateSwerveTable() {
-    t_turningEncoder.setDouble(Math.toRadians(m_turningMotor.getEncoder().getPosition()));
+    t_turningEncoder.setDouble(m_io.getTurningMotorPosition());
   }
 
   public SwerveModulePosition getPosition() {
-    return new SwerveModulePosition(m_driveEncoder.getPosition(), new Rotation2d(getTurningEncoderRadians()));
+    return new SwerveModulePosition(m_io.getDrivePosition(), new Rotation2d(getTurningEncoderRadians()));
+  }
+
+  /** Distance the wheel has driven, meters */
+  public double getDistance() {
+    return m_io.getDrivePosition();
   }
 
   public double getTurningEncoderRadians(){
-    double angle = (1.0 - (m_turningEncoder.getVoltage()/RobotController.getVoltage5V())) * 2.0 * Math.PI + turningMotorOffset;
+    return getTurningEncoderRadians(RobotController.getVoltage5V());
+  }
+
+  /**
+   * Absolute module angle from the analog encoder
+   * @param voltage5V the 5 V rail's voltage, read once for all modules
+   */
+  public double getTurningEncoderRadians(double voltage5V){
+    double angle = (1.0 - (m_io.getTurningEncoderVoltage()/voltage5V)) * 2.0 * Math.PI + turningMotorOffset;
     angle %= 2.0 * Math.PI;
     if (angle < 0.0) {
         angle += 2.0 * Math.PI;
@@ -118,7 +101,7 @@ public class SwerveModule {
     }
 
     public double printVoltage() {
-      return m_turningEncoder.getVoltage();
+      return m_io.getTurningEncoderVoltage();
     }
 
   /**
@@ -127,16 +110,21 @@ public class SwerveModule {
    * @return The current state of the module.
    */
   public SwerveModuleState getState() {
-    return new SwerveModuleState(m_driveEncoder.getVelocity(), new Rotation2d(getTurningEncoderRadians()));
+    return new SwerveModuleState(m_io.getDriveVelocity(), new Rotation2d(getTurningEncoderRadians()));
   }
 
   public double getVelocity() {
-    return m_driveEncoder.getVelocity();
+    return m_io.getDriveVelocity();
   }
 
   public void stop(){
-    m_driveMotor.set(0);
-    m_turningMotor.set(0);
+    m_io.setDriveOutput(0);
+    m_io.setTurningOutput(0);
+    if (m_onboardIO != null) {
+      // the turning motor's encoder drifts from the module angle over a match; catch it up
+      // while nothing is being held
+      m_onboardIO.seedTurningPosition(getTurningEncoderRadians());
+    }
   }
   
   private static int loopCtr = 0;
@@ -146,13 +134,49 @@ public class SwerveModule {
    * @param desiredState Desired state with speed and angle.
    */
   public void setDesiredState(SwerveModuleState desiredState) {
-    // Optimize the reference state to avoid spinning further than 90 degrees
-    SwerveModuleState state =
-        SwerveModuleState.optimize(desiredState, new Rotation2d(getTurningEncoderRadians()));
+    setDesiredState(desiredState.speedMetersPerSecond, desiredState.angle.getRadians());
+  }
+
+  /**
+   * Sets the desired speed and angle for the module without allocating
+   *
+   * @param speedMetersPerSecond Desired wheel speed.
+   * @param angleRadians Desired module angle.
+   */
+  public void setDesiredState(double speedMetersPerSecond, double angleRadians) {
+    setDesiredState(speedMetersPerSecond, angleRadians, getTurningEncoderRadians(), m_io.getDriveVelocity());
+  }
+
+  /**
+   * Sets the desired speed and angle for the module from sensor values already read this cycle
+   *
+   * @param speedMetersPerSecond Desired wheel speed.
+   * @param angleRadians Desired module angle.
+   * @param currentAngle The module's angle, radians.
+   * @param currentVelocity The wheel's speed, meters per second.
+   */
+  public void setDesiredState(double speedMetersPerSecond, double angleRadians, double currentAngle, double currentVelocity) {
+
+    // Optimize the reference state to avoid spinning further than 90 degrees,
+    // as SwerveModuleState.optimize() does
+    if (Math.abs(MathUtil.angleModulus(angleRadians - currentAngle)) > Math.PI / 2) {
+      speedMetersPerSecond = -speedMetersPerSecond;
+      angleRadians += Math.PI;
+    }
+
+    final double driveFeedForward = speedMetersPerSecond / DrivetrainSubsystem.kMaxSpeed;
+
+    if (m_onboardIO != null) {
+      // the controllers close the loops on their own encoders at 1 kHz
+      m_onboardIO.setDriveVelocity(speedMetersPerSecond, driveFeedForward * m_driveMotorGain);
+      double angle = angleRadians % (2.0 * Math.PI);
+      m_onboardIO.setTurningPosition(angle < 0.0 ? angle + 2.0 * Math.PI : angle);
+      return;
+    }
 
     // Calculate the drive output from the drive PID controller.
-    final double driveOutput = //state.speedMetersPerSecond;
-      m_drivePIDController.calculate(m_driveEncoder.getVelocity(), state.speedMetersPerSecond);
+    final double driveOutput = //speedMetersPerSecond;
+      m_drivePIDController.calculate(currentVelocity, speedMetersPerSecond);
 
     // This computes the velocity error regardless of direction of travel
     // such that >0 means too fast and <0 means too slow
@@ -162,14 +186,12 @@ public class SwerveModule {
     // String str = String.format("setDesiredState/Verror%d", m_driveMotor.getDeviceId());
     // SmartDashboard.putNumber(str, velocityError);
 
-    final double driveFeedForward = state.speedMetersPerSecond / DrivetrainSubsystem.kMaxSpeed;
-
     // Calculate the turning motor output from the turning PID controller.
     final var turnOutput =
-        m_turningPIDController.calculate(getTurningEncoderRadians(), state.angle.getRadians());
+        m_turningPIDController.calculate(currentAngle, angleRadians);
 
     loopCtr++;
-    if ((loopCtr % 50 == 0) && (m_driveMotor.getDeviceId() == 8))
+    if (loopCtr % 50 == 0)
     {
       
       // System.out.println(
@@ -185,7 +207,7 @@ public class SwerveModule {
     // SmartDashboard.putNumber(str2, driveFeedForward);
 
     // Calculate the turning motor output from the turning PID controller.
-    m_driveMotor.set(Math.max(-1.0, Math.min((driveOutput + driveFeedForward) * m_driveMotorGain, 1.0)));
-    m_turningMotor.set(turnOutput);
+    m_io.setDriveOutput(Math.max(-1.0, Math.min((driveOutput + driveFeedForward) * m_driveMotorGain, 1.0)));
+    m_io.setTurningOutput(turnOutput);
   }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+/**
+ * The hardware under one swerve module: a drive motor with its encoder, a turning motor, and the
+ * absolute analog encoder on the module. {@link SwerveModule} runs its control code against
+ * this, so it works the same on the robot ({@link SwerveModuleIOSparkMax}) and off it
+ * ({@link SwerveDriveSim}). Hardware that can also run the module's loops implements
+ * {@link OnboardControlIO}.
+ */
+public interface SwerveModuleIO {
+  /** Distance the wheel has driven, meters */
+  double getDrivePosition();
+
+  /** Speed of the wheel, meters per second */
+  double getDriveVelocity();
+
+  /** Output of the absolute analog encoder, volts out of the 5 V rail */
+  double getTurningEncoderVoltage();
+
+  /** Turning motor's own encoder position, module radians, for debugging */
+  default double getTurningMotorPosition() {
+    return 0;
+  }
+
+  /** @param output drive motor duty cycle, -1 to 1 */
+  void setDriveOutput(double output);
+
+  /** @param output turning motor duty cycle, -1 to 1 */
+  void setTurningOutput(double output);
+}
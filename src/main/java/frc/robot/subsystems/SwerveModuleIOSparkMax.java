@@ -0,0 +1,175 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import com.revrobotics.CANSparkBase.ControlType;
+import com.revrobotics.CANSparkBase.IdleMode;
+import com.revrobotics.CANSparkLowLevel.MotorType;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.REVLibError;
+import com.revrobotics.RelativeEncoder;
+import com.revrobotics.SparkPIDController;
+import com.revrobotics.SparkPIDController.ArbFFUnits;
+
+import edu.wpi.first.wpilibj.AnalogInput;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants;
+import frc.robot.utils.CanStatusFrameManager;
+import frc.robot.utils.CanStatusFrameManager.Signal;
+
+/**
+ * A swerve module's NEOs on SPARK MAXes and its analog absolute encoder.
+ *
+ * <p>Both SPARK MAXes have their PID loops configured: velocity in meters per second on the
+ * drive encoder, and position in module radians on the turning motor's encoder, wrapped around
+ * a full turn. {@link SwerveModule} only uses them when {@link Constants#MODULE_ONBOARD_CONTROL}
+ * is on; otherwise it runs both loops on the RIO and sets the motor outputs directly.
+ *
+ * <p>Either way, the RIO reads only the drive encoder over CAN; its fallback turning loop reads
+ * the analog absolute encoder. So the status frames are set through {@link CanStatusFrameManager}
+ * to send the drive encoder and little else. The turning motor's position, which is only
+ * telemetry, arrives every {@link Constants#CAN_UNUSED_FRAME_PERIOD}.
+ */
+public class SwerveModuleIOSparkMax implements OnboardControlIO {
+  private final CANSparkMax m_driveMotor;
+  public final CANSparkMax m_turningMotor;
+
+  public final RelativeEncoder m_driveEncoder;
+  public final AnalogInput m_turningEncoder;
+  private final RelativeEncoder m_turningMotorEncoder;
+
+  private final SparkPIDController m_drivePIDController;
+  private final SparkPIDController m_turningPIDController;
+
+  /**
+   * @param driveMotorChannel ID for the drive motor.
+   * @param turningMotorChannel ID for the turning motor.
+   * @param analogEncoderPort analog input of the absolute encoder.
+   */
+  public SwerveModuleIOSparkMax(int driveMotorChannel, int turningMotorChannel, int analogEncoderPort) {
+    m_driveMotor = new CANSparkMax(driveMotorChannel, MotorType.kBrushless);
+    m_turningMotor = new CANSparkMax(turningMotorChannel, MotorType.kBrushless);
+
+    m_driveMotor.setIdleMode(IdleMode.kBrake);
+    m_turningMotor.setIdleMode(IdleMode.kBrake);
+
+    /**
+     * Parameters can be set by calling the appropriate Set method on the CANSparkMax object
+     * whose properties you want to change
+     * 
+     * Set methods will return one of three REVLibError values which will let you know if the 
+     * parameter was successfully set:
+     *  REVLibError.kOk
+     *  REVLibError.kError
+     *  REVLibError.kTimeout
+     * https://github.com/REVrobotics/SPARK-MAX-Examples/blob/master/Java/Get%20and%20Set%20Parameters/src/main/java/frc/robot/Robot.java
+     */
+    if(m_driveMotor.setIdleMode(IdleMode.kBrake) != REVLibError.kOk){
+      SmartDashboard.putString("Idle Mode", "Error");
+    }
+
+    
+    m_turningEncoder = new AnalogInput(analogEncoderPort);
+
+    m_driveEncoder = m_driveMotor.getEncoder();
+    
+    // Set the distance per pulse for the drive encoder. We can simply use the
+    // distance traveled for one rotation of the wheel divided by the encoder
+    // resolution.
+    m_driveEncoder.setPositionConversionFactor(Constants.kDriveEncoderDistancePerPulse);
+    m_driveEncoder.setVelocityConversionFactor(Constants.kDriveEncoderDistancePerPulse/60.0);
+
+
+    // Set whether drive encoder should be reversed or not
+    // m_driveEncoder.setReverseDirection(driveEncoderReversed);
+
+    // Set the distance (in this case, angle) per pulse for the turning encoder.
+    // This is the the angle through an entire rotation (2 * pi) divided by the
+    // encoder resolution.
+
+    // Set whether turning encoder should be reversed or not
+    // m_turningEncoder.setReverseDirection(turningEncoderReversed);
+
+    // The turning NEO's encoder measures the module angle; SwerveModule seeds it from the
+    // absolute encoder, since it starts wherever the module was at power on
+    m_turningMotorEncoder = m_turningMotor.getEncoder();
+    m_turningMotorEncoder.setPositionConversionFactor(Constants.kTurningMotorRadiansPerRotation);
+    m_turningMotorEncoder.setVelocityConversionFactor(Constants.kTurningMotorRadiansPerRotation / 60.0);
+
+    // Arbitrary feedforward comes with every setpoint, so the controllers' own FF gains stay 0
+    m_drivePIDController = m_driveMotor.getPIDController();
+    m_drivePIDController.setFeedbackDevice(m_driveEncoder);
+    m_drivePIDController.setP(Constants.DRIVE_VELOCITY_KP);
+    m_drivePIDController.setI(Constants.DRIVE_VELOCITY_KI);
+    m_drivePIDController.setD(Constants.DRIVE_VELOCITY_KD);
+    m_drivePIDController.setFF(0);
+    m_drivePIDController.setOutputRange(-1, 1);
+
+    m_turningPIDController = m_turningMotor.getPIDController();
+    m_turningPIDController.setFeedbackDevice(m_turningMotorEncoder);
+    m_turningPIDController.setP(Constants.TURNING_POSITION_KP);
+    m_turningPIDController.setI(Constants.TURNING_POSITION_KI);
+    m_turningPIDController.setD(Constants.TURNING_POSITION_KD);
+    m_turningPIDController.setFF(0);
+    m_turningPIDController.setOutputRange(-1, 1);
+    // take the short way around, as the RIO's continuous-input PID does
+    m_turningPIDController.setPositionPIDWrappingEnabled(true);
+    m_turningPIDController.setPositionPIDWrappingMinInput(0);
+    m_turningPIDController.setPositionPIDWrappingMaxInput(2 * Math.PI);
+
+    // odometry reads the drive distance every odometry update, everything else once a loop
+    CanStatusFrameManager frames = CanStatusFrameManager.getDefault();
+    frames.require(m_driveMotor, Signal.POSITION,
+        Constants.ODOMETRY_THREADED ? Constants.ODOMETRY_PERIOD : TimedRobot.kDefaultPeriod);
+    frames.require(m_driveMotor, Signal.VELOCITY, TimedRobot.kDefaultPeriod);
+    frames.register(m_turningMotor);
+  }
+
+  @Override
+  public double getDrivePosition() {
+    return m_driveEncoder.getPosition();
+  }
+
+  @Override
+  public double getDriveVelocity() {
+    return m_driveEncoder.getVelocity();
+  }
+
+  @Override
+  public double getTurningEncoderVoltage() {
+    return m_turningEncoder.getVoltage();
+  }
+
+  @Override
+  public double getTurningMotorPosition() {
+    return m_turningMotorEncoder.getPosition();
+  }
+
+  @Override
+  public void setDriveOutput(double output) {
+    m_driveMotor.set(output);
+  }
+
+  @Override
+  public void setTurningOutput(double output) {
+    m_turningMotor.set(output);
+  }
+
+  @Override
+  public void setDriveVelocity(double velocity, double feedforward) {
+    m_drivePIDController.setReference(velocity, ControlType.kVelocity, 0, feedforward, ArbFFUnits.kPercentOut);
+  }
+
+  @Override
+  public void setTurningPosition(double angle) {
+    m_turningPIDController.setReference(angle, ControlType.kPosition);
+  }
+
+  @Override
+  public void seedTurningPosition(double angle) {
+    m_turningMotorEncoder.setPosition(angle);
+  }
+}
@@ -0,0 +1,295 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants;
+import frc.robot.models.CameraConfig;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionFrameIndex;
+import frc.robot.models.VisionObject;
+import frc.robot.models.VisionSpatialIndex;
+import frc.robot.utils.MultiObjectTracker;
+import frc.robot.utils.PoseHistory;
+import frc.robot.utils.VisionRecorder;
+
+/**
+ * Reads every configured MonsterVision camera and merges their detections into one
+ * robot-centric set of objects.
+ *
+ * <p>Each camera gets its own {@link ObjectTrackerSubsystem}, which moves its detections into
+ * the robot's frame using the camera's extrinsics, on its own thread when
+ * {@link Constants#VISION_THREADED}; this class only merges their latest snapshots. Cameras that haven't sent a frame in
+ * {@link Constants#VISION_STALE_SECONDS} are left out. When two cameras see the same object,
+ * meaning the same class (and tag ID) within {@link Constants#VISION_DUPLICATE_DISTANCE}, the
+ * more confident detection is kept. The merge only reruns when some camera has a new frame or
+ * goes stale, and queries on the merged set are indexed like a single camera's.
+ *
+ * <p>Each merged set of new detections also feeds a {@link MultiObjectTracker}, which keeps
+ * objects' identities and velocities across frames.
+ */
+public class VisionManager extends SubsystemBase {
+    private final ObjectTrackerSubsystem[] cameras;
+    private final boolean[] cameraFresh;
+    private final PoseHistory poseHistory;
+
+    private final VisionFrame merged = new VisionFrame();
+    private final VisionFrameIndex index = new VisionFrameIndex();
+    private final VisionSpatialIndex spatialIndex = new VisionSpatialIndex();
+    private final VisionObject[] nearest = new VisionObject[1];
+    private final VisionObject candidate = new VisionObject();
+    private final double[] mergePose = new double[3];
+    private final MultiObjectTracker tracker = new MultiObjectTracker(Constants.VISION_MAX_TRACKS);
+    private final VisionRecorder recorder;
+
+    /**
+     * @param poseHistory drivetrain pose history for latency compensation, or null
+     * @param configs the cameras to read
+     */
+    public VisionManager(PoseHistory poseHistory, CameraConfig... configs) {
+        this.poseHistory = poseHistory;
+        cameras = new ObjectTrackerSubsystem[configs.length];
+        cameraFresh = new boolean[configs.length];
+        VisionRecorder log = Constants.VISION_RECORDING_ENABLED ? new VisionRecorder() : null;
+        if (log != null && !log.isAvailable()) {
+            DriverStation.reportWarning("Vision recording off: " + log.getLastError(), false);
+            log = null;
+        }
+        recorder = log;
+        for (int i = 0; i < configs.length; i++) {
+            cameras[i] = new ObjectTrackerSubsystem(configs[i], poseHistory);
+            cameras[i].setRecorder(recorder, i);
+        }
+    }
+
+    /** Ingests new frames from every camera and re-merges if anything changed. Call once per loop. */
+    public void update() {
+        double now = Timer.getFPGATimestamp();
+        boolean changed = false;
+        boolean newFrames = false;
+        for (int i = 0; i < cameras.length; i++) {
+            cameras[i].data();
+            boolean fresh = getCameraAge(i, now) <= Constants.VISION_STALE_SECONDS;
+            if (cameras[i].getNewFrameCount() > 0) {
+                newFrames = true;
+            }
+            if (fresh != cameraFresh[i]) {
+                changed = true;
+            }
+            cameraFresh[i] = fresh;
+        }
+        if (changed || newFrames) {
+            merge();
+        }
+        // a camera only going stale is not a new observation, the tracks coast through it
+        if (newFrames) {
+            merged.sequence++;
+            tracker.update(merged);
+        }
+    }
+
+    private void merge() {
+        merged.count = 0;
+        merged.timestamp = 0;
+        merged.captureTimestamp = 0;
+        // bring every camera's detections to the newest pose, their frames may be a loop or two apart
+        merged.hasRobotPose = poseHistory != null && poseHistory.sample(poseHistory.getLatestTimestamp(), mergePose);
+        if (merged.hasRobotPose) {
+            merged.poseTimestamp = poseHistory.getLatestTimestamp();
+            merged.robotX = mergePose[0];
+            merged.robotY = mergePose[1];
+            merged.robotTheta = mergePose[2];
+        }
+
+        for (int c = 0; c < cameras.length; c++) {
+            VisionFrame frame = cameras[c].getLatestFrame();
+            if (!cameraFresh[c] || frame == null) {
+                continue;
+            }
+            merged.timestamp = Math.max(merged.timestamp, frame.timestamp);
+            merged.captureTimestamp = Math.max(merged.captureTimestamp, frame.captureTimestamp);
+
+            boolean compensate = merged.hasRobotPose && frame.hasRobotPose && frame.poseTimestamp != merged.poseTimestamp;
+            double forward = 0;
+            double left = 0;
+            double rotation = 0;
+            if (compensate) {
+                double dx = merged.robotX - frame.robotX;
+                double dy = merged.robotY - frame.robotY;
+                double cosTheta = Math.cos(frame.robotTheta);
+                double sinTheta = Math.sin(frame.robotTheta);
+                forward = dx * cosTheta + dy * sinTheta;
+                left = -dx * sinTheta + dy * cosTheta;
+                rotation = merged.robotTheta - frame.robotTheta;
+            }
+
+            for (int i = 0; i < frame.count; i++) {
+                candidate.set(frame.objects[i]);
+                if (compensate) {
+                    candidate.motionCompensate(forward, left, rotation);
+                }
+                addToMerge(candidate, frame.classIds[i], frame.tagIds[i]);
+            }
+        }
+        merged.gatherPositions();
+        merged.computeFieldPositions();
+        index.rebuild(merged.objects, merged.classIds, merged.tagIds, merged.count);
+        spatialIndex.update(merged);
+    }
+
+    private void addToMerge(VisionObject vo, int classId, int tagId) {
+        for (int i = 0; i < merged.count; i++) {
+            if (merged.classIds[i] == classId && merged.tagIds[i] == tagId && isSameObject(merged.objects[i], vo)) {
+                if (vo.confidence > merged.objects[i].confidence) {
+                    removeFromMerge(i);
+                    break;
+                }
+                return;
+            }
+        }
+        if (merged.count == merged.objects.length && distance(vo) >= distance(merged.objects[merged.count - 1])) {
+            return;
+        }
+
+        // keep the merged set sorted by distance, like MonsterVision sorts each camera's
+        int slot = Math.min(merged.count, merged.objects.length - 1);
+        VisionObject spare = merged.objects[slot];
+        int i = slot;
+        double d = distance(vo);
+        while (i > 0 && distance(merged.objects[i - 1]) > d) {
+            merged.objects[i] = merged.objects[i - 1];
+            merged.classIds[i] = merged.classIds[i - 1];
+            merged.tagIds[i] = merged.tagIds[i - 1];
+            i--;
+        }
+        spare.set(vo);
+        merged.objects[i] = spare;
+        merged.classIds[i] = classId;
+        merged.tagIds[i] = tagId;
+        merged.count = Math.min(merged.count + 1, merged.objects.length);
+    }
+
+    private void removeFromMerge(int i) {
+        VisionObject removed = merged.objects[i];
+        for (int j = i; j < merged.count - 1; j++) {
+            merged.objects[j] = merged.objects[j + 1];
+            merged.classIds[j] = merged.classIds[j + 1];
+            merged.tagIds[j] = merged.tagIds[j + 1];
+        }
+        merged.count--;
+        merged.objects[merged.count] = removed;
+    }
+
+    private static boolean isSameObject(VisionObject a, VisionObject b) {
+        double dx = a.x - b.x;
+        double dy = a.y - b.y;
+        double dz = a.z - b.z;
+        return dx * dx + dy * dy + dz * dz < Constants.VISION_DUPLICATE_DISTANCE * Constants.VISION_DUPLICATE_DISTANCE;
+    }
+
+    private static double distance(VisionObject vo) {
+        return vo.x * vo.x + vo.z * vo.z;
+    }
+
+    public int getCameraCount() {
+        return cameras.length;
+    }
+
+    public ObjectTrackerSubsystem getCamera(int i) {
+        return cameras[i];
+    }
+
+    /**
+     * Seconds since a camera's latest frame was captured, infinite if it has sent none. Both
+     * the merge and {@link #isStale} go by this, capture to now as VisionHealth measures it.
+     */
+    public double getCameraAge(int i) {
+        return getCameraAge(i, Timer.getFPGATimestamp());
+    }
+
+    private double getCameraAge(int i, double now) {
+        VisionFrame frame = cameras[i].getLatestFrame();
+        return frame == null ? Double.POSITIVE_INFINITY : now - frame.captureTimestamp;
+    }
+
+    /** Whether no camera has detections captured in the last maxAge seconds */
+    public boolean isStale(double maxAge) {
+        double now = Timer.getFPGATimestamp();
+        for (int i = 0; i < cameras.length; i++) {
+            if (getCameraAge(i, now) <= maxAge) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Whether a camera's data was used in the latest merge */
+    public boolean isCameraFresh(int i) {
+        return cameraFresh[i];
+    }
+
+    /** The merged detections from every fresh camera, closest first. Its sequence goes up with each new frame. */
+    public VisionFrame getMergedFrame() {
+        return merged;
+    }
+
+    /** The match log every camera records to, or null if recording is turned off */
+    public VisionRecorder getRecorder() {
+        return recorder;
+    }
+
+    /** Puts a labelled marker in the match log, e.g. when a command starts or fails */
+    public void mark(String label) {
+        if (recorder != null) {
+            recorder.mark(label, Timer.getFPGATimestamp());
+        }
+    }
+
+    /** Objects followed across frames, with stable IDs and predicted positions */
+    public MultiObjectTracker getTracker() {
+        return tracker;
+    }
+
+    public int numberOfObjects() {
+        return merged.count;
+    }
+
+    /** Returns detections with at least this confidence, or null if nothing is seen. Valid until the next merge. */
+    public VisionObject[] getObjects(double minimumConfidence) {
+        if (merged.count == 0)
+            return null;
+        return index.getObjects(minimumConfidence);
+    }
+
+    /** Returns detections whose label contains objectLabel, or null if nothing is seen. Valid until the next merge. */
+    public VisionObject[] getObjectsOfType(String objectLabel) {
+        if (merged.count == 0)
+            return null;
+        return index.getObjectsOfType(objectLabel);
+    }
+
+    /** Nearest, sector and polygon queries over the merged detections */
+    public VisionSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /** Returns the detection nearest the robot whose label contains objectLabel, or null */
+    public VisionObject getClosestObject(String objectLabel) {
+        int found = spatialIndex.nearest(0, 0, false, 1, objectLabel, VisionObject.minimumConfidenceFor(objectLabel), nearest);
+        return found < 1 ? null : nearest[0];
+    }
+
+    public VisionObject getClosestObject() {
+        int found = spatialIndex.nearest(0, 0, false, 1, null, 0.5, nearest);
+        return found < 1 ? null : nearest[0];
+    }
+
+    /** Returns closest AprilTag seen by any camera */
+    public VisionObject getClosestAprilTag() {
+        return getClosestObject("tag");
+    }
+
+    public VisionObject getSpecificAprilTag(int id) {
+        return index.getAprilTag(id);
+    }
+}
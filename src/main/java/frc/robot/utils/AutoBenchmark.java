@@ -0,0 +1,266 @@
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.subsystems.SwerveDriveSim;
+
+/**
+ * Runs createPath() autos on a {@link SwerveDriveSim} with the real DrivetrainSubsystem and
+ * command scheduler, on a stepped clock so it goes as fast as the desktop can, and reports how
+ * well each one tracked. Sweeping the trajectory speed and acceleration limits shows the fastest
+ * settings that still stay on the path.
+ *
+ * <pre>
+ *   ./gradlew simulateAuto --args="[--speeds 1.75,2.5,3.5] [--accels 4,8,16] [--tolerance M] [--repeat N]"
+ * </pre>
+ * Every combination of speed (meters per second) and acceleration (meters per second squared)
+ * drives each of the test paths. Tracking error is how far the simulated robot, not the
+ * odometry, was from where the trajectory said it should be; drift is how far odometry ended up
+ * from the robot. Settings whose worst tracking error stays under the tolerance (default 0.1 m)
+ * count as tracking. --repeat runs the whole sweep N times to warm up the JIT and reports the
+ * last; loop times are for the scheduler run, i.e. the drivetrain's periodic() and the command.
+ */
+public class AutoBenchmark {
+    private static final double LOOP_PERIOD = 0.02; // seconds, as TimedRobot
+    private static final double TIMEOUT = 5.0; // seconds past the trajectory's end before giving up
+    private static final double SLIP_SPEED = 0.05; // meters per second of wheel slip counted as slipping
+
+    /** A createPath() call: start, one waypoint, end, and the heading to turn to */
+    private static class TestPath {
+        final String name;
+        final Pose2d start;
+        final Translation2d middle;
+        final Pose2d end;
+        final double endRot;
+
+        TestPath(String name, Pose2d start, Translation2d middle, Pose2d end, double endRot) {
+            this.name = name;
+            this.start = start;
+            this.middle = middle;
+            this.end = end;
+            this.endRot = endRot;
+        }
+    }
+
+    private static final TestPath[] PATHS = {
+        new TestPath("straight", new Pose2d(0, 0, new Rotation2d()), new Translation2d(1.5, 0),
+            new Pose2d(3, 0, new Rotation2d()), 0),
+        new TestPath("s-curve", new Pose2d(0, 0, new Rotation2d()), new Translation2d(1.5, 0.75),
+            new Pose2d(3, 1.5, new Rotation2d()), 0),
+        new TestPath("turn", new Pose2d(0, 0, new Rotation2d()), new Translation2d(1.5, 0.5),
+            new Pose2d(2, 2, Rotation2d.fromDegrees(90)), 90),
+    };
+
+    /** How one run of one path went */
+    private static class Run {
+        double plannedTime;
+        double time;
+        double maxError;
+        double squaredError;
+        int samples;
+        double finalError;
+        double headingError;
+        double drift;
+        double slipTime;
+        double minVoltage = Double.POSITIVE_INFINITY;
+        boolean timedOut;
+    }
+
+    public static void main(String[] args) {
+        double[] speeds = {Constants.maxModuleLinearSpeed};
+        double[] accels = {Constants.maxModuleLinearAccelaration};
+        double tolerance = 0.1;
+        int repeat = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--speeds":
+                    speeds = parseList(args[++i]);
+                    break;
+                case "--accels":
+                    accels = parseList(args[++i]);
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
+                case "--repeat":
+                    repeat = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("usage: AutoBenchmark [--speeds LIST] [--accels LIST] [--tolerance M] [--repeat N]");
+                    System.exit(1);
+            }
+        }
+
+        if (!HAL.initialize(500, 0)) {
+            throw new IllegalStateException("Failed to initialize the simulated HAL");
+        }
+        // time only moves when we step it
+        SimHooks.pauseTiming();
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setAutonomous(true);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+        DriverStation.refreshData();
+
+        SwerveDriveSim sim = new SwerveDriveSim(Timer::getFPGATimestamp);
+        // odometry in periodic(), so every loop sees exactly the same steps
+        DrivetrainSubsystem dts = new DrivetrainSubsystem(sim.getIO(), false);
+        dts.setFollowJoystick(false);
+
+        List<Long> loopNanos = new ArrayList<>();
+        Run[][][] runs = null;
+        long wallStart = 0;
+        double simulated = 0;
+        for (int pass = 0; pass < repeat; pass++) {
+            loopNanos.clear();
+            runs = new Run[speeds.length][accels.length][PATHS.length];
+            wallStart = System.nanoTime();
+            simulated = 0;
+            for (int s = 0; s < speeds.length; s++) {
+                for (int a = 0; a < accels.length; a++) {
+                    for (int p = 0; p < PATHS.length; p++) {
+                        Run run = drive(sim, dts, PATHS[p], speeds[s], accels[a], loopNanos);
+                        runs[s][a][p] = run;
+                        simulated += run.time;
+                    }
+                }
+            }
+        }
+        double wallSeconds = (System.nanoTime() - wallStart) * 1e-9;
+
+        report(runs, speeds, accels, tolerance);
+        long[] sorted = new long[loopNanos.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = loopNanos.get(i);
+        }
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long t : sorted) {
+            sum += t;
+        }
+        System.out.printf("loop            mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us per loop (%d loops)%n",
+            sum / 1e3 / sorted.length,
+            sorted[sorted.length / 2] / 1e3,
+            sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1e3,
+            sorted[sorted.length - 1] / 1e3,
+            sorted.length);
+        System.out.printf("simulated       %.1f s of driving in %.1f s, %.0fx real time%n",
+            simulated, wallSeconds, simulated / wallSeconds);
+        // the HAL and NetworkTables leave threads running
+        System.exit(0);
+    }
+
+    /** Drives one path from a standstill at its start and measures how closely it was followed */
+    private static Run drive(SwerveDriveSim sim, DrivetrainSubsystem dts, TestPath path,
+            double maxSpeed, double maxAcceleration, List<Long> loopNanos) {
+        CommandScheduler scheduler = CommandScheduler.getInstance();
+        scheduler.cancelAll();
+        dts.stopMotors();
+        sim.resetPose(path.start.getX(), path.start.getY(), path.start.getRotation().getRadians());
+        dts.resetAngle();
+        dts.resetOdometry(path.start);
+
+        Run run = new Run();
+        Trajectory trajectory = dts.createTrajectory(path.start, path.middle, path.end, maxSpeed, maxAcceleration);
+        run.plannedTime = trajectory.getTotalTimeSeconds();
+        Command command = dts.createPath(trajectory, path.endRot);
+        scheduler.schedule(command);
+
+        double start = Timer.getFPGATimestamp();
+        double elapsed = 0;
+        while (scheduler.isScheduled(command)) {
+            if (elapsed > run.plannedTime + TIMEOUT) {
+                run.timedOut = true;
+                scheduler.cancel(command);
+                break;
+            }
+            DriverStation.refreshData();
+            long loopStart = System.nanoTime();
+            scheduler.run();
+            loopNanos.add(System.nanoTime() - loopStart);
+            SimHooks.stepTiming(LOOP_PERIOD);
+            elapsed = Timer.getFPGATimestamp() - start;
+
+            Pose2d reference = trajectory.sample(elapsed).poseMeters;
+            double error = Math.hypot(sim.getX() - reference.getX(), sim.getY() - reference.getY());
+            run.maxError = Math.max(run.maxError, error);
+            run.squaredError += error * error;
+            run.samples++;
+            for (int i = 0; i < 4; i++) {
+                if (Math.abs(sim.getSlip(i)) > SLIP_SPEED) {
+                    run.slipTime += LOOP_PERIOD;
+                    break;
+                }
+            }
+            run.minVoltage = Math.min(run.minVoltage, sim.getBatteryVoltage());
+        }
+        run.time = elapsed;
+        dts.stopMotors();
+
+        run.finalError = Math.hypot(sim.getX() - path.end.getX(), sim.getY() - path.end.getY());
+        run.headingError = Math.abs(Math.toDegrees(MathUtil.angleModulus(sim.getTheta() - Math.toRadians(path.endRot))));
+        Pose2d odometry = dts.getPose();
+        run.drift = Math.hypot(odometry.getX() - sim.getX(), odometry.getY() - sim.getY());
+        return run;
+    }
+
+    private static void report(Run[][][] runs, double[] speeds, double[] accels, double tolerance) {
+        System.out.printf("%-7s %-7s %-9s %-7s %-8s %-8s %-9s %-9s %-8s %-7s %-7s%n",
+            "speed", "accel", "path", "time s", "max err", "rms err", "final err", "heading", "drift", "slip s", "min V");
+        int bestSpeed = -1;
+        int bestAccel = -1;
+        double bestTime = Double.POSITIVE_INFINITY;
+        for (int s = 0; s < speeds.length; s++) {
+            for (int a = 0; a < accels.length; a++) {
+                double totalTime = 0;
+                boolean tracks = true;
+                for (int p = 0; p < PATHS.length; p++) {
+                    Run run = runs[s][a][p];
+                    System.out.printf("%-7.2f %-7.2f %-9s %-7.2f %-8.3f %-8.3f %-9.3f %-9.1f %-8.3f %-7.2f %-7.2f%s%n",
+                        speeds[s], accels[a], PATHS[p].name, run.time, run.maxError,
+                        Math.sqrt(run.squaredError / Math.max(run.samples, 1)), run.finalError,
+                        run.headingError, run.drift, run.slipTime, run.minVoltage,
+                        run.timedOut ? "  timed out" : "");
+                    totalTime += run.time;
+                    tracks &= !run.timedOut && run.maxError < tolerance;
+                }
+                if (tracks && totalTime < bestTime) {
+                    bestTime = totalTime;
+                    bestSpeed = s;
+                    bestAccel = a;
+                }
+            }
+        }
+        if (bestSpeed < 0) {
+            System.out.printf("fastest         nothing tracked within %.3f m%n", tolerance);
+        } else {
+            System.out.printf("fastest         speed %.2f, accel %.2f tracked within %.3f m, %.2f s for all paths%n",
+                speeds[bestSpeed], accels[bestAccel], tolerance, bestTime);
+        }
+    }
+
+    private static double[] parseList(String list) {
+        String[] parts = list.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+}
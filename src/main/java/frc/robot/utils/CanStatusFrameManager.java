@@ -0,0 +1,261 @@
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.revrobotics.CANSparkBase;
+import com.revrobotics.CANSparkBase.FaultID;
+import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
+import com.revrobotics.REVLibError;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants;
+
+/**
+ * Sets how often each SPARK MAX sends its periodic status frames from what the code actually
+ * reads. Code that reads a signal declares it with {@link #require}, along with how old a reading
+ * it can use. Each frame is then sent often enough for its most demanding reader.
+ * Frames nobody reads are slowed to {@link Constants#CAN_UNUSED_FRAME_PERIOD}.
+ *
+ * <p>A SPARK MAX forgets its frame periods when it reboots, e.g. after a brownout. It comes
+ * back up with its sticky reset fault set. That fault is also set from power-on, so the sticky
+ * faults are cleared once when a controller is first managed, and after that {@link #periodic}
+ * treats the fault as a reboot and applies the periods again. Sticky faults can only be cleared
+ * all together, so before clearing them it reports the others, e.g. brownout or overcurrent, to
+ * the driver station and keeps them in {@link #getClearedFaults}.
+ */
+public class CanStatusFrameManager {
+    /** The signals a SPARK MAX reports, and the status frame each one arrives in */
+    public enum Signal {
+        APPLIED_OUTPUT(0),
+        FAULTS(0),
+        VELOCITY(1),
+        TEMPERATURE(1),
+        BUS_VOLTAGE(1),
+        CURRENT(1),
+        POSITION(2),
+        ANALOG_SENSOR(3),
+        ALTERNATE_ENCODER(4),
+        ABSOLUTE_ENCODER_POSITION(5),
+        ABSOLUTE_ENCODER_VELOCITY(6);
+
+        final int frame;
+
+        Signal(int frame) {
+            this.frame = frame;
+        }
+    }
+
+    private static final PeriodicFrame[] FRAMES = {
+        PeriodicFrame.kStatus0, PeriodicFrame.kStatus1, PeriodicFrame.kStatus2, PeriodicFrame.kStatus3,
+        PeriodicFrame.kStatus4, PeriodicFrame.kStatus5, PeriodicFrame.kStatus6};
+    private static final int[] DEFAULT_PERIODS = {10, 20, 20, 50, 20, 200, 200}; // milliseconds; what a SPARK MAX sends out of the box
+    private static final int MAX_PERIOD = 65535; // milliseconds; the longest a SPARK MAX accepts
+    private static final int FRAME_BITS = 135; // an extended frame with 8 data bytes, with typical bit stuffing
+
+    /** A controller and the shortest period any reader needs from each of its frames */
+    private static class Controller {
+        final CANSparkBase spark;
+        final int[] required = new int[FRAMES.length]; // milliseconds; 0 when nothing reads the frame
+        boolean applied;
+        int resets;
+        int clearedFaults; // sticky faults cleared along with resets, bits by FaultID.value
+        double clearedAt = Double.NEGATIVE_INFINITY; // seconds, FPGA time; when its sticky faults were last cleared
+
+        Controller(CANSparkBase spark) {
+            this.spark = spark;
+        }
+    }
+
+    private static CanStatusFrameManager defaultManager;
+
+    private final List<Controller> controllers = new ArrayList<>();
+    private int totalResets;
+
+    public static synchronized CanStatusFrameManager getDefault() {
+        if (defaultManager == null) {
+            defaultManager = new CanStatusFrameManager();
+        }
+        return defaultManager;
+    }
+
+    /**
+     * Declares that something reads a signal from a controller. A new controller has all its
+     * frame periods set; after that only a frame whose period changes is written again.
+     * @param maxAge how old a reading can be and still be of use, seconds
+     */
+    public synchronized void require(CANSparkBase spark, Signal signal, double maxAge) {
+        Controller controller = find(spark);
+        int before = period(controller, signal.frame);
+        int period = clampPeriod((int) Math.floor(maxAge * 1000));
+        int required = controller.required[signal.frame];
+        controller.required[signal.frame] = required == 0 ? period : Math.min(required, period);
+        if (!controller.applied) {
+            apply(controller);
+        } else if (period(controller, signal.frame) != before) {
+            apply(controller, signal.frame);
+        }
+    }
+
+    /** Manages a controller that nothing reads, so that all its frames are slowed down */
+    public synchronized void register(CANSparkBase spark) {
+        Controller controller = find(spark);
+        if (!controller.applied) {
+            apply(controller);
+        }
+    }
+
+    /**
+     * Applies the frame periods again on controllers that have rebooted, and puts the bus load
+     * on the dashboard. Call once a loop.
+     */
+    public synchronized void periodic() {
+        for (Controller controller : controllers) {
+            int faults = controller.spark.getStickyFaults() & 0xffff;
+            // status 0 can still carry the flags from before the last clear until the next one arrives
+            boolean fresh = Timer.getFPGATimestamp() - controller.clearedAt > 2 * Constants.CAN_FAULT_FRAME_PERIOD;
+            if ((faults & bit(FaultID.kHasReset)) != 0 && fresh) {
+                apply(controller);
+                int others = clearStickyFaults(controller, faults);
+                controller.resets++;
+                totalResets++;
+                DriverStation.reportWarning("SPARK MAX " + controller.spark.getDeviceId()
+                    + " reset; status frame periods applied again"
+                    + (others == 0 ? "" : ", cleared sticky faults " + faultNames(others)), false);
+            }
+        }
+        SmartDashboard.putNumber("CAN/Estimated load", getEstimatedLoad());
+        SmartDashboard.putNumber("CAN/Default load", getDefaultLoad());
+        SmartDashboard.putNumber("CAN/Measured load", RobotController.getCANStatus().percentBusUtilization);
+        SmartDashboard.putNumber("CAN/Controller resets", totalResets);
+    }
+
+    /** The fraction of the bus the managed controllers use, with the periods as set */
+    public synchronized double getEstimatedLoad() {
+        double framesPerSecond = 0;
+        for (Controller controller : controllers) {
+            for (int frame = 0; frame < FRAMES.length; frame++) {
+                framesPerSecond += 1000.0 / period(controller, frame);
+            }
+        }
+        return load(framesPerSecond);
+    }
+
+    /** The fraction of the bus the managed controllers would use with their default periods */
+    public synchronized double getDefaultLoad() {
+        double framesPerController = 0;
+        for (int period : DEFAULT_PERIODS) {
+            framesPerController += 1000.0 / period;
+        }
+        return load(framesPerController * controllers.size());
+    }
+
+    /** How many times a managed controller has been seen to reboot */
+    public synchronized int getResetCount(CANSparkBase spark) {
+        for (Controller controller : controllers) {
+            if (controller.spark == spark) {
+                return controller.resets;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sticky faults other than the reset that were cleared at startup or while handling resets,
+     * so they can still be looked at after the controller's own flags are gone
+     * @return bits by FaultID.value, as getStickyFaults()
+     */
+    public synchronized int getClearedFaults(CANSparkBase spark) {
+        for (Controller controller : controllers) {
+            if (controller.spark == spark) {
+                return controller.clearedFaults;
+            }
+        }
+        return 0;
+    }
+
+    private Controller find(CANSparkBase spark) {
+        for (Controller controller : controllers) {
+            if (controller.spark == spark) {
+                return controller;
+            }
+        }
+        Controller controller = new Controller(spark);
+        controllers.add(controller);
+        return controller;
+    }
+
+    private void apply(Controller controller) {
+        if (!controller.applied) {
+            // the reset fault is latched from power-on, not a reboot; clear it so periodic() sees only later ones
+            int others = clearStickyFaults(controller, controller.spark.getStickyFaults() & 0xffff);
+            if (others != 0) {
+                DriverStation.reportWarning("SPARK MAX " + controller.spark.getDeviceId()
+                    + ": cleared sticky faults from before startup " + faultNames(others), false);
+            }
+        }
+        for (int frame = 0; frame < FRAMES.length; frame++) {
+            apply(controller, frame);
+        }
+        controller.applied = true;
+    }
+
+    private void apply(Controller controller, int frame) {
+        REVLibError error = controller.spark.setPeriodicFramePeriod(FRAMES[frame], period(controller, frame));
+        if (error != REVLibError.kOk) {
+            DriverStation.reportWarning("SPARK MAX " + controller.spark.getDeviceId()
+                + ": setting status frame " + frame + " failed, " + error, false);
+        }
+    }
+
+    /**
+     * Clears a controller's sticky faults, keeping all but the reset in its cleared faults
+     * @return the faults other than the reset
+     */
+    private static int clearStickyFaults(Controller controller, int faults) {
+        int others = faults & ~bit(FaultID.kHasReset);
+        controller.clearedFaults |= others;
+        controller.spark.clearFaults();
+        controller.clearedAt = Timer.getFPGATimestamp();
+        return others;
+    }
+
+    private static int bit(FaultID fault) {
+        return 1 << fault.value;
+    }
+
+    private static String faultNames(int faults) {
+        StringBuilder names = new StringBuilder();
+        for (FaultID fault : FaultID.values()) {
+            if ((faults & bit(fault)) != 0) {
+                names.append(names.length() == 0 ? "" : ", ").append(fault.name());
+            }
+        }
+        return names.toString();
+    }
+
+    private static int period(Controller controller, int frame) {
+        int period = controller.required[frame];
+        if (period == 0) {
+            period = clampPeriod((int) (Constants.CAN_UNUSED_FRAME_PERIOD * 1000));
+        }
+        if (frame == 0) {
+            // faults, including the reset flag periodic() watches for, come in status 0
+            period = Math.min(period, clampPeriod((int) (Constants.CAN_FAULT_FRAME_PERIOD * 1000)));
+        }
+        return period;
+    }
+
+    private static int clampPeriod(int period) {
+        return Math.max(1, Math.min(MAX_PERIOD, period));
+    }
+
+    /** Status frames, plus the setpoint the RIO sends each controller every control period */
+    private double load(double statusFramesPerSecond) {
+        double controlFramesPerSecond = controllers.size() / Constants.CAN_CONTROL_PERIOD;
+        return (statusFramesPerSecond + controlFramesPerSecond) * FRAME_BITS / Constants.CAN_BIT_RATE;
+    }
+}
@@ -0,0 +1,29 @@
+package frc.robot.utils;
+
+/**
+ * Every drivetrain sensor reading for one cycle, taken together at one time, so everything that
+ * cycle works from the same values and each sensor is read over the HAL only once.
+ *
+ * <p>Module readings are indexed in kinematics order. Snapshots are preallocated and reused,
+ * e.g. through a {@link TripleBuffer}.
+ */
+public class DriveSensorSnapshot {
+    /** When the sensors were read, seconds on the FPGA clock */
+    public double timestamp;
+    /** Gyro heading, radians counterclockwise */
+    public double gyroYaw;
+    /** Gyro turn rate as the NavX reports it, degrees per second */
+    public double gyroRate;
+    /** Distance each wheel has driven, meters */
+    public final double[] distances;
+    /** Speed of each wheel, meters per second */
+    public final double[] velocities;
+    /** Absolute angle of each module, radians */
+    public final double[] angles;
+
+    public DriveSensorSnapshot(int moduleCount) {
+        distances = new double[moduleCount];
+        velocities = new double[moduleCount];
+        angles = new double[moduleCount];
+    }
+}
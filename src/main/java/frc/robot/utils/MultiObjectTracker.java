@@ -0,0 +1,301 @@
+package frc.robot.utils;
+
+import frc.robot.Constants;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionObject;
+
+/**
+ * Follows detected objects from frame to frame so they keep a stable ID, a velocity estimate
+ * and a predicted position, and don't flicker out when one frame misses them.
+ *
+ * <p>Each track runs a constant-velocity Kalman filter. The x and y axes are independent under
+ * that model, so every track is two small filters of position and velocity with a 2x2
+ * covariance each. Detections are matched to the nearest predicted track of the same class
+ * (and tag ID) inside {@link Constants#VISION_TRACK_GATE}; anything unmatched starts a new
+ * track. Tracks are dropped after {@link Constants#VISION_TRACK_MAX_MISSES} frames in a row
+ * without a match.
+ *
+ * <p>Positions are in meters on the field when frames carry a robot pose, otherwise relative
+ * to the robot (x forward, y left). All state lives in primitive arrays, so updates and
+ * queries don't allocate.
+ */
+public class MultiObjectTracker {
+    private final int capacity;
+    private int count = 0;
+    private int nextId = 1;
+    private boolean fieldRelative = false;
+
+    private final int[] ids;
+    private final int[] classIds;
+    private final int[] tagIds;
+    private final String[] labels;
+    private final int[] hits;
+    private final int[] misses;
+    private final double[] firstSeen;
+    private final double[] lastTime;
+    private final boolean[] matched;
+
+    // per track: x, y, vx, vy
+    private final double[] state;
+    // per track: x axis p00, p01, p11 then y axis p00, p01, p11
+    private final double[] covariance;
+
+    private final double[] position = new double[2];
+
+    public MultiObjectTracker(int capacity) {
+        this.capacity = capacity;
+        ids = new int[capacity];
+        classIds = new int[capacity];
+        tagIds = new int[capacity];
+        labels = new String[capacity];
+        hits = new int[capacity];
+        misses = new int[capacity];
+        firstSeen = new double[capacity];
+        lastTime = new double[capacity];
+        matched = new boolean[capacity];
+        state = new double[capacity * 4];
+        covariance = new double[capacity * 6];
+    }
+
+    /** Feeds one frame of detections in, timed at the frame's capture time */
+    public void update(VisionFrame frame) {
+        if (frame.hasRobotPose != fieldRelative) {
+            // the two coordinate frames don't mix, start over
+            clear();
+            fieldRelative = frame.hasRobotPose;
+        }
+        double time = frame.captureTimestamp;
+
+        for (int t = 0; t < count; t++) {
+            predict(t, time);
+            matched[t] = false;
+        }
+
+        for (int i = 0; i < frame.count; i++) {
+            toPlane(frame, i, position);
+            int best = -1;
+            double bestDistance = Constants.VISION_TRACK_GATE * Constants.VISION_TRACK_GATE;
+            for (int t = 0; t < count; t++) {
+                if (matched[t] || classIds[t] != frame.classIds[i] || tagIds[t] != frame.tagIds[i]) {
+                    continue;
+                }
+                double dx = position[0] - state[t * 4];
+                double dy = position[1] - state[t * 4 + 1];
+                double distance = dx * dx + dy * dy;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = t;
+                }
+            }
+
+            if (best >= 0) {
+                correct(best, position[0], position[1]);
+                matched[best] = true;
+                hits[best]++;
+                misses[best] = 0;
+            } else if (count < capacity) {
+                start(count, frame, i, time);
+                matched[count] = true;
+                count++;
+            }
+        }
+
+        for (int t = count - 1; t >= 0; t--) {
+            if (!matched[t] && ++misses[t] > Constants.VISION_TRACK_MAX_MISSES) {
+                remove(t);
+            }
+        }
+    }
+
+    /** Drops every track */
+    public void clear() {
+        for (int t = 0; t < count; t++) {
+            labels[t] = null;
+        }
+        count = 0;
+    }
+
+    private void start(int t, VisionFrame frame, int i, double time) {
+        ids[t] = nextId++;
+        classIds[t] = frame.classIds[i];
+        tagIds[t] = frame.tagIds[i];
+        labels[t] = frame.objects[i].objectLabel;
+        hits[t] = 1;
+        misses[t] = 0;
+        firstSeen[t] = time;
+        lastTime[t] = time;
+
+        int s = t * 4;
+        state[s] = position[0];
+        state[s + 1] = position[1];
+        state[s + 2] = 0;
+        state[s + 3] = 0;
+
+        int p = t * 6;
+        double r = Constants.VISION_TRACK_MEASUREMENT_NOISE;
+        double v = Constants.VISION_TRACK_INITIAL_VELOCITY_VARIANCE;
+        covariance[p] = r;
+        covariance[p + 1] = 0;
+        covariance[p + 2] = v;
+        covariance[p + 3] = r;
+        covariance[p + 4] = 0;
+        covariance[p + 5] = v;
+    }
+
+    private void predict(int t, double time) {
+        double dt = time - lastTime[t];
+        if (dt <= 0) {
+            return;
+        }
+        lastTime[t] = time;
+        double q = Constants.VISION_TRACK_PROCESS_NOISE;
+        double dt2 = dt * dt;
+        for (int axis = 0; axis < 2; axis++) {
+            int s = t * 4 + axis;
+            state[s] += state[s + 2] * dt;
+
+            int p = t * 6 + axis * 3;
+            double p00 = covariance[p];
+            double p01 = covariance[p + 1];
+            double p11 = covariance[p + 2];
+            covariance[p] = p00 + 2 * dt * p01 + dt2 * p11 + q * dt2 * dt / 3;
+            covariance[p + 1] = p01 + dt * p11 + q * dt2 / 2;
+            covariance[p + 2] = p11 + q * dt;
+        }
+    }
+
+    private void correct(int t, double measuredX, double measuredY) {
+        double r = Constants.VISION_TRACK_MEASUREMENT_NOISE;
+        for (int axis = 0; axis < 2; axis++) {
+            int s = t * 4 + axis;
+            int p = t * 6 + axis * 3;
+            double p00 = covariance[p];
+            double p01 = covariance[p + 1];
+            double p11 = covariance[p + 2];
+
+            double innovation = (axis == 0 ? measuredX : measuredY) - state[s];
+            double k0 = p00 / (p00 + r);
+            double k1 = p01 / (p00 + r);
+            state[s] += k0 * innovation;
+            state[s + 2] += k1 * innovation;
+
+            covariance[p] = (1 - k0) * p00;
+            covariance[p + 1] = (1 - k0) * p01;
+            covariance[p + 2] = p11 - k1 * p01;
+        }
+    }
+
+    private void remove(int t) {
+        int last = count - 1;
+        if (t != last) {
+            ids[t] = ids[last];
+            classIds[t] = classIds[last];
+            tagIds[t] = tagIds[last];
+            labels[t] = labels[last];
+            hits[t] = hits[last];
+            misses[t] = misses[last];
+            firstSeen[t] = firstSeen[last];
+            lastTime[t] = lastTime[last];
+            matched[t] = matched[last];
+            System.arraycopy(state, last * 4, state, t * 4, 4);
+            System.arraycopy(covariance, last * 6, covariance, t * 6, 6);
+        }
+        labels[last] = null;
+        count--;
+    }
+
+    /** Converts a detection to meters in the tracker's plane */
+    private static void toPlane(VisionFrame frame, int i, double[] out) {
+        if (frame.hasRobotPose) {
+            out[0] = frame.fieldXs[i];
+            out[1] = frame.fieldYs[i];
+            return;
+        }
+        VisionObject vo = frame.objects[i];
+        out[0] = vo.z / Constants.VISION_UNITS_PER_METER;
+        out[1] = -vo.x / Constants.VISION_UNITS_PER_METER;
+    }
+
+    /** Number of live tracks; tracks are addressed by index 0 to count - 1, which can change every update */
+    public int getTrackCount() {
+        return count;
+    }
+
+    /** Returns the index of the track with this ID, or -1 if it has been dropped */
+    public int findTrack(int id) {
+        for (int t = 0; t < count; t++) {
+            if (ids[t] == id) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    /** Whether positions are field coordinates rather than robot-relative ones */
+    public boolean isFieldRelative() {
+        return fieldRelative;
+    }
+
+    /** Stable ID that stays with the object for as long as it is tracked */
+    public int getTrackId(int t) {
+        return ids[t];
+    }
+
+    public String getLabel(int t) {
+        return labels[t];
+    }
+
+    public int getClassId(int t) {
+        return classIds[t];
+    }
+
+    public int getTagId(int t) {
+        return tagIds[t];
+    }
+
+    /** A track seen in at least two frames, as opposed to a one-off detection */
+    public boolean isConfirmed(int t) {
+        return hits[t] >= 2;
+    }
+
+    /** Frames in a row this track has gone unmatched */
+    public int getMisses(int t) {
+        return misses[t];
+    }
+
+    /** Seconds since the track was first seen */
+    public double getTrackAge(int t, double now) {
+        return now - firstSeen[t];
+    }
+
+    public double getX(int t) {
+        return state[t * 4];
+    }
+
+    public double getY(int t) {
+        return state[t * 4 + 1];
+    }
+
+    public double getVelocityX(int t) {
+        return state[t * 4 + 2];
+    }
+
+    public double getVelocityY(int t) {
+        return state[t * 4 + 3];
+    }
+
+    /** Position extrapolated to a time, FPGA seconds */
+    public double getPredictedX(int t, double time) {
+        return state[t * 4] + state[t * 4 + 2] * (time - lastTime[t]);
+    }
+
+    /** Position extrapolated to a time, FPGA seconds */
+    public double getPredictedY(int t, double time) {
+        return state[t * 4 + 1] + state[t * 4 + 3] * (time - lastTime[t]);
+    }
+
+    /** Standard deviation of the position estimate, meters */
+    public double getPositionStdDev(int t) {
+        return Math.sqrt(Math.max(covariance[t * 6], covariance[t * 6 + 3]));
+    }
+}
@@ -0,0 +1,117 @@
+package frc.robot.utils;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * Fixed-size ring buffer of timestamped robot poses that can be sampled at any time in between,
+ * so vision frames can be lined up with where the robot was when the camera took them.
+ *
+ * <p>Poses are stored as primitives and {@link #sample(double, double[])} interpolates into a
+ * caller-owned array, so recording and lookups don't allocate. Every method is synchronized,
+ * since odometry records on the robot loop while vision threads sample.
+ */
+public class PoseHistory {
+    private final double[] times;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] thetas;
+    private int newest = -1;
+    private int size = 0;
+
+    /** @param capacity number of samples kept, e.g. 100 is 2 seconds of 20 ms loops */
+    public PoseHistory(int capacity) {
+        times = new double[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+        thetas = new double[capacity];
+    }
+
+    /**
+     * Adds a sample. Samples must be recorded in time order; one older than the newest sample
+     * is ignored.
+     * @param timestamp seconds on the FPGA clock
+     * @param theta heading in radians
+     */
+    public synchronized void record(double timestamp, double x, double y, double theta) {
+        if (size > 0 && timestamp <= times[newest]) {
+            return;
+        }
+        newest = (newest + 1) % times.length;
+        times[newest] = timestamp;
+        xs[newest] = x;
+        ys[newest] = y;
+        thetas[newest] = theta;
+        size = Math.min(size + 1, times.length);
+    }
+
+    public void record(double timestamp, Pose2d pose) {
+        record(timestamp, pose.getX(), pose.getY(), pose.getRotation().getRadians());
+    }
+
+    /** Forgets every sample, e.g. after the odometry has been reset */
+    public synchronized void clear() {
+        newest = -1;
+        size = 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Returns the time of the newest sample, or NaN if there are none */
+    public synchronized double getLatestTimestamp() {
+        return size == 0 ? Double.NaN : times[newest];
+    }
+
+    /**
+     * Interpolates the pose at a time. Times newer than the newest sample get the newest pose.
+     * @param timestamp seconds on the FPGA clock
+     * @param out receives {x, y, theta}
+     * @return false if there are no samples or the time is older than the buffer reaches
+     */
+    public synchronized boolean sample(double timestamp, double[] out) {
+        if (size == 0 || timestamp < times[oldest()]) {
+            return false;
+        }
+        int after = newest;
+        if (timestamp >= times[after]) {
+            copy(after, out);
+            return true;
+        }
+        // walk back from the newest sample; lookups are almost always for the last few loops
+        for (int n = 1; n < size; n++) {
+            int before = (newest - n + times.length) % times.length;
+            if (times[before] <= timestamp) {
+                double t = (timestamp - times[before]) / (times[after] - times[before]);
+                out[0] = xs[before] + (xs[after] - xs[before]) * t;
+                out[1] = ys[before] + (ys[after] - ys[before]) * t;
+                out[2] = thetas[before] + MathUtil.angleModulus(thetas[after] - thetas[before]) * t;
+                return true;
+            }
+            after = before;
+        }
+        copy(after, out);
+        return true;
+    }
+
+    /** Allocating convenience form of {@link #sample(double, double[])}, null if out of range */
+    public Pose2d getPose(double timestamp) {
+        double[] pose = new double[3];
+        if (!sample(timestamp, pose)) {
+            return null;
+        }
+        return new Pose2d(pose[0], pose[1], new Rotation2d(pose[2]));
+    }
+
+    private int oldest() {
+        return (newest - size + 1 + times.length) % times.length;
+    }
+
+    private void copy(int i, double[] out) {
+        out[0] = xs[i];
+        out[1] = ys[i];
+        out[2] = thetas[i];
+    }
+}
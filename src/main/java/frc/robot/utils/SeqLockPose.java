@@ -0,0 +1,64 @@
+package frc.robot.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * The latest timestamped pose, written by the odometry thread and read by anyone without
+ * locking.
+ *
+ * <p>A sequence lock: the writer bumps the sequence to odd, writes, and bumps it back to even.
+ * Readers copy the values and retry if the sequence was odd or changed meanwhile, so they never
+ * see half of one update and half of the next, and never hold the writer up. Writers must not
+ * overlap, so they need to be one thread or share a lock.
+ */
+public class SeqLockPose {
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile double timestamp;
+    private volatile double x;
+    private volatile double y;
+    private volatile double theta;
+
+    /**
+     * @param timestamp seconds on the FPGA clock
+     * @param theta heading in radians
+     */
+    public void write(double timestamp, double x, double y, double theta) {
+        sequence.incrementAndGet();
+        this.timestamp = timestamp;
+        this.x = x;
+        this.y = y;
+        this.theta = theta;
+        sequence.incrementAndGet();
+    }
+
+    /**
+     * Copies the latest pose
+     * @param out receives {x, y, theta}
+     * @return the pose's timestamp
+     */
+    public double read(double[] out) {
+        while (true) {
+            long before = sequence.get();
+            if ((before & 1) == 0) {
+                double t = timestamp;
+                out[0] = x;
+                out[1] = y;
+                out[2] = theta;
+                if (sequence.get() == before) {
+                    return t;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /** Allocating convenience form of {@link #read(double[])} */
+    public Pose2d getPose() {
+        double[] pose = new double[3];
+        read(pose);
+        return new Pose2d(pose[0], pose[1], new Rotation2d(pose[2]));
+    }
+}
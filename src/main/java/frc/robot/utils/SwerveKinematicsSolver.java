@@ -0,0 +1,131 @@
+package frc.robot.utils;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Swerve inverse and forward kinematics on plain arrays, giving the same results as WPILib's
+ * SwerveDriveKinematics but without creating states, rotations or matrices on every call.
+ *
+ * <p>Module speeds are meters per second (or meters, for distances) and module angles are
+ * radians, indexed in the order the module locations were given. Nothing is kept between
+ * calls, so threads can share one.
+ */
+public class SwerveKinematicsSolver {
+    private final int moduleCount;
+    private final double[] moduleXs;
+    private final double[] moduleYs;
+    // least-squares pseudo-inverse of the inverse kinematics, rows vx, vy, omega; columns x0, y0, x1, y1, ...
+    private final double[][] forward;
+
+    /** @param modules module locations relative to the robot's center, meters */
+    public SwerveKinematicsSolver(Translation2d... modules) {
+        if (modules.length < 2) {
+            throw new IllegalArgumentException("A swerve drive requires at least two modules");
+        }
+        moduleCount = modules.length;
+        moduleXs = new double[moduleCount];
+        moduleYs = new double[moduleCount];
+        for (int i = 0; i < moduleCount; i++) {
+            moduleXs[i] = modules[i].getX();
+            moduleYs[i] = modules[i].getY();
+        }
+
+        // each module adds rows [1 0 -y] and [0 1 x]; forward = (A^T A)^-1 A^T
+        double sumX = 0, sumY = 0, sumSquares = 0;
+        for (int i = 0; i < moduleCount; i++) {
+            sumX += moduleXs[i];
+            sumY += moduleYs[i];
+            sumSquares += moduleXs[i] * moduleXs[i] + moduleYs[i] * moduleYs[i];
+        }
+        double[][] inverse = invert(new double[][] {
+            {moduleCount, 0, -sumY},
+            {0, moduleCount, sumX},
+            {-sumY, sumX, sumSquares}});
+        forward = new double[3][2 * moduleCount];
+        for (int row = 0; row < 3; row++) {
+            for (int i = 0; i < moduleCount; i++) {
+                forward[row][2 * i] = inverse[row][0] - inverse[row][2] * moduleYs[i];
+                forward[row][2 * i + 1] = inverse[row][1] + inverse[row][2] * moduleXs[i];
+            }
+        }
+    }
+
+    public int getModuleCount() {
+        return moduleCount;
+    }
+
+    /**
+     * Module speeds and angles for a robot-relative chassis speed. When the robot is asked to
+     * stand still the angles are left as they were, so the wheels don't snap back to 0.
+     * @param vx forward, meters per second
+     * @param vy left, meters per second
+     * @param omega counterclockwise, radians per second
+     * @param centerX forward position of the point to turn about, meters
+     * @param centerY left position of the point to turn about, meters
+     * @param speeds receives each module's speed
+     * @param angles receives each module's angle; also read for the angles to keep
+     */
+    public void toModuleStates(double vx, double vy, double omega, double centerX, double centerY, double[] speeds, double[] angles) {
+        if (vx == 0.0 && vy == 0.0 && omega == 0.0) {
+            for (int i = 0; i < moduleCount; i++) {
+                speeds[i] = 0.0;
+            }
+            return;
+        }
+        for (int i = 0; i < moduleCount; i++) {
+            double moduleVx = vx - omega * (moduleYs[i] - centerY);
+            double moduleVy = vy + omega * (moduleXs[i] - centerX);
+            speeds[i] = Math.hypot(moduleVx, moduleVy);
+            angles[i] = Math.atan2(moduleVy, moduleVx);
+        }
+    }
+
+    /** Scales every module's speed down by the same factor so none is faster than maxSpeed */
+    public static void desaturate(double[] speeds, double maxSpeed) {
+        double fastest = 0.0;
+        for (double speed : speeds) {
+            fastest = Math.max(fastest, Math.abs(speed));
+        }
+        if (fastest > maxSpeed) {
+            double scale = maxSpeed / fastest;
+            for (int i = 0; i < speeds.length; i++) {
+                speeds[i] *= scale;
+            }
+        }
+    }
+
+    /**
+     * The chassis motion that best fits what the modules did, by least squares. Works for
+     * speeds (giving a chassis speed) and distance deltas (giving a twist) alike.
+     * @param amounts each module's speed or distance
+     * @param angles each module's angle
+     * @param out receives {forward, left, counterclockwise}
+     */
+    public void toChassisMotion(double[] amounts, double[] angles, double[] out) {
+        double x = 0, y = 0, theta = 0;
+        for (int i = 0; i < moduleCount; i++) {
+            double moduleX = amounts[i] * Math.cos(angles[i]);
+            double moduleY = amounts[i] * Math.sin(angles[i]);
+            x += forward[0][2 * i] * moduleX + forward[0][2 * i + 1] * moduleY;
+            y += forward[1][2 * i] * moduleX + forward[1][2 * i + 1] * moduleY;
+            theta += forward[2][2 * i] * moduleX + forward[2][2 * i + 1] * moduleY;
+        }
+        out[0] = x;
+        out[1] = y;
+        out[2] = theta;
+    }
+
+    private static double[][] invert(double[][] m) {
+        double a = m[0][0], b = m[0][1], c = m[0][2];
+        double d = m[1][0], e = m[1][1], f = m[1][2];
+        double g = m[2][0], h = m[2][1], k = m[2][2];
+        double determinant = a * (e * k - f * h) - b * (d * k - f * g) + c * (d * h - e * g);
+        if (Math.abs(determinant) < 1e-12) {
+            throw new IllegalArgumentException("Swerve module locations can't all be in a line");
+        }
+        return new double[][] {
+            {(e * k - f * h) / determinant, (c * h - b * k) / determinant, (b * f - c * e) / determinant},
+            {(f * g - d * k) / determinant, (a * k - c * g) / determinant, (c * d - a * f) / determinant},
+            {(d * h - e * g) / determinant, (b * g - a * h) / determinant, (a * e - b * d) / determinant}};
+    }
+}
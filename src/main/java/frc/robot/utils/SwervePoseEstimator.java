@@ -0,0 +1,211 @@
+package frc.robot.utils;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Swerve odometry fused with vision, working like WPILib's SwerveDrivePoseEstimator but on
+ * plain doubles, so that an update allocates nothing.
+ *
+ * <p>Odometry integrates module distance deltas as a twist, taking the heading from the gyro.
+ * The estimate is the odometry pose moved by a correction: a vision measurement is compared
+ * with the estimate at the time it was taken, found in a history of odometry poses, and the
+ * correction is moved part of the way toward it. How far follows WPILib's gain, q / (q + sqrt(q r))
+ * per axis with q and r the odometry and vision variances. Odometry motion since then is kept.
+ *
+ * <p>Angles are radians, counterclockwise. Not thread-safe.
+ */
+public class SwervePoseEstimator {
+    private final SwerveKinematicsSolver kinematics;
+    private final double[] stateVariances;
+    private final PoseHistory odometryHistory;
+
+    private final double[] previousDistances;
+    private final double[] deltas;
+    private final double[] twist = new double[3];
+    private final double[] sample = new double[3];
+    private final double[] pose = new double[3];
+
+    private double gyroOffset;
+    // odometry pose
+    private double odometryX, odometryY, odometryTheta;
+    // estimate = correction applied to odometry
+    private double correctionX, correctionY, correctionTheta;
+    private double estimateX, estimateY, estimateTheta;
+
+    /**
+     * @param stateStdDevs how far odometry is trusted, {x, y, theta} in meters and radians
+     * @param historySize odometry poses kept for vision measurements; they can be this many
+     *     updates old
+     */
+    public SwervePoseEstimator(SwerveKinematicsSolver kinematics, double[] stateStdDevs, int historySize) {
+        this.kinematics = kinematics;
+        stateVariances = new double[3];
+        for (int i = 0; i < 3; i++) {
+            stateVariances[i] = stateStdDevs[i] * stateStdDevs[i];
+        }
+        odometryHistory = new PoseHistory(historySize);
+        previousDistances = new double[kinematics.getModuleCount()];
+        deltas = new double[kinematics.getModuleCount()];
+    }
+
+    /**
+     * Puts the robot at a pose. Vision measurements from before this are ignored.
+     * @param gyroAngle the gyro's heading now, counterclockwise
+     * @param distances each module's drive distance now, meters
+     */
+    public void resetPosition(double gyroAngle, double[] distances, double x, double y, double theta) {
+        gyroOffset = theta - gyroAngle;
+        System.arraycopy(distances, 0, previousDistances, 0, previousDistances.length);
+        odometryX = x;
+        odometryY = y;
+        odometryTheta = theta;
+        correctionX = 0;
+        correctionY = 0;
+        correctionTheta = 0;
+        odometryHistory.clear();
+        updateEstimate();
+    }
+
+    /**
+     * Integrates how far the modules have driven since the last update
+     * @param timestamp seconds on the FPGA clock
+     * @param gyroAngle the gyro's heading, counterclockwise
+     * @param distances each module's drive distance, meters
+     * @param angles each module's angle
+     */
+    public void update(double timestamp, double gyroAngle, double[] distances, double[] angles) {
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] = distances[i] - previousDistances[i];
+            previousDistances[i] = distances[i];
+        }
+        kinematics.toChassisMotion(deltas, angles, twist);
+
+        double theta = MathUtil.angleModulus(gyroAngle + gyroOffset);
+        twist[2] = MathUtil.angleModulus(theta - odometryTheta);
+        pose[0] = odometryX;
+        pose[1] = odometryY;
+        pose[2] = odometryTheta;
+        exp(pose, twist, pose);
+        odometryX = pose[0];
+        odometryY = pose[1];
+        odometryTheta = theta;
+        odometryHistory.record(timestamp, odometryX, odometryY, odometryTheta);
+        updateEstimate();
+    }
+
+    /**
+     * Moves the estimate toward a pose measured by vision
+     * @param timestamp when the measurement was taken, seconds on the FPGA clock
+     * @param xStdDev how far the measurement is trusted, meters
+     * @param thetaStdDev radians
+     * @return false if the measurement is older than the history reaches, or from before a reset
+     */
+    public boolean addVisionMeasurement(double x, double y, double theta, double timestamp,
+            double xStdDev, double yStdDev, double thetaStdDev) {
+        if (!odometryHistory.sample(timestamp, sample)) {
+            return false;
+        }
+        // the estimate back then, with today's correction
+        double sampleX = sample[0];
+        double sampleY = sample[1];
+        double sampleTheta = sample[2];
+        applyCorrection(sampleX, sampleY, sampleTheta, pose);
+
+        log(pose, x, y, theta, twist);
+        twist[0] *= gain(0, xStdDev);
+        twist[1] *= gain(1, yStdDev);
+        twist[2] *= gain(2, thetaStdDev);
+        exp(pose, twist, pose);
+
+        // correction that takes the odometry pose then to the corrected pose
+        correctionTheta = MathUtil.angleModulus(pose[2] - sampleTheta);
+        double cos = Math.cos(correctionTheta);
+        double sin = Math.sin(correctionTheta);
+        correctionX = pose[0] - (sampleX * cos - sampleY * sin);
+        correctionY = pose[1] - (sampleX * sin + sampleY * cos);
+        updateEstimate();
+        return true;
+    }
+
+    public SwerveKinematicsSolver getKinematics() {
+        return kinematics;
+    }
+
+    public double getX() {
+        return estimateX;
+    }
+
+    public double getY() {
+        return estimateY;
+    }
+
+    public double getTheta() {
+        return estimateTheta;
+    }
+
+    private double gain(int axis, double stdDev) {
+        double q = stateVariances[axis];
+        return q == 0 ? 0 : q / (q + Math.sqrt(q * stdDev * stdDev));
+    }
+
+    private void updateEstimate() {
+        applyCorrection(odometryX, odometryY, odometryTheta, pose);
+        estimateX = pose[0];
+        estimateY = pose[1];
+        estimateTheta = pose[2];
+    }
+
+    private void applyCorrection(double x, double y, double theta, double[] out) {
+        double cos = Math.cos(correctionTheta);
+        double sin = Math.sin(correctionTheta);
+        out[0] = correctionX + x * cos - y * sin;
+        out[1] = correctionY + x * sin + y * cos;
+        out[2] = MathUtil.angleModulus(correctionTheta + theta);
+    }
+
+    /** Moves from a pose along a twist {dx, dy, dtheta} given in the pose's frame; out may be from */
+    static void exp(double[] from, double[] twist, double[] out) {
+        double dx = twist[0];
+        double dy = twist[1];
+        double dtheta = twist[2];
+        double sinTheta = Math.sin(dtheta);
+        double cosTheta = Math.cos(dtheta);
+        double s, c;
+        if (Math.abs(dtheta) < 1e-9) {
+            s = 1.0 - dtheta * dtheta / 6.0;
+            c = 0.5 * dtheta;
+        } else {
+            s = sinTheta / dtheta;
+            c = (1 - cosTheta) / dtheta;
+        }
+        double localX = dx * s - dy * c;
+        double localY = dx * c + dy * s;
+        double cos = Math.cos(from[2]);
+        double sin = Math.sin(from[2]);
+        double x = from[0] + localX * cos - localY * sin;
+        double y = from[1] + localX * sin + localY * cos;
+        out[2] = MathUtil.angleModulus(from[2] + dtheta);
+        out[0] = x;
+        out[1] = y;
+    }
+
+    /** The twist, in the from pose's frame, that {@link #exp} turns into the pose (x, y, theta) */
+    static void log(double[] from, double x, double y, double theta, double[] twist) {
+        double cos = Math.cos(from[2]);
+        double sin = Math.sin(from[2]);
+        double dx = (x - from[0]) * cos + (y - from[1]) * sin;
+        double dy = -(x - from[0]) * sin + (y - from[1]) * cos;
+        double dtheta = MathUtil.angleModulus(theta - from[2]);
+        double halfDtheta = dtheta / 2.0;
+        double cosMinusOne = Math.cos(dtheta) - 1;
+        double halfThetaByTanOfHalfDtheta;
+        if (Math.abs(cosMinusOne) < 1e-9) {
+            halfThetaByTanOfHalfDtheta = 1.0 - dtheta * dtheta / 12.0;
+        } else {
+            halfThetaByTanOfHalfDtheta = -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+        }
+        twist[0] = dx * halfThetaByTanOfHalfDtheta + dy * halfDtheta;
+        twist[1] = dy * halfThetaByTanOfHalfDtheta - dx * halfDtheta;
+        twist[2] = dtheta;
+    }
+}
@@ -0,0 +1,63 @@
+package frc.robot.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hands the newest of a stream of values from one writer thread to one reader thread without
+ * either side ever blocking or allocating.
+ *
+ * <p>There are three preallocated buffers: the writer fills the back one and {@link #publish()}es
+ * it, the reader takes the newest published one with {@link #update()} and reads it as the front
+ * one for as long as it likes. The third sits in the middle, so the two never touch the same
+ * buffer. Values the reader never got to are simply overwritten.
+ */
+public class TripleBuffer<T> {
+    // middle buffer index, plus this bit while it holds something the reader hasn't taken
+    private static final int FRESH = 4;
+
+    private final Object[] buffers = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private int back = 0; // writer only
+    private int front = 1; // reader only
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = factory.get();
+        }
+    }
+
+    /** The buffer the writer fills next. Writer thread only. */
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Makes the back buffer the newest value and gives the writer another one to fill. It may
+     * hold any older value, so the writer must overwrite everything it cares about.
+     * Writer thread only.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Swaps in the newest published value, if there is one the reader hasn't seen.
+     * Reader thread only.
+     * @return false if nothing new was published and the front buffer is unchanged
+     */
+    public boolean update() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & ~FRESH;
+        return true;
+    }
+
+    /** The value the reader is looking at. Reader thread only. */
+    @SuppressWarnings("unchecked")
+    public T getFront() {
+        return (T) buffers[front];
+    }
+}
@@ -0,0 +1,198 @@
+package frc.robot.utils;
+
+import java.util.Arrays;
+
+import frc.robot.Constants;
+import frc.robot.models.VisionFrame;
+
+/**
+ * Running health figures for one camera's frames: how old the latest detections are, how fast
+ * frames are arriving and being parsed, how long parsing takes and how many frames were lost.
+ *
+ * <p>{@link VisionPipeline} feeds it as frames are ingested; {@link #update(double)} rolls the
+ * rate window and is meant to be called once per loop. Nothing here allocates after
+ * construction, and it takes the current time as an argument so it works the same in replay.
+ */
+public class VisionHealth {
+    /** Layout of {@link #fill(double, double[])}, which ObjectTrackerSubsystem publishes */
+    public static final int FRAME_AGE = 0;
+    public static final int LATENCY = 1;
+    public static final int RECEIVED_RATE = 2;
+    public static final int PARSED_RATE = 3;
+    public static final int PARSE_TIME_P50 = 4;
+    public static final int PARSE_TIME_P95 = 5;
+    public static final int PARSE_TIME_P99 = 6;
+    public static final int PARSE_TIME_MAX = 7;
+    public static final int DROPPED = 8;
+    public static final int MALFORMED = 9;
+    public static final int OBJECTS_PER_FRAME = 10;
+    public static final int FIELD_COUNT = 11;
+
+    // ring of recent parse times and a scratch copy to sort for percentiles
+    private final long[] parseNanos = new long[Constants.VISION_PARSE_TIME_SAMPLES];
+    private final long[] sortedParseNanos = new long[Constants.VISION_PARSE_TIME_SAMPLES];
+    private int parseSampleCount = 0;
+    private int nextParseSample = 0;
+    private boolean sorted = true;
+
+    private long receivedCount = 0;
+    private long parsedCount = 0;
+    private long malformedCount = 0;
+    private long droppedCount = 0;
+    private long objectCount = 0;
+    private long lastSourceSequence = -1;
+    private double lastTimestamp = Double.NaN;
+    private double lastCaptureTimestamp = Double.NaN;
+
+    // counts at the start of the current rate window
+    private double windowStart = Double.NaN;
+    private long windowReceived;
+    private long windowParsed;
+    private long windowObjects;
+    private double receivedRate = 0;
+    private double parsedRate = 0;
+    private double objectsPerFrame = 0;
+
+    /**
+     * Counts a frame that was parsed and committed
+     * @param nanos time spent parsing and indexing it
+     */
+    public void recordFrame(VisionFrame frame, long nanos) {
+        receivedCount++;
+        parsedCount++;
+        objectCount += frame.count;
+        lastTimestamp = frame.timestamp;
+        lastCaptureTimestamp = frame.captureTimestamp;
+        recordParseTime(nanos);
+
+        // binary frames are numbered by the coprocessor, so a gap is frames NetworkTables or
+        // the queue lost; a lower number means MonsterVision restarted
+        if (frame.sourceSequence >= 0) {
+            if (lastSourceSequence >= 0 && frame.sourceSequence > lastSourceSequence + 1) {
+                droppedCount += frame.sourceSequence - lastSourceSequence - 1;
+            }
+            lastSourceSequence = frame.sourceSequence;
+        }
+    }
+
+    /**
+     * Counts a frame that couldn't be parsed or decoded
+     * @param nanos time spent finding that out
+     */
+    public void recordMalformed(long nanos) {
+        receivedCount++;
+        malformedCount++;
+        recordParseTime(nanos);
+    }
+
+    private void recordParseTime(long nanos) {
+        parseNanos[nextParseSample] = nanos;
+        nextParseSample = (nextParseSample + 1) % parseNanos.length;
+        parseSampleCount = Math.min(parseSampleCount + 1, parseNanos.length);
+        sorted = false;
+    }
+
+    /** Recomputes the rates once every {@link Constants#VISION_HEALTH_WINDOW} seconds */
+    public void update(double now) {
+        if (Double.isNaN(windowStart)) {
+            startWindow(now);
+            return;
+        }
+        double elapsed = now - windowStart;
+        if (elapsed < Constants.VISION_HEALTH_WINDOW) {
+            return;
+        }
+        long parsed = parsedCount - windowParsed;
+        receivedRate = (receivedCount - windowReceived) / elapsed;
+        parsedRate = parsed / elapsed;
+        objectsPerFrame = parsed == 0 ? 0 : (double) (objectCount - windowObjects) / parsed;
+        startWindow(now);
+    }
+
+    private void startWindow(double now) {
+        windowStart = now;
+        windowReceived = receivedCount;
+        windowParsed = parsedCount;
+        windowObjects = objectCount;
+    }
+
+    /** Seconds since the latest parsed frame was captured, infinite if there hasn't been one */
+    public double getFrameAge(double now) {
+        return Double.isNaN(lastCaptureTimestamp) ? Double.POSITIVE_INFINITY : now - lastCaptureTimestamp;
+    }
+
+    /** Whether the latest detections are older than maxAge seconds, or there are none */
+    public boolean isStale(double now, double maxAge) {
+        return !(getFrameAge(now) <= maxAge);
+    }
+
+    /** Seconds from capture to arriving on the robot for the latest frame, 0 if there hasn't been one */
+    public double getLatency() {
+        return Double.isNaN(lastCaptureTimestamp) ? 0 : lastTimestamp - lastCaptureTimestamp;
+    }
+
+    /** Frames per second arriving, malformed ones included, over the last window */
+    public double getReceivedRate() {
+        return receivedRate;
+    }
+
+    /** Frames per second parsed successfully over the last window */
+    public double getParsedRate() {
+        return parsedRate;
+    }
+
+    /** Average detections per parsed frame over the last window */
+    public double getObjectsPerFrame() {
+        return objectsPerFrame;
+    }
+
+    public long getReceivedCount() {
+        return receivedCount;
+    }
+
+    public long getParsedCount() {
+        return parsedCount;
+    }
+
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+
+    /** Frames the coprocessor sent that never arrived; only binary frames are numbered */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Returns a percentile of the recent parse times
+     * @param percentile between 0 and 1, e.g. 0.99
+     * @return seconds, 0 if nothing has been parsed
+     */
+    public double getParseTime(double percentile) {
+        if (parseSampleCount == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            System.arraycopy(parseNanos, 0, sortedParseNanos, 0, parseSampleCount);
+            Arrays.sort(sortedParseNanos, 0, parseSampleCount);
+            sorted = true;
+        }
+        int i = (int) Math.min(parseSampleCount - 1, Math.max(0, Math.round(percentile * (parseSampleCount - 1))));
+        return sortedParseNanos[i] * 1.0e-9;
+    }
+
+    /** Writes every figure into out, indexed by the constants at the top of this class */
+    public void fill(double now, double[] out) {
+        out[FRAME_AGE] = getFrameAge(now);
+        out[LATENCY] = getLatency();
+        out[RECEIVED_RATE] = receivedRate;
+        out[PARSED_RATE] = parsedRate;
+        out[PARSE_TIME_P50] = getParseTime(0.5);
+        out[PARSE_TIME_P95] = getParseTime(0.95);
+        out[PARSE_TIME_P99] = getParseTime(0.99);
+        out[PARSE_TIME_MAX] = getParseTime(1.0);
+        out[DROPPED] = droppedCount;
+        out[MALFORMED] = malformedCount;
+        out[OBJECTS_PER_FRAME] = objectsPerFrame;
+    }
+}
@@ -0,0 +1,76 @@
+package frc.robot.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reads back one segment file written by {@link VisionRecorder}, a record at a time. Meant for
+ * the desktop, so it simply loads the whole file.
+ */
+public class VisionLogReader {
+    private final ByteBuffer buffer;
+    private int position = VisionRecorder.SEGMENT_HEADER_SIZE;
+    private int payloadStart;
+    private int payloadEnd;
+
+    /** Fields of the record {@link #next()} moved to */
+    public int type;
+    public int camera;
+    public boolean hasPose;
+    /** Time the frame reached NetworkTables, FPGA seconds */
+    public double timestamp;
+    /** Robot pose at capture time, if {@link #hasPose} */
+    public double robotX, robotY, robotTheta;
+
+    public VisionLogReader(Path segment) throws IOException {
+        buffer = ByteBuffer.wrap(Files.readAllBytes(segment)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < VisionRecorder.SEGMENT_HEADER_SIZE
+            || buffer.getInt(0) != VisionRecorder.MAGIC
+            || buffer.getInt(4) != VisionRecorder.VERSION) {
+            throw new IOException(segment + " is not a vision log");
+        }
+    }
+
+    /** Moves to the next record, returning false at the end of the segment */
+    public boolean next() {
+        if (position >= 0 && position + VisionRecorder.RECORD_HEADER_SIZE <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length >= VisionRecorder.RECORD_HEADER_SIZE && position + length <= buffer.limit()) {
+                type = buffer.get(position + 4) & 0xff;
+                camera = buffer.get(position + 5) & 0xff;
+                hasPose = (buffer.getShort(position + 6) & VisionRecorder.FLAG_POSE) != 0;
+                timestamp = buffer.getDouble(position + 8);
+                robotX = buffer.getDouble(position + 16);
+                robotY = buffer.getDouble(position + 24);
+                robotTheta = buffer.getDouble(position + 32);
+                payloadStart = position + VisionRecorder.RECORD_HEADER_SIZE;
+                payloadEnd = position + length;
+                position += length;
+                return true;
+            }
+        }
+        // a zero length, or a segment cut short by a crash
+        position = -1;
+        return false;
+    }
+
+    /** The current record's VisionFrameCodec bytes; may include a few bytes of padding */
+    public byte[] getPayload() {
+        return Arrays.copyOfRange(buffer.array(), payloadStart, payloadEnd);
+    }
+
+    /** The current mark record's label */
+    public String getLabel() {
+        int end = payloadEnd;
+        // marks are padded with zeros to the next record
+        while (end > payloadStart && buffer.get(end - 1) == 0) {
+            end--;
+        }
+        return new String(buffer.array(), payloadStart, end - payloadStart, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,279 @@
+package frc.robot.utils;
+
+import edu.wpi.first.math.MathUtil;
+import frc.robot.Constants;
+import frc.robot.models.CameraConfig;
+import frc.robot.models.CameraTransform;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionFrameCodec;
+import frc.robot.models.VisionFrameIndex;
+import frc.robot.models.VisionObject;
+import frc.robot.models.VisionObjectParser;
+import frc.robot.models.VisionSpatialIndex;
+
+/**
+ * Everything {@link frc.robot.subsystems.ObjectTrackerSubsystem} does with a camera's frames
+ * once they have arrived: parsing or decoding, the camera extrinsics, latency compensation,
+ * recording and the per-frame index the queries run on.
+ *
+ * <p>It doesn't touch NetworkTables or any hardware, so it can be fed from a recorded log on a
+ * desktop JVM as well as from the robot's subscriptions. One thread at a time owns it; other
+ * threads read its results through a {@link VisionSnapshot}.
+ */
+public class VisionPipeline {
+    private final CameraConfig camera;
+    private final VisionObjectParser parser = new VisionObjectParser();
+    private final VisionFrameCodec codec = new VisionFrameCodec();
+    // rebuilt once per frame so queries don't rescan the detections on every call
+    private final VisionFrameIndex index = new VisionFrameIndex();
+    private final VisionSpatialIndex spatialIndex = new VisionSpatialIndex();
+
+    private VisionObject[] foundObjects;
+    private int foundObjectCount = 0;
+    private String jsonString = "";
+
+    private final VisionFrame[] frameQueue = new VisionFrame[Constants.VISION_FRAME_QUEUE_SIZE];
+    private int latestFrameIndex = -1;
+    private int queuedFrameCount = 0;
+    private int newFrameCount = 0;
+    private long frameSequence = 0;
+    private final VisionHealth health = new VisionHealth();
+
+    // Odometry history for latency compensation, null to use detections as the camera saw them
+    private final PoseHistory poseHistory;
+    private final double[] poseAtCapture = new double[3];
+    private final double[] poseNow = new double[3];
+
+    // Match log, null when this camera isn't being recorded; may be set from another thread
+    private volatile VisionRecorder recorder;
+    private int recorderCameraId;
+
+    // camera extrinsics followed by the robot's motion since capture, recomposed every frame
+    private final CameraTransform frameTransform = new CameraTransform();
+
+    /**
+     * @param camera where the camera is mounted
+     * @param poseHistory drivetrain pose history used to undo the robot's motion between
+     *     capture and ingestion, or null to leave detections as captured
+     */
+    public VisionPipeline(CameraConfig camera, PoseHistory poseHistory) {
+        this.camera = camera;
+        this.poseHistory = poseHistory;
+
+        for (int i = 0; i < frameQueue.length; i++) {
+            frameQueue[i] = new VisionFrame();
+        }
+    }
+
+    /** Starts a batch of frames; {@link #getNewFrameCount()} counts the frames ingested since */
+    public void beginBatch() {
+        newFrameCount = 0;
+    }
+
+    /**
+     * Parses a MonsterVision JSON frame
+     * @param timestamp when it reached NetworkTables, FPGA seconds
+     * @return false if the frame was malformed, in which case no objects are seen until the next one
+     */
+    public boolean ingestJson(String json, double timestamp) {
+        long start = System.nanoTime();
+        jsonString = json;
+
+        // parse straight into the next pooled frame; it only joins the queue if the parse works
+        VisionFrame frame = frameQueue[(latestFrameIndex + 1) % frameQueue.length];
+        // zero-depth objects are dropped by the parser
+        // this handles case found on 3/22 where a cone is (0, 0, 0) despite being far away
+        int count = parser.parse(json, frame);
+        if (count < 0) {
+            dropFrame(start);
+            return false;
+        }
+
+        // JSON frames don't say when they were captured, so fall back on the measured latency
+        frame.count = count;
+        frame.captureTimestamp = timestamp - Constants.OBJECT_DETECTION_LATENCY;
+        frame.sourceSequence = -1;
+        commitFrame(frame, timestamp, start);
+        return true;
+    }
+
+    /**
+     * Decodes a VisionFrameCodec frame
+     * @param timestamp when it reached NetworkTables, FPGA seconds
+     * @return false if the frame was malformed, in which case no objects are seen until the next one
+     */
+    public boolean ingestBinary(byte[] bytes, double timestamp) {
+        long start = System.nanoTime();
+        VisionFrame frame = frameQueue[(latestFrameIndex + 1) % frameQueue.length];
+        // decode fills count, capture time and source sequence; the capture time is on the
+        // server clock, which is our clock since the robot is the NetworkTables server
+        if (codec.decode(bytes, frame) < 0) {
+            dropFrame(start);
+            return false;
+        }
+        commitFrame(frame, timestamp, start);
+        return true;
+    }
+
+    private void dropFrame(long start) {
+        foundObjectCount = 0;
+        index.clear();
+        spatialIndex.update(null);
+        health.recordMalformed(System.nanoTime() - start);
+    }
+
+    private void commitFrame(VisionFrame frame, double timestamp, long start) {
+        int count = frame.count;
+        frame.timestamp = timestamp;
+        frame.sequence = frameSequence++;
+        latestFrameIndex = (latestFrameIndex + 1) % frameQueue.length;
+        queuedFrameCount = Math.min(queuedFrameCount + 1, frameQueue.length);
+        newFrameCount = Math.min(newFrameCount + 1, frameQueue.length);
+
+        foundObjects = frame.objects;
+        foundObjectCount = count;
+
+        // log the detections as the camera reported them, before they're moved into the robot frame
+        VisionRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.record(recorderCameraId, frame, poseHistory);
+        }
+        // camera to robot, then capture time to now, as one transform over the whole frame
+        frameTransform.set(camera.transform);
+        computeRobotMotion(frame);
+        frame.gatherPositions();
+        if (!frameTransform.isIdentity()) {
+            frameTransform.apply(frame.xs, frame.ys, frame.zs, count);
+            frame.scatterPositions();
+            // tag rotations turn with the camera and the robot too
+            double yaw = frameTransform.getYaw();
+            for (int i = 0; i < count; i++) {
+                frame.objects[i].rotateYaw(yaw);
+            }
+        }
+        frame.computeFieldPositions();
+        index.rebuild(frame.objects, frame.classIds, frame.tagIds, count);
+        spatialIndex.update(frame);
+        health.recordFrame(frame, System.nanoTime() - start);
+    }
+
+    /**
+     * Adds the robot's motion between capture and the latest odometry pose to the frame
+     * transform, so detections end up relative to where the robot is now, and records that pose
+     * on the frame.
+     */
+    private void computeRobotMotion(VisionFrame frame) {
+        frame.hasRobotPose = false;
+        if (poseHistory == null) {
+            return;
+        }
+        double now = poseHistory.getLatestTimestamp();
+        if (!poseHistory.sample(frame.captureTimestamp, poseAtCapture) || !poseHistory.sample(now, poseNow)) {
+            return;
+        }
+
+        // robot motion since capture, in the robot frame at capture time
+        double dx = poseNow[0] - poseAtCapture[0];
+        double dy = poseNow[1] - poseAtCapture[1];
+        double cosTheta = Math.cos(poseAtCapture[2]);
+        double sinTheta = Math.sin(poseAtCapture[2]);
+        double forward = dx * cosTheta + dy * sinTheta;
+        double left = -dx * sinTheta + dy * cosTheta;
+        double rotation = MathUtil.angleModulus(poseNow[2] - poseAtCapture[2]);
+
+        frameTransform.thenRobotMotion(forward, left, rotation, Constants.VISION_UNITS_PER_METER);
+        frame.hasRobotPose = true;
+        frame.poseTimestamp = now;
+        frame.robotX = poseNow[0];
+        frame.robotY = poseNow[1];
+        frame.robotTheta = poseNow[2];
+    }
+
+    /**
+     * Logs every frame from now on
+     * @param recorder the match log, or null to stop recording
+     * @param cameraId number this camera's frames are tagged with in the log
+     */
+    public void setRecorder(VisionRecorder recorder, int cameraId) {
+        this.recorderCameraId = cameraId;
+        this.recorder = recorder;
+    }
+
+    public VisionRecorder getRecorder() {
+        return recorder;
+    }
+
+    public CameraConfig getCamera() {
+        return camera;
+    }
+
+    /** The last JSON frame received, as sent */
+    public String getObjectsJson() {
+        return jsonString;
+    }
+
+    /** Detection slots of the latest frame; only the first {@link #numberOfObjects()} are valid */
+    public VisionObject[] getFoundObjects() {
+        return foundObjects;
+    }
+
+    public int numberOfObjects() {
+        return foundObjectCount;
+    }
+
+    /** Frames that couldn't be parsed or decoded */
+    public long getMalformedFrameCount() {
+        return health.getMalformedCount();
+    }
+
+    /** Frame age, rates, parse times and drops for this camera */
+    public VisionHealth getHealth() {
+        return health;
+    }
+
+    /** Returns the most recently ingested frame, or null if none has arrived yet */
+    public VisionFrame getLatestFrame() {
+        return getFrame(0);
+    }
+
+    /**
+     * Returns a queued frame by age
+     * @param age 0 for the latest frame, 1 for the one before it, and so on
+     * @return the frame, or null if the queue does not reach back that far
+     */
+    public VisionFrame getFrame(int age) {
+        if (age < 0 || age >= queuedFrameCount) {
+            return null;
+        }
+        return frameQueue[(latestFrameIndex - age + frameQueue.length) % frameQueue.length];
+    }
+
+    /** Returns how many frames were ingested since {@link #beginBatch()} */
+    public int getNewFrameCount() {
+        return newFrameCount;
+    }
+
+    /** Returns detections with at least this confidence, or null if nothing is seen */
+    public VisionObject[] getObjects(double minimumConfidence) {
+        if (foundObjects == null || foundObjectCount == 0)
+            return null;
+        return index.getObjects(minimumConfidence);
+    }
+
+    /** Returns detections whose label contains objectLabel, or null if nothing is seen */
+    public VisionObject[] getObjectsOfType(String objectLabel) {
+        if (foundObjects == null || foundObjectCount == 0)
+            return null;
+        //Uses .contains because vo.ObjectLabel has ID, ObjectLabel does not
+        return index.getObjectsOfType(objectLabel);
+    }
+
+    /** Nearest, sector and polygon queries over the latest frame */
+    public VisionSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    public VisionObject getAprilTag(int id) {
+        return index.getAprilTag(id);
+    }
+}
@@ -0,0 +1,377 @@
+package frc.robot.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionFrameCodec;
+import frc.robot.models.VisionObject;
+
+/**
+ * Records vision frames all match to a rolling binary log for post-match analysis, without ever
+ * making the robot loop wait on the disk.
+ *
+ * <p>The loop only copies each frame into one of a fixed number of preallocated slots; a
+ * background thread appends them to memory-mapped segment files of
+ * {@link Constants#VISION_LOG_SEGMENT_BYTES} each, deleting the oldest segment once there are
+ * more than {@link Constants#VISION_LOG_MAX_SEGMENTS}. When the writer falls behind and every
+ * slot is taken, the {@link DropPolicy} decides which frame is lost. If the log directory can't
+ * be created the recorder starts unavailable: nothing is queued and no writer thread runs.
+ *
+ * <p>Segment layout, little-endian: an 8 byte header (int32 {@link #MAGIC}, int32
+ * {@link #VERSION}) followed by records, each starting on an 8 byte boundary:
+ * <pre>
+ *   int32   record length in bytes, header included, 0 marks the end of the segment
+ *   uint8   record type: RECORD_FRAME or RECORD_MARK
+ *   uint8   camera index
+ *   uint16  flags: FLAG_POSE if the pose below is valid
+ *   float64 time the frame reached NetworkTables, FPGA seconds
+ *   float64 robot x, y (meters) and heading (radians) at capture time
+ *   payload a VisionFrameCodec frame, or the UTF-8 label of a mark
+ * </pre>
+ */
+public class VisionRecorder {
+    public static final int MAGIC = 0x474c564d; // "MVLG"
+    public static final int VERSION = 1;
+    public static final int SEGMENT_HEADER_SIZE = 8;
+    public static final int RECORD_HEADER_SIZE = 40;
+    public static final int RECORD_FRAME = 1;
+    public static final int RECORD_MARK = 2;
+    public static final int FLAG_POSE = 1;
+
+    // only exists in the queue, snapshots go to their own JSON file rather than the log
+    private static final int RECORD_SNAPSHOT = 3;
+    private static final int MAX_PAYLOAD = VisionFrameCodec.encodedSize(Constants.VISION_MAX_OBJECTS_PER_FRAME);
+
+    /** What to do with a new frame when the writer has fallen behind and every slot is full */
+    public enum DropPolicy {
+        /** Keep what is queued and lose the new frame */
+        DROP_NEWEST,
+        /** Lose the oldest frame that hasn't been written yet to make room for the new one */
+        DROP_OLDEST
+    }
+
+    private static class Slot {
+        final ByteBuffer payload = ByteBuffer.allocate(MAX_PAYLOAD).order(ByteOrder.LITTLE_ENDIAN);
+        int type;
+        int camera;
+        int flags;
+        int length;
+        double timestamp;
+        double robotX, robotY, robotTheta;
+        final double[] pose = new double[3];
+        String text;
+    }
+
+    private final Path directory;
+    private final DropPolicy dropPolicy;
+    private final ArrayBlockingQueue<Slot> free;
+    private final ArrayBlockingQueue<Slot> pending;
+    private final VisionFrame emptyFrame = new VisionFrame();
+    private final Thread writer; // null when the recorder is unavailable
+    private volatile boolean running = true;
+
+    private volatile long recordedCount = 0;
+    // every camera's thread can drop frames
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile String lastError;
+
+    // writer thread only
+    private final String sessionName;
+    private final ArrayDeque<Path> segments = new ArrayDeque<>();
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentNumber = 0;
+    private final VisionFrame snapshotFrame = new VisionFrame();
+    private final VisionFrameCodec snapshotCodec = new VisionFrameCodec();
+    private Gson gson;
+
+    /**
+     * Starts a recorder with its writer thread.
+     * @param directory where segment files go; created now if needed, and if that fails the
+     *     recorder is unavailable
+     * @param queueSize frames that can wait for the writer, which bounds the memory used
+     * @param dropPolicy what to lose when the queue is full
+     */
+    public VisionRecorder(Path directory, int queueSize, DropPolicy dropPolicy) {
+        this.directory = directory;
+        this.dropPolicy = dropPolicy;
+        free = new ArrayBlockingQueue<>(queueSize);
+        pending = new ArrayBlockingQueue<>(queueSize);
+        for (int i = 0; i < queueSize; i++) {
+            free.add(new Slot());
+        }
+        sessionName = "vision-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+
+        Thread thread = null;
+        try {
+            Files.createDirectories(directory);
+            thread = new Thread(this::run, "VisionRecorder");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        } catch (IOException | SecurityException e) {
+            lastError = e.toString();
+        }
+        writer = thread;
+    }
+
+    /** A recorder with the settings from Constants, logging under the operating directory */
+    public VisionRecorder() {
+        this(Filesystem.getOperatingDirectory().toPath().resolve(Constants.VISION_LOG_DIRECTORY),
+             Constants.VISION_RECORDER_QUEUE_SIZE,
+             DropPolicy.DROP_OLDEST);
+    }
+
+    /** Whether frames are being logged; false if the log directory couldn't be created */
+    public boolean isAvailable() {
+        return writer != null;
+    }
+
+    /**
+     * Queues a frame to be logged. Doesn't allocate or touch the disk, and is safe to call from
+     * several cameras' threads at once.
+     * @param camera index of the camera the frame came from
+     * @param frame frame to copy; only its count, objects, timestamps and sequence are used
+     * @param poseHistory used to look up the robot pose at capture time, or null
+     * @return false if the frame was dropped or the recorder is unavailable
+     */
+    public boolean record(int camera, VisionFrame frame, PoseHistory poseHistory) {
+        Slot slot = acquire();
+        if (slot == null) {
+            return false;
+        }
+        slot.type = RECORD_FRAME;
+        slot.camera = camera;
+        slot.timestamp = frame.timestamp;
+        slot.flags = 0;
+        if (poseHistory != null && poseHistory.sample(frame.captureTimestamp, slot.pose)) {
+            slot.flags = FLAG_POSE;
+            slot.robotX = slot.pose[0];
+            slot.robotY = slot.pose[1];
+            slot.robotTheta = slot.pose[2];
+        }
+        slot.payload.clear();
+        slot.length = VisionFrameCodec.encode(frame, frame.sequence, frame.captureTimestamp, slot.payload);
+        pending.offer(slot);
+        return true;
+    }
+
+    /**
+     * Writes a labelled marker into the log, e.g. "auto start" or "missed pickup", so the
+     * interesting part of a match is easy to find afterwards.
+     * @return false if the mark was dropped or the recorder is unavailable
+     */
+    public boolean mark(String label, double timestamp) {
+        Slot slot = acquire();
+        if (slot == null) {
+            return false;
+        }
+        slot.type = RECORD_MARK;
+        slot.camera = 0;
+        slot.flags = 0;
+        slot.timestamp = timestamp;
+        slot.text = label;
+        pending.offer(slot);
+        return true;
+    }
+
+    /**
+     * Saves a frame's objects to a JSON file in the format ObjectTrackerSubsystem's
+     * loadVisionSnapshot reads. The frame is copied now and serialized and written on the
+     * writer thread.
+     * @param frame frame to save, or null for an empty snapshot
+     * @return false if the snapshot was dropped or the recorder is unavailable
+     */
+    public boolean exportSnapshot(String fileName, VisionFrame frame) {
+        Slot slot = acquire();
+        if (slot == null) {
+            return false;
+        }
+        slot.type = RECORD_SNAPSHOT;
+        slot.text = fileName;
+        slot.payload.clear();
+        if (frame != null) {
+            slot.length = VisionFrameCodec.encode(frame, frame.sequence, frame.captureTimestamp, slot.payload);
+        } else {
+            slot.length = VisionFrameCodec.encode(emptyFrame, 0, 0, slot.payload);
+        }
+        pending.offer(slot);
+        return true;
+    }
+
+    private Slot acquire() {
+        if (writer == null) {
+            return null;
+        }
+        Slot slot = free.poll();
+        if (slot == null && dropPolicy == DropPolicy.DROP_OLDEST) {
+            // taking it out of the queue means the writer can't also be holding it
+            slot = pending.poll();
+            if (slot != null) {
+                droppedCount.incrementAndGet();
+            }
+        }
+        if (slot == null) {
+            droppedCount.incrementAndGet();
+            return null;
+        }
+        slot.text = null;
+        return slot;
+    }
+
+    /** Frames and marks written to the log so far */
+    public long getRecordedCount() {
+        return recordedCount;
+    }
+
+    /** Frames, marks and snapshots lost because the queue was full */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /** Frames waiting for the writer */
+    public int getBacklog() {
+        return pending.size();
+    }
+
+    /** The last I/O error the writer hit, or null; the recorder keeps going after errors */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /** Writes what is queued, finishes the current segment and stops the writer thread */
+    public void close() {
+        running = false;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running || !pending.isEmpty()) {
+            Slot slot;
+            try {
+                slot = pending.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (slot == null) {
+                continue;
+            }
+            try {
+                if (slot.type == RECORD_SNAPSHOT) {
+                    writeSnapshot(slot);
+                } else {
+                    writeRecord(slot);
+                }
+            } catch (IOException | RuntimeException e) {
+                lastError = e.toString();
+                closeSegment();
+            } finally {
+                slot.type = 0;
+                slot.text = null;
+                free.offer(slot);
+            }
+        }
+        closeSegment();
+    }
+
+    private void writeRecord(Slot slot) throws IOException {
+        byte[] text = slot.type == RECORD_MARK ? slot.text.getBytes(StandardCharsets.UTF_8) : null;
+        int payloadLength = text != null ? text.length : slot.length;
+        int length = (RECORD_HEADER_SIZE + payloadLength + 7) & ~7;
+        // leave room for the zero length that ends a segment
+        if (segment == null || segment.remaining() < length + Integer.BYTES) {
+            openSegment();
+        }
+
+        int start = segment.position();
+        segment.putInt(start, length);
+        segment.put(start + 4, (byte) slot.type);
+        segment.put(start + 5, (byte) slot.camera);
+        segment.putShort(start + 6, (short) slot.flags);
+        segment.putDouble(start + 8, slot.timestamp);
+        segment.putDouble(start + 16, slot.robotX);
+        segment.putDouble(start + 24, slot.robotY);
+        segment.putDouble(start + 32, slot.robotTheta);
+        segment.position(start + RECORD_HEADER_SIZE);
+        if (text != null) {
+            segment.put(text);
+        } else {
+            segment.put(slot.payload.array(), 0, slot.length);
+        }
+        segment.position(start + length);
+        recordedCount++;
+    }
+
+    private void writeSnapshot(Slot slot) throws IOException {
+        snapshotCodec.decode(slot.payload.array(), snapshotFrame);
+        if (gson == null) {
+            gson = new Gson();
+        }
+        VisionObject[] objects = Arrays.copyOf(snapshotFrame.objects, snapshotFrame.count);
+        Files.writeString(Path.of(slot.text), gson.toJson(objects));
+    }
+
+    private void openSegment() throws IOException {
+        closeSegment();
+        Files.createDirectories(directory);
+        Path path = directory.resolve(String.format("%s-%03d.vlog", sessionName, segmentNumber++));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Constants.VISION_LOG_SEGMENT_BYTES);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+
+        segments.addLast(path);
+        while (segments.size() > Constants.VISION_LOG_MAX_SEGMENTS) {
+            Files.deleteIfExists(segments.removeFirst());
+        }
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            int end = segment.position();
+            if (segment.remaining() >= Integer.BYTES) {
+                segment.putInt(end, 0);
+            }
+            segment.force();
+            segment = null;
+            // drop the unused tail of the mapping so short sessions don't leave full-size files
+            channel.truncate(end + Integer.BYTES);
+            channel.close();
+        } catch (IOException e) {
+            lastError = e.toString();
+        } finally {
+            segment = null;
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package frc.robot.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.google.gson.Gson;
+
+import frc.robot.models.CameraConfig;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionFrameCodec;
+import frc.robot.models.VisionFrameFormat;
+import frc.robot.models.VisionObject;
+import frc.robot.models.VisionObjectParser;
+
+/**
+ * Pushes recorded vision frames through the same {@link VisionPipeline} ObjectTrackerSubsystem
+ * uses, as fast as the desktop can go, and reports how long it took. No NetworkTables, no
+ * hardware, so it runs on a laptop against real match data before anything is deployed.
+ *
+ * <pre>
+ *   ./gradlew replayVision --args="[--json] [--repeat N] [--camera NAME] logs..."
+ * </pre>
+ * Logs are VisionRecorder segments (.vlog), directories of them, or saveVisionSnapshot JSON
+ * files. With --json every frame is converted to MonsterVision JSON first so the text parser is
+ * timed instead of the binary decoder. --repeat replays everything N times, which gives the JIT
+ * time to warm up; only the last pass is reported. --camera picks the CameraConfig, and with it
+ * the extrinsics, used for every camera in the log.
+ */
+public class VisionReplay {
+    private static final String[] QUERY_LABELS = {"tag", "note", "bunny", "tote"};
+
+    /** One recorded frame, decoded from the log up front so only the pipeline is timed */
+    static class RecordedFrame {
+        int camera;
+        double timestamp;
+        double captureTimestamp;
+        boolean hasPose;
+        double robotX, robotY, robotTheta;
+        byte[] bytes;
+        String json;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean json = false;
+        int repeat = 1;
+        String cameraName = "Eclipse";
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--json":
+                    json = true;
+                    break;
+                case "--repeat":
+                    repeat = Integer.parseInt(args[++i]);
+                    break;
+                case "--camera":
+                    cameraName = args[++i];
+                    break;
+                default:
+                    inputs.add(Path.of(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("usage: VisionReplay [--json] [--repeat N] [--camera NAME] logs...");
+            System.exit(1);
+        }
+
+        List<RecordedFrame> frames = load(inputs, json);
+        if (frames.isEmpty()) {
+            System.err.println("no frames found");
+            System.exit(1);
+        }
+        CameraConfig camera = new CameraConfig(cameraName, json ? VisionFrameFormat.JSON : VisionFrameFormat.BINARY);
+        Report report = null;
+        for (int pass = 0; pass < repeat; pass++) {
+            report = replay(frames, camera, json);
+        }
+        report.print(frames, json);
+    }
+
+    static List<RecordedFrame> load(List<Path> inputs, boolean json) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> listing = Files.list(input)) {
+                    listing.filter(p -> p.toString().endsWith(".vlog")).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(input);
+            }
+        }
+
+        Gson gson = new Gson();
+        VisionObjectParser parser = new VisionObjectParser();
+        VisionFrame frame = new VisionFrame();
+        VisionFrameCodec codec = new VisionFrameCodec();
+        List<RecordedFrame> frames = new ArrayList<>();
+        for (Path file : files) {
+            if (file.toString().endsWith(".json")) {
+                // a snapshot is one frame with no timing, space them out like a 50 Hz camera
+                RecordedFrame recorded = new RecordedFrame();
+                String text = Files.readString(file);
+                recorded.timestamp = frames.size() * 0.02;
+                recorded.captureTimestamp = recorded.timestamp;
+                if (json) {
+                    recorded.json = text;
+                } else {
+                    frame.count = Math.max(parser.parse(text, frame), 0);
+                    recorded.bytes = encode(frame, frames.size(), recorded.captureTimestamp);
+                }
+                frames.add(recorded);
+                continue;
+            }
+
+            VisionLogReader reader = new VisionLogReader(file);
+            while (reader.next()) {
+                if (reader.type != VisionRecorder.RECORD_FRAME) {
+                    continue;
+                }
+                RecordedFrame recorded = new RecordedFrame();
+                recorded.camera = reader.camera;
+                recorded.timestamp = reader.timestamp;
+                recorded.hasPose = reader.hasPose;
+                recorded.robotX = reader.robotX;
+                recorded.robotY = reader.robotY;
+                recorded.robotTheta = reader.robotTheta;
+                recorded.bytes = reader.getPayload();
+                codec.decode(recorded.bytes, frame);
+                recorded.captureTimestamp = frame.captureTimestamp;
+                if (json) {
+                    recorded.json = gson.toJson(Arrays.copyOf(frame.objects, frame.count));
+                    recorded.bytes = null;
+                }
+                frames.add(recorded);
+            }
+        }
+        return frames;
+    }
+
+    private static byte[] encode(VisionFrame frame, long sequence, double captureTimestamp) {
+        ByteBuffer buffer = ByteBuffer.allocate(VisionFrameCodec.encodedSize(frame.count));
+        VisionFrameCodec.encode(frame, sequence, captureTimestamp, buffer);
+        return buffer.array();
+    }
+
+    static Report replay(List<RecordedFrame> frames, CameraConfig camera, boolean json) {
+        PoseHistory poseHistory = new PoseHistory(frames.size() + 1);
+        List<VisionPipeline> pipelines = new ArrayList<>();
+        Report report = new Report(frames.size());
+
+        long start = System.nanoTime();
+        for (int f = 0; f < frames.size(); f++) {
+            RecordedFrame recorded = frames.get(f);
+            while (pipelines.size() <= recorded.camera) {
+                pipelines.add(new VisionPipeline(camera, poseHistory));
+            }
+            VisionPipeline pipeline = pipelines.get(recorded.camera);
+            if (recorded.hasPose) {
+                // out-of-order samples from other cameras are ignored by the history
+                poseHistory.record(recorded.captureTimestamp, recorded.robotX, recorded.robotY, recorded.robotTheta);
+            }
+
+            long ingestStart = System.nanoTime();
+            pipeline.beginBatch();
+            boolean ok = json
+                ? pipeline.ingestJson(recorded.json, recorded.timestamp)
+                : pipeline.ingestBinary(recorded.bytes, recorded.timestamp);
+            long queryStart = System.nanoTime();
+            for (int q = 0; q < QUERY_LABELS.length; q++) {
+                VisionObject[] objects = pipeline.getObjectsOfType(QUERY_LABELS[q]);
+                if (objects != null && objects.length > 0) {
+                    report.hits[q]++;
+                }
+            }
+            pipeline.getObjects(0.5);
+            long end = System.nanoTime();
+
+            report.ingestNanos[f] = queryStart - ingestStart;
+            report.queryNanos[f] = end - queryStart;
+            report.objects += pipeline.numberOfObjects();
+            if (!ok) {
+                report.malformed++;
+            }
+        }
+        report.totalNanos = System.nanoTime() - start;
+        report.pipelines = pipelines;
+        return report;
+    }
+
+    static class Report {
+        final long[] ingestNanos;
+        final long[] queryNanos;
+        final int[] hits = new int[QUERY_LABELS.length];
+        long objects = 0;
+        int malformed = 0;
+        long totalNanos;
+        List<VisionPipeline> pipelines;
+
+        Report(int frames) {
+            ingestNanos = new long[frames];
+            queryNanos = new long[frames];
+        }
+
+        void print(List<RecordedFrame> frames, boolean json) {
+            int n = frames.size();
+            double seconds = totalNanos * 1e-9;
+            double span = frames.get(n - 1).timestamp - frames.get(0).timestamp;
+            System.out.printf("frames          %d (%d malformed), %.1f objects per frame, %s path%n",
+                n, malformed, (double) objects / n, json ? "JSON" : "binary");
+            System.out.printf("replay          %.1f ms, %.0f frames/s", seconds * 1e3, n / seconds);
+            if (span > 0) {
+                System.out.printf(", %.0fx real time (log spans %.1f s)", span / seconds, span);
+            }
+            System.out.println();
+            printTimes(json ? "parse" : "decode", ingestNanos);
+            printTimes("queries", queryNanos);
+            for (int q = 0; q < QUERY_LABELS.length; q++) {
+                System.out.printf("\"%s\"%s seen in %d frames%n", QUERY_LABELS[q], " ".repeat(Math.max(0, 12 - QUERY_LABELS[q].length())), hits[q]);
+            }
+            for (int c = 0; c < pipelines.size(); c++) {
+                VisionPipeline pipeline = pipelines.get(c);
+                VisionObject[] tags = pipeline.getObjectsOfType("tag");
+                VisionObject[] objects = pipeline.getObjects(0.5);
+                System.out.printf("camera %d last   closest tag %s, closest object %s%n", c,
+                    describe(tags), describe(objects));
+            }
+        }
+
+        private static String describe(VisionObject[] objects) {
+            if (objects == null || objects.length == 0) {
+                return "none";
+            }
+            VisionObject vo = objects[0];
+            return String.format("%s at (%.1f, %.1f, %.1f)", vo.objectLabel, vo.x, vo.y, vo.z);
+        }
+
+        private static void printTimes(String name, long[] nanos) {
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long t : sorted) {
+                sum += t;
+            }
+            System.out.printf("%-15s mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us per frame%n",
+                name,
+                sum / 1e3 / sorted.length,
+                sorted[sorted.length / 2] / 1e3,
+                sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1e3,
+                sorted[sorted.length - 1] / 1e3);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package frc.robot.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTablesJNI;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.RawPublisher;
+import edu.wpi.first.networktables.RawSubscriber;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.networktables.StringSubscriber;
+import edu.wpi.first.networktables.TimestampedRaw;
+import edu.wpi.first.networktables.TimestampedString;
+import frc.robot.Constants;
+import frc.robot.models.CameraConfig;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionFrameCodec;
+import frc.robot.models.VisionFrameFormat;
+
+/**
+ * Stands in for a MonsterVision coprocessor: publishes synthetic ObjectTracker frames to
+ * NetworkTables from a simple field model, so the vision stack can be load tested without
+ * hardware.
+ *
+ * <p>Objects drift around a box in front of the robot at up to
+ * {@link Settings#maxSpeed}, bouncing off its sides; tags are turned a little to one side.
+ * Every frame reports all of them, so {@link Settings#objects} is the per-frame object count.
+ *
+ * <p>In robot simulation, Robot.simulationInit starts one publishing to the robot's own
+ * NetworkTables when {@link Constants#VISION_SIMULATOR_ENABLED}. Run on its own,
+ * <pre>
+ *   VisionSimulator [--fps N] [--objects N] [--labels note,tag36h11] [--jitter IN]
+ *                   [--latency S] [--malformed P] [--binary] [--source NAME] [--seconds S]
+ * </pre>
+ * it starts a local NetworkTables server, publishes to it, reads the frames back through a
+ * client connection into a {@link VisionPipeline} like ObjectTrackerSubsystem's, and reports
+ * the latency, drops, parse times and CPU time the robot side saw.
+ */
+public class VisionSimulator {
+    /** What to publish; the defaults are a busy but realistic camera */
+    public static class Settings {
+        public String source = "Eclipse";
+        public boolean binary = false;
+        public double fps = 30;
+        public int objects = 8;
+        /** Labels handed out to objects in turn; tag labels get an ID from 1 to 16 */
+        public String[] labels = {"note", "tag36h11"};
+        /** Standard deviation of the noise on each reported position, inches */
+        public double jitter = 0.5;
+        /** How long before publishing each frame was captured, seconds */
+        public double latency = 0.05;
+        /** Fraction of the frame period each frame may come early or late by */
+        public double periodJitter = 0.1;
+        /** Fraction of frames sent truncated */
+        public double malformedRate = 0;
+        public double maxSpeed = 1.5;
+        public long seed = 1;
+    }
+
+    // the box in front of the robot objects stay in, meters
+    private static final double MIN_FORWARD = 0.5;
+    private static final double MAX_FORWARD = 6.0;
+    private static final double MAX_LEFT = 3.0;
+    private static final double CAMERA_HEIGHT = 0.5;
+
+    private final Settings settings;
+    private final StringPublisher jsonPublisher;
+    private final RawPublisher binaryPublisher;
+    private final Random random;
+    private final Thread thread;
+    private volatile boolean running = false;
+
+    // field model, robot-relative meters
+    private final String[] labels;
+    private final double[] forwards;
+    private final double[] lefts;
+    private final double[] forwardSpeeds;
+    private final double[] leftSpeeds;
+    private final double[] yaws;
+
+    private final VisionFrame frame = new VisionFrame();
+    private final ByteBuffer buffer;
+    private final StringBuilder json = new StringBuilder();
+    private volatile long publishedCount = 0;
+    private volatile long malformedCount = 0;
+
+    /**
+     * @param inst NetworkTables to publish to; frames go to MonsterVision/ObjectTracker-source,
+     *     or ObjectTrackerBinary-source
+     */
+    public VisionSimulator(NetworkTableInstance inst, Settings settings) {
+        this.settings = settings;
+        random = new Random(settings.seed);
+        int objects = Math.min(settings.objects, Constants.VISION_MAX_OBJECTS_PER_FRAME);
+
+        NetworkTable table = inst.getTable("MonsterVision");
+        if (settings.binary) {
+            jsonPublisher = null;
+            binaryPublisher = table.getRawTopic("ObjectTrackerBinary-" + settings.source)
+                .publish("raw", PubSubOption.sendAll(true), PubSubOption.keepDuplicates(true));
+        } else {
+            binaryPublisher = null;
+            jsonPublisher = table.getStringTopic("ObjectTracker-" + settings.source)
+                .publish(PubSubOption.sendAll(true), PubSubOption.keepDuplicates(true));
+        }
+        buffer = ByteBuffer.allocate(VisionFrameCodec.encodedSize(objects));
+
+        labels = new String[objects];
+        forwards = new double[objects];
+        lefts = new double[objects];
+        forwardSpeeds = new double[objects];
+        leftSpeeds = new double[objects];
+        yaws = new double[objects];
+        int tagId = 0;
+        for (int i = 0; i < objects; i++) {
+            String label = settings.labels[i % settings.labels.length];
+            labels[i] = label.startsWith("tag") ? label + ": " + (tagId++ % 16 + 1) : label;
+            forwards[i] = MIN_FORWARD + random.nextDouble() * (MAX_FORWARD - MIN_FORWARD);
+            lefts[i] = (random.nextDouble() * 2 - 1) * MAX_LEFT;
+            forwardSpeeds[i] = (random.nextDouble() * 2 - 1) * settings.maxSpeed;
+            leftSpeeds[i] = (random.nextDouble() * 2 - 1) * settings.maxSpeed;
+            yaws[i] = (random.nextDouble() * 2 - 1) * 0.5;
+        }
+
+        thread = new Thread(this::run, "Vision simulator " + settings.source);
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Frames published so far, malformed ones included */
+    public long getPublishedCount() {
+        return publishedCount;
+    }
+
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+
+    private void run() {
+        double period = 1.0 / settings.fps;
+        long next = System.nanoTime();
+        long sequence = 0;
+        while (running) {
+            double jitter = (random.nextDouble() * 2 - 1) * settings.periodJitter * period;
+            next += (long) ((period + jitter) * 1e9);
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            step(period + jitter);
+            publish(sequence++);
+        }
+    }
+
+    /** Moves every object, bouncing it off the sides of the box */
+    void step(double dt) {
+        for (int i = 0; i < forwards.length; i++) {
+            forwards[i] += forwardSpeeds[i] * dt;
+            lefts[i] += leftSpeeds[i] * dt;
+            if (forwards[i] < MIN_FORWARD || forwards[i] > MAX_FORWARD) {
+                forwardSpeeds[i] = -forwardSpeeds[i];
+                forwards[i] = Math.max(MIN_FORWARD, Math.min(MAX_FORWARD, forwards[i]));
+            }
+            if (Math.abs(lefts[i]) > MAX_LEFT) {
+                leftSpeeds[i] = -leftSpeeds[i];
+                lefts[i] = Math.copySign(MAX_LEFT, lefts[i]);
+            }
+        }
+    }
+
+    /** Publishes the objects where they are now as one frame */
+    void publish(long sequence) {
+        fillFrame();
+        long now = NetworkTablesJNI.now();
+        boolean malformed = random.nextDouble() < settings.malformedRate;
+        if (settings.binary) {
+            buffer.clear();
+            int size = VisionFrameCodec.encode(frame, sequence, now * 1.0e-6 - settings.latency, buffer);
+            // cutting off the values leaves a header that promises more than is there
+            binaryPublisher.set(buffer.array(), 0, malformed ? size / 2 : size);
+        } else {
+            String text = toJson();
+            jsonPublisher.set(malformed ? text.substring(0, text.length() / 2) : text);
+        }
+        if (malformed) {
+            malformedCount++;
+        }
+        publishedCount++;
+    }
+
+    private void fillFrame() {
+        double unitsPerMeter = Constants.VISION_UNITS_PER_METER;
+        frame.count = forwards.length;
+        for (int i = 0; i < frame.count; i++) {
+            frame.objects[i].objectLabel = labels[i];
+            frame.classIds[i] = VisionFrameCodec.classIdOf(labels[i]);
+            frame.tagIds[i] = VisionFrameCodec.tagIdOf(labels[i]);
+            frame.objects[i].x = -lefts[i] * unitsPerMeter + random.nextGaussian() * settings.jitter;
+            frame.objects[i].y = CAMERA_HEIGHT * unitsPerMeter + random.nextGaussian() * settings.jitter;
+            frame.objects[i].z = forwards[i] * unitsPerMeter + random.nextGaussian() * settings.jitter;
+            frame.objects[i].confidence = labels[i].startsWith("tag") ? 1.0 : 0.6 + 0.4 * random.nextDouble();
+        }
+    }
+
+    /** The frame as MonsterVision's ObjectTracker JSON */
+    private String toJson() {
+        json.setLength(0);
+        json.append('[');
+        for (int i = 0; i < frame.count; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append("{\"objectLabel\": \"").append(labels[i])
+                .append("\", \"x\": ").append(frame.objects[i].x)
+                .append(", \"y\": ").append(frame.objects[i].y)
+                .append(", \"z\": ").append(frame.objects[i].z)
+                .append(", \"confidence\": ").append(frame.objects[i].confidence);
+            if (labels[i].startsWith("tag")) {
+                json.append(", \"rotation\": {\"x\": 0.0, \"y\": ").append(yaws[i]).append(", \"z\": 0.0}");
+            }
+            json.append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Settings settings = new Settings();
+        double seconds = 10;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fps": settings.fps = Double.parseDouble(args[++i]); break;
+                case "--objects": settings.objects = Integer.parseInt(args[++i]); break;
+                case "--labels": settings.labels = args[++i].split(","); break;
+                case "--jitter": settings.jitter = Double.parseDouble(args[++i]); break;
+                case "--latency": settings.latency = Double.parseDouble(args[++i]); break;
+                case "--malformed": settings.malformedRate = Double.parseDouble(args[++i]); break;
+                case "--binary": settings.binary = true; break;
+                case "--source": settings.source = args[++i]; break;
+                case "--seconds": seconds = Double.parseDouble(args[++i]); break;
+                default:
+                    System.err.println("unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        NetworkTableInstance server = NetworkTableInstance.create();
+        server.startServer();
+        NetworkTableInstance client = NetworkTableInstance.create();
+        client.setServer("localhost", NetworkTableInstance.kDefaultPort4);
+        client.startClient4("vision-simulator");
+        Observer observer = new Observer(client, settings);
+        while (!client.isConnected()) {
+            Thread.sleep(10);
+        }
+
+        VisionSimulator simulator = new VisionSimulator(server, settings);
+        simulator.start();
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) {
+            observer.poll();
+            Thread.sleep((long) (Constants.VISION_THREAD_PERIOD * 1000));
+        }
+        simulator.stop();
+        // let the last frames arrive
+        Thread.sleep(100);
+        observer.poll();
+        observer.print(simulator, seconds);
+        client.close();
+        server.close();
+    }
+
+    /** The robot's side: a pipeline fed from a client connection, timed */
+    private static class Observer {
+        private final VisionFrameFormat format;
+        private final StringSubscriber jsonSubscriber;
+        private final RawSubscriber binarySubscriber;
+        private final VisionPipeline pipeline;
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private long cpuNanos = 0;
+        private double[] latencies = new double[1024];
+        private double[] frameAges = new double[1024];
+        private int latencyCount = 0;
+        private int frameAgeCount = 0;
+        private long objects = 0;
+
+        Observer(NetworkTableInstance inst, Settings settings) {
+            format = settings.binary ? VisionFrameFormat.BINARY : VisionFrameFormat.JSON;
+            NetworkTable table = inst.getTable("MonsterVision");
+            // the queue is deep enough that nothing is lost here, so any drop is on the wire
+            if (settings.binary) {
+                jsonSubscriber = null;
+                binarySubscriber = table.getRawTopic("ObjectTrackerBinary-" + settings.source).subscribe(
+                    "raw", new byte[0], PubSubOption.keepDuplicates(true), PubSubOption.pollStorage(1024));
+            } else {
+                binarySubscriber = null;
+                jsonSubscriber = table.getStringTopic("ObjectTracker-" + settings.source).subscribe(
+                    "", PubSubOption.keepDuplicates(true), PubSubOption.pollStorage(1024));
+            }
+            pipeline = new VisionPipeline(new CameraConfig(settings.source, format), null);
+        }
+
+        void poll() {
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            pipeline.beginBatch();
+            if (format == VisionFrameFormat.BINARY) {
+                TimestampedRaw[] updates = binarySubscriber.readQueue();
+                double now = NetworkTablesJNI.now() * 1.0e-6;
+                for (TimestampedRaw update : updates) {
+                    if (pipeline.ingestBinary(update.value, update.timestamp * 1.0e-6)) {
+                        addFrameAge(now - pipeline.getLatestFrame().captureTimestamp);
+                        objects += pipeline.numberOfObjects();
+                    }
+                    addLatency(now - update.timestamp * 1.0e-6);
+                }
+            } else {
+                TimestampedString[] updates = jsonSubscriber.readQueue();
+                double now = NetworkTablesJNI.now() * 1.0e-6;
+                for (TimestampedString update : updates) {
+                    if (pipeline.ingestJson(update.value, update.timestamp * 1.0e-6)) {
+                        objects += pipeline.numberOfObjects();
+                    }
+                    addLatency(now - update.timestamp * 1.0e-6);
+                }
+            }
+            cpuNanos += threads.getCurrentThreadCpuTime() - cpuStart;
+        }
+
+        private void addLatency(double latency) {
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount++] = latency;
+        }
+
+        private void addFrameAge(double age) {
+            if (frameAgeCount == frameAges.length) {
+                frameAges = Arrays.copyOf(frameAges, frameAges.length * 2);
+            }
+            frameAges[frameAgeCount++] = age;
+        }
+
+        void print(VisionSimulator simulator, double seconds) {
+            VisionHealth health = pipeline.getHealth();
+            long published = simulator.getPublishedCount();
+            long received = health.getReceivedCount();
+            System.out.printf("published       %d frames (%d malformed), %.1f frames/s, %d objects each, %s%n",
+                published, simulator.getMalformedCount(), published / seconds, simulator.forwards.length,
+                format == VisionFrameFormat.BINARY ? "binary" : "JSON");
+            System.out.printf("received        %d frames, %d parsed, %d malformed, %d lost (%d by sequence)%n",
+                received, health.getParsedCount(), health.getMalformedCount(), published - received,
+                health.getDroppedCount());
+            System.out.printf("objects         %.1f per parsed frame%n",
+                health.getParsedCount() == 0 ? 0.0 : (double) objects / health.getParsedCount());
+            printTimes("latency", latencies, latencyCount);
+            if (frameAgeCount > 0) {
+                printTimes("frame age", frameAges, frameAgeCount);
+            }
+            System.out.printf("parse time      p50 %.1f us, p99 %.1f us, max %.1f us (last %d frames)%n",
+                health.getParseTime(0.5) * 1e6, health.getParseTime(0.99) * 1e6, health.getParseTime(1.0) * 1e6,
+                Math.min(received, Constants.VISION_PARSE_TIME_SAMPLES));
+            System.out.printf("cpu time        %.1f ms total, %.1f us per frame, %.2f%% of one core%n",
+                cpuNanos * 1e-6, received == 0 ? 0.0 : cpuNanos * 1e-3 / received, cpuNanos * 1e-7 / seconds);
+        }
+
+        private static void printTimes(String name, double[] values, int count) {
+            if (count == 0) {
+                System.out.printf("%-15s no frames%n", name);
+                return;
+            }
+            double[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            double sum = 0;
+            for (double v : sorted) {
+                sum += v;
+            }
+            System.out.printf("%-15s mean %.1f ms, p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                name,
+                sum * 1e3 / count,
+                sorted[count / 2] * 1e3,
+                sorted[Math.min(count - 1, (int) (count * 0.99))] * 1e3,
+                sorted[count - 1] * 1e3);
+        }
+    }
+}
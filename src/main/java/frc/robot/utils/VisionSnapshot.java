@@ -0,0 +1,133 @@
+package frc.robot.utils;
+
+import java.util.Arrays;
+
+import frc.robot.Constants;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionFrameIndex;
+import frc.robot.models.VisionObject;
+import frc.robot.models.VisionSpatialIndex;
+
+/**
+ * A copy of one camera's recent frames, the indexes over the latest one and its health figures,
+ * taken from the {@link VisionPipeline} by whichever thread runs it and handed to the robot loop
+ * through a {@link TripleBuffer}.
+ *
+ * <p>Snapshots are preallocated and reused. The loop only ever reads the one it holds, so
+ * nothing it gets from a snapshot changes until it takes the next.
+ */
+public class VisionSnapshot {
+    private final VisionFrame[] frames = new VisionFrame[Constants.VISION_FRAME_QUEUE_SIZE];
+    // sequence of the frame in each slot, so frames already copied aren't copied again
+    private final long[] copiedSequences = new long[Constants.VISION_FRAME_QUEUE_SIZE];
+    private long frameCount = 0;
+    private int objectCount = 0;
+    private String json = "";
+    private final VisionFrameIndex index = new VisionFrameIndex();
+    private final VisionSpatialIndex spatialIndex = new VisionSpatialIndex();
+    private final double[] health = new double[VisionHealth.FIELD_COUNT];
+
+    public VisionSnapshot() {
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new VisionFrame();
+        }
+        Arrays.fill(copiedSequences, -1);
+    }
+
+    /** Copies the pipeline's frames, rebuilds the indexes and samples its health */
+    public void copyFrom(VisionPipeline pipeline, double now) {
+        VisionFrame latest = pipeline.getLatestFrame();
+        frameCount = latest == null ? 0 : latest.sequence + 1;
+        for (int age = 0; age < frames.length; age++) {
+            VisionFrame frame = pipeline.getFrame(age);
+            if (frame == null) {
+                break;
+            }
+            int slot = (int) (frame.sequence % frames.length);
+            if (copiedSequences[slot] != frame.sequence) {
+                frames[slot].set(frame);
+                copiedSequences[slot] = frame.sequence;
+            }
+        }
+
+        // a malformed frame after the latest good one means nothing is seen, as in the pipeline
+        objectCount = pipeline.numberOfObjects();
+        json = pipeline.getObjectsJson();
+        if (objectCount == 0) {
+            index.clear();
+            spatialIndex.update(null);
+        } else {
+            VisionFrame frame = getFrame(0);
+            index.rebuild(frame.objects, frame.classIds, frame.tagIds, frame.count);
+            spatialIndex.update(frame);
+        }
+        pipeline.getHealth().fill(now, health);
+    }
+
+    /** Frames the pipeline had ingested when this was taken */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns a frame by age
+     * @param age 0 for the latest frame, 1 for the one before it, and so on
+     * @return the frame, or null if the snapshot does not reach back that far
+     */
+    public VisionFrame getFrame(int age) {
+        if (age < 0 || age >= Math.min(frameCount, frames.length)) {
+            return null;
+        }
+        return frames[(int) ((frameCount - 1 - age) % frames.length)];
+    }
+
+    /**
+     * Detection slots of the latest frame, or null if none has arrived yet. The array is pooled:
+     * only the first {@link #numberOfObjects()} are valid, the rest are left from older frames.
+     */
+    public VisionObject[] getFoundObjects() {
+        VisionFrame frame = getFrame(0);
+        return frame == null ? null : frame.objects;
+    }
+
+    public int numberOfObjects() {
+        return objectCount;
+    }
+
+    public String getObjectsJson() {
+        return json;
+    }
+
+    /** Seconds since the latest frame was captured, infinite if there hasn't been one */
+    public double getFrameAge(double now) {
+        VisionFrame frame = getFrame(0);
+        return frame == null ? Double.POSITIVE_INFINITY : now - frame.captureTimestamp;
+    }
+
+    /** {@link VisionHealth#fill} as of when this was taken */
+    public double[] getHealthValues() {
+        return health;
+    }
+
+    /** Returns detections with at least this confidence, or null if nothing is seen */
+    public VisionObject[] getObjects(double minimumConfidence) {
+        if (objectCount == 0)
+            return null;
+        return index.getObjects(minimumConfidence);
+    }
+
+    /** Returns detections whose label contains objectLabel, or null if nothing is seen */
+    public VisionObject[] getObjectsOfType(String objectLabel) {
+        if (objectCount == 0)
+            return null;
+        return index.getObjectsOfType(objectLabel);
+    }
+
+    public VisionObject getAprilTag(int id) {
+        return index.getAprilTag(id);
+    }
+
+    public VisionSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+}
@@ -0,0 +1,223 @@
+package frc.robot.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Checks that {@link VisionObjectParser} reads ObjectTracker payloads exactly as the Gson path it
+ * replaced, on recorded frames and on randomized ones.
+ */
+class VisionObjectParserTest {
+    private static final String[] LABELS = {
+        "note", "cone", "cube", "tag16h5: 28", "tag16h5: 7", "tag36h11: 4", "tag36h11", "bunny", "robot"
+    };
+
+    private final Gson gson = new Gson();
+    private final VisionObjectParser parser = new VisionObjectParser();
+    private final VisionFrame frame = new VisionFrame();
+
+    @Test
+    void recordedFramesMatchGson() throws IOException {
+        List<String> payloads = readFrames("objecttracker-frames.txt");
+        assertTrue(payloads.size() > 0);
+        for (String payload : payloads) {
+            assertTrue(assertMatchesGson(payload) >= 0, payload);
+        }
+    }
+
+    @Test
+    void randomFramesMatchGson() {
+        Random random = new Random(2024);
+        for (int i = 0; i < 1000; i++) {
+            String payload = randomFrame(random);
+            assertTrue(assertMatchesGson(payload) >= 0, payload);
+        }
+    }
+
+    @Test
+    void readsPythonSpecialNumbersAndQuotedNumbers() {
+        String payload = "[{\"objectLabel\": \"note\", \"x\": NaN, \"y\": -Infinity, \"z\": \"2.5\","
+            + " \"r\": Infinity, \"xa\": null, \"confidence\": \"0.75\"}]";
+        assertEquals(1, assertMatchesGson(payload));
+        VisionObject vo = frame.objects[0];
+        assertTrue(Double.isNaN(vo.x));
+        assertEquals(Double.NEGATIVE_INFINITY, vo.y);
+        assertEquals(2.5, vo.z);
+        assertEquals(Double.POSITIVE_INFINITY, vo.r);
+        assertEquals(0.0, vo.xa);
+        assertEquals(0.75, vo.confidence);
+    }
+
+    @Test
+    void dropsZeroDepthObjects() {
+        String payload = "[{\"objectLabel\": \"note\", \"x\": 0, \"y\": 0, \"z\": 0},"
+            + " {\"objectLabel\": \"tag16h5: 28\", \"x\": 0.1, \"y\": 0.2, \"z\": 3.0}]";
+        assertEquals(1, assertMatchesGson(payload));
+        assertEquals("tag16h5: 28", frame.objects[0].objectLabel);
+        assertEquals(28, frame.tagIds[0]);
+    }
+
+    @Test
+    void truncatedFramesAreMalformed() {
+        String payload = "[{\"objectLabel\": \"tag16h5: 28\", \"x\": -0.15, \"y\": 4.2e-2, \"z\": 2.87,"
+            + " \"rotation\": {\"x\": 0.02, \"y\": NaN, \"z\": 3.12}, \"confidence\": \"1.0\"},"
+            + " {\"objectLabel\": \"note\", \"x\": Infinity, \"y\": null, \"z\": 1.5, \"track\": [1, {\"a\": true}]}]";
+        assertEquals(2, assertMatchesGson(payload));
+        for (int length = 1; length < payload.length(); length++) {
+            String prefix = payload.substring(0, length);
+            assertEquals(-1, parser.parse(prefix, frame), prefix);
+            assertThrows(RuntimeException.class, () -> gson.fromJson(prefix, VisionObject[].class), prefix);
+        }
+    }
+
+    @Test
+    void garbageIsMalformed() {
+        String[] payloads = {
+            "{\"objectLabel\": \"note\", \"z\": 1.0}",
+            "[{\"objectLabel\": \"note\", \"z\": 1.0}] trailing",
+            "[{\"objectLabel\": \"note\", \"z\": 1.0}}]",
+            "[{\"objectLabel\": \"note\", \"z\": 1.0},]x",
+            "[{\"objectLabel\": \"note\", \"z\": abc}]",
+            "[{\"objectLabel\": \"note\", \"z\": true}]",
+            "[{\"objectLabel\": \"note\", \"z\": \"far\"}]",
+            "[{\"objectLabel\": \"note\", \"z\": 1e}]",
+            "[{\"objectLabel\": \"note\", \"z\": --1}]",
+            "[{\"objectLabel\": \"note\", \"z\": 1.0 \"x\": 2.0}]",
+            "[{\"objectLabel\": \"note\", \"rotation\": 5}]",
+            "[{\"objectLabel\": \"note\" \"z\": 1.0}]",
+        };
+        for (String payload : payloads) {
+            assertEquals(-1, assertMatchesGson(payload), payload);
+        }
+        assertEquals(-1, parser.parse(null, frame));
+    }
+
+    /**
+     * Parses a payload with both parsers and checks they agree. Gson keeps zero-depth objects and
+     * objects past the frame's capacity; the parser drops both.
+     * @return the parser's object count, -1 when both reject the payload
+     */
+    private int assertMatchesGson(String payload) {
+        VisionObject[] expected;
+        try {
+            expected = gson.fromJson(payload, VisionObject[].class);
+        } catch (JsonParseException | NumberFormatException e) {
+            // Gson 2.8 lets NumberFormatException out for words like abc where a number belongs
+            assertEquals(-1, parser.parse(payload, frame), payload);
+            return -1;
+        }
+        assertNotNull(expected, payload);
+        List<VisionObject> kept = new ArrayList<>();
+        for (VisionObject vo : expected) {
+            if (vo.z != 0 && kept.size() < frame.objects.length) {
+                kept.add(vo);
+            }
+        }
+
+        int count = parser.parse(payload, frame);
+        assertEquals(kept.size(), count, payload);
+        for (int i = 0; i < count; i++) {
+            VisionObject want = kept.get(i);
+            VisionObject got = frame.objects[i];
+            assertEquals(want.objectLabel, got.objectLabel, payload);
+            assertEquals(want.x, got.x, payload);
+            assertEquals(want.y, got.y, payload);
+            assertEquals(want.z, got.z, payload);
+            assertEquals(want.r, got.r, payload);
+            assertEquals(want.xa, got.xa, payload);
+            assertEquals(want.ya, got.ya, payload);
+            assertEquals(want.confidence, got.confidence, payload);
+            if (want.rotation == null) {
+                assertNull(got.rotation, payload);
+            } else {
+                assertNotNull(got.rotation, payload);
+                assertEquals(want.rotation.x, got.rotation.x, payload);
+                assertEquals(want.rotation.y, got.rotation.y, payload);
+                assertEquals(want.rotation.z, got.rotation.z, payload);
+            }
+            assertEquals(VisionFrameCodec.classIdOf(want.objectLabel), frame.classIds[i], payload);
+            assertEquals(VisionFrameCodec.tagIdOf(want.objectLabel), frame.tagIds[i], payload);
+        }
+        return count;
+    }
+
+    private List<String> readFrames(String resource) throws IOException {
+        List<String> payloads = new ArrayList<>();
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            assertNotNull(in, resource);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    payloads.add(line);
+                }
+            }
+        }
+        return payloads;
+    }
+
+    private static String randomFrame(Random random) {
+        StringBuilder sb = new StringBuilder("[");
+        int objects = random.nextInt(40);
+        for (int i = 0; i < objects; i++) {
+            sb.append(i == 0 ? "" : ",").append(space(random)).append('{');
+            List<String> fields = new ArrayList<>();
+            fields.add("\"objectLabel\":" + space(random) + '"' + LABELS[random.nextInt(LABELS.length)] + '"');
+            for (String key : new String[] {"x", "y", "z", "r", "xa", "ya", "confidence"}) {
+                if (random.nextInt(10) > 0) {
+                    fields.add('"' + key + "\":" + space(random) + number(random));
+                }
+            }
+            if (random.nextInt(3) == 0) {
+                fields.add("\"rotation\":" + space(random) + (random.nextInt(5) == 0 ? "null"
+                    : "{\"x\": " + number(random) + ", \"y\": " + number(random) + ", \"z\": " + number(random) + "}"));
+            }
+            if (random.nextInt(5) == 0) {
+                fields.add("\"track\": {\"id\": " + random.nextInt(100) + ", \"history\": [1.5, \"a]\", null, true]}");
+            }
+            Collections.shuffle(fields, random);
+            sb.append(String.join("," + space(random), fields)).append('}');
+        }
+        return sb.append(space(random)).append(']').toString();
+    }
+
+    private static String number(Random random) {
+        double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(8) - 3);
+        switch (random.nextInt(16)) {
+            case 0: return "NaN";
+            case 1: return "Infinity";
+            case 2: return "-Infinity";
+            case 3: return "null";
+            case 4: return "\"" + value + "\"";
+            case 5: return "0";
+            case 6: return String.format(Locale.ROOT, "%.3e", value);
+            case 7: return String.format(Locale.ROOT, "%.2fE+%d", value, random.nextInt(3));
+            case 8: return Integer.toString(random.nextInt(2000) - 1000);
+            case 9: return String.format(Locale.ROOT, "%.20f", value);
+            default: return Double.toString(value);
+        }
+    }
+
+    private static String space(Random random) {
+        return random.nextBoolean() ? "" : " ";
+    }
+}
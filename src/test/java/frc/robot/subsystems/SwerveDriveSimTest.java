@@ -0,0 +1,79 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+
+/** Drives the real DrivetrainSubsystem and bare modules on a SwerveDriveSim, on a stepped clock */
+class SwerveDriveSimTest {
+  private static final double LOOP_PERIOD = 0.02; // seconds, as TimedRobot
+
+  private double m_time = 0;
+
+  @BeforeAll
+  static void initializeHal() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @Test
+  void drivesStraightPathWithinTolerance() {
+    SwerveDriveSim sim = new SwerveDriveSim(() -> m_time);
+    DrivetrainSubsystem dts = new DrivetrainSubsystem(sim.getIO(), false);
+    dts.setFollowJoystick(false);
+    sim.resetPose(0, 0, 0);
+    dts.resetAngle();
+    dts.resetOdometry(new Pose2d());
+
+    // 1.5 m/s forward for 2 s, then stop for 1 s
+    for (int loop = 0; loop < 150; loop++) {
+      dts.periodic();
+      dts.drive(loop < 100 ? 1.5 : 0, 0, 0, false);
+      m_time += LOOP_PERIOD;
+    }
+    dts.periodic();
+
+    assertTrue(sim.getX() > 2.5, "drove " + sim.getX() + " m");
+    assertEquals(0, sim.getY(), 0.02, "sideways drift");
+    assertEquals(0, sim.getTheta(), 0.01, "heading drift");
+    assertEquals(0, sim.getSpeed(), 0.01, "still moving after stopping");
+    Pose2d odometry = dts.getPose();
+    assertEquals(sim.getX(), odometry.getX(), 0.05, "odometry x");
+    assertEquals(sim.getY(), odometry.getY(), 0.05, "odometry y");
+  }
+
+  @Test
+  void fullThrottleLaunchSlipsAndSagsTheBattery() {
+    SwerveDriveSim sim = new SwerveDriveSim(() -> m_time);
+    DrivetrainIO io = sim.getIO();
+    SwerveModuleIO[] modules = {io.frontLeft, io.frontRight, io.backLeft, io.backRight};
+    sim.resetPose(0, 0, 0);
+
+    double maxSlip = 0;
+    double minVoltage = Double.POSITIVE_INFINITY;
+    for (int loop = 0; loop < 25; loop++) {
+      for (SwerveModuleIO module : modules) {
+        module.setDriveOutput(1.0);
+        module.setTurningOutput(0.0);
+      }
+      m_time += LOOP_PERIOD;
+      maxSlip = Math.max(maxSlip, sim.getSlip(0));
+      minVoltage = Math.min(minVoltage, sim.getBatteryVoltage());
+    }
+
+    assertTrue(maxSlip > 0.05, "wheels should spin up faster than the carpet lets the robot, slip " + maxSlip);
+    assertTrue(minVoltage < 12.0, "battery should sag under four drive motors, " + minVoltage + " V");
+    // the encoders count the wheel turns, slip included, so they read further than the robot went
+    assertTrue(modules[0].getDrivePosition() > sim.getX(), "encoder " + modules[0].getDrivePosition() + " m");
+    assertEquals(0, sim.getY(), 0.001, "sideways drift");
+    assertEquals(0, sim.getTheta(), 0.001, "heading drift");
+  }
+}
@@ -0,0 +1,85 @@
+package frc.robot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Checks that the per-loop drive and odometry math allocates nothing once warmed up: kinematics,
+ * the pose estimator, publishing the pose and the pose history.
+ */
+class DriveLoopAllocationTest {
+    private static final double LOOP_PERIOD = 0.02; // seconds
+    private static final int WARMUP_LOOPS = 20000; // enough for the JIT to compile the loop
+    private static final int MEASURED_LOOPS = 1000;
+
+    private final SwerveKinematicsSolver kinematics = new SwerveKinematicsSolver(
+        new Translation2d(0.3, 0.3), new Translation2d(0.3, -0.3),
+        new Translation2d(-0.3, 0.3), new Translation2d(-0.3, -0.3));
+    private final SwervePoseEstimator estimator = new SwervePoseEstimator(kinematics, new double[] {0.1, 0.1, 0.1}, 400);
+    private final SeqLockPose published = new SeqLockPose();
+    private final PoseHistory history = new PoseHistory(100);
+
+    private final double[] speeds = new double[4];
+    private final double[] angles = new double[4];
+    private final double[] distances = new double[4];
+    private final double[] chassis = new double[3];
+    private final double[] pose = new double[3];
+    private double gyro;
+    private double sink; // keeps results in use so the JIT can't drop the work
+
+    @Test
+    void driveLoopDoesNotAllocate() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        estimator.resetPosition(0, distances, 0, 0, 0);
+        for (int i = 0; i < WARMUP_LOOPS; i++) {
+            loop(i);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = WARMUP_LOOPS; i < WARMUP_LOOPS + MEASURED_LOOPS; i++) {
+            loop(i);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertEquals(0, allocated, "bytes allocated over " + MEASURED_LOOPS + " loops");
+    }
+
+    /** One robot loop's worth of drive math, driving a slow arc */
+    private void loop(int i) {
+        double time = i * LOOP_PERIOD;
+        double vx = 2.0 * Math.cos(time * 0.1);
+        double vy = 0.5 * Math.sin(time * 0.3);
+        double omega = 1.0;
+
+        kinematics.toModuleStates(vx, vy, omega, 0, 0, speeds, angles);
+        SwerveKinematicsSolver.desaturate(speeds, 4.0);
+        kinematics.toChassisMotion(speeds, angles, chassis);
+        for (int module = 0; module < distances.length; module++) {
+            distances[module] += speeds[module] * LOOP_PERIOD;
+        }
+        gyro += chassis[2] * LOOP_PERIOD;
+
+        estimator.update(time, gyro, distances, angles);
+        if (i % 10 == 0) {
+            estimator.addVisionMeasurement(estimator.getX() + 0.05, estimator.getY(), estimator.getTheta(),
+                time - 3 * LOOP_PERIOD, 0.5, 0.5, 1.0);
+        }
+        published.write(time, estimator.getX(), estimator.getY(), estimator.getTheta());
+        sink += published.read(pose);
+
+        history.record(time, pose[0], pose[1], pose[2]);
+        if (history.sample(time - 0.5 * LOOP_PERIOD, pose)) {
+            sink += pose[0];
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package frc.robot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+
+/**
+ * Checks that {@link SwervePoseEstimator} gives the same estimate as WPILib's
+ * SwerveDrivePoseEstimator, which it replaced, on the same odometry and vision inputs.
+ */
+class SwervePoseEstimatorTest {
+    private static final double LOOP_PERIOD = 0.02; // seconds
+    private static final double TOLERANCE = 1e-6; // meters and radians
+    private static final Translation2d[] MODULES = {
+        new Translation2d(0.3, 0.3), new Translation2d(0.3, -0.3),
+        new Translation2d(-0.3, 0.3), new Translation2d(-0.3, -0.3)};
+
+    @Test
+    void matchesWpilibEstimator() {
+        SwerveKinematicsSolver kinematics = new SwerveKinematicsSolver(MODULES);
+        SwervePoseEstimator estimator = new SwervePoseEstimator(kinematics, new double[] {0.1, 0.1, 0.1}, 400);
+        double[] speeds = new double[4];
+        double[] angles = new double[4];
+        double[] distances = new double[4];
+        double[] chassis = new double[3];
+        double gyro = 0.3;
+
+        estimator.resetPosition(gyro, distances, 1.0, 2.0, -0.5);
+        SwerveDrivePoseEstimator wpilib = new SwerveDrivePoseEstimator(new SwerveDriveKinematics(MODULES),
+            new Rotation2d(gyro), positions(distances, angles), new Pose2d(1.0, 2.0, new Rotation2d(-0.5)),
+            VecBuilder.fill(0.1, 0.1, 0.1), VecBuilder.fill(0.9, 0.9, 0.9));
+
+        double[] times = new double[500];
+        double[] trueX = new double[times.length];
+        double[] trueY = new double[times.length];
+        double[] trueTheta = new double[times.length];
+        for (int i = 0; i < times.length; i++) {
+            double time = 10.0 + i * LOOP_PERIOD;
+            kinematics.toModuleStates(2.0 * Math.cos(i * 0.01), 0.8 * Math.sin(i * 0.03), 1.5 * Math.sin(i * 0.02),
+                0, 0, speeds, angles);
+            kinematics.toChassisMotion(speeds, angles, chassis);
+            for (int module = 0; module < distances.length; module++) {
+                distances[module] += speeds[module] * LOOP_PERIOD;
+            }
+            // a gyro that drifts away from what the wheels say, so vision has something to correct
+            gyro += chassis[2] * LOOP_PERIOD * 1.02;
+
+            estimator.update(time, gyro, distances, angles);
+            Pose2d expected = wpilib.updateWithTime(time, new Rotation2d(gyro), positions(distances, angles));
+            assertPose(expected, estimator, "odometry at " + time);
+
+            times[i] = time;
+            trueX[i] = estimator.getX() + 0.2 * Math.sin(i * 0.05);
+            trueY[i] = estimator.getY() - 0.1;
+            trueTheta[i] = estimator.getTheta() + 0.05;
+            if (i >= 5 && i % 7 == 0) {
+                // a camera frame from a few loops ago, at an odometry timestamp
+                int frame = i - 1 - i % 4;
+                double stdDev = 0.5 + (i % 3) * 0.4;
+                assertTrue(estimator.addVisionMeasurement(trueX[frame], trueY[frame], trueTheta[frame], times[frame],
+                    stdDev, stdDev, stdDev * 2));
+                wpilib.addVisionMeasurement(new Pose2d(trueX[frame], trueY[frame], new Rotation2d(trueTheta[frame])),
+                    times[frame], VecBuilder.fill(stdDev, stdDev, stdDev * 2));
+                assertPose(wpilib.getEstimatedPosition(), estimator, "vision at " + time);
+            }
+        }
+    }
+
+    private static SwerveModulePosition[] positions(double[] distances, double[] angles) {
+        SwerveModulePosition[] positions = new SwerveModulePosition[distances.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new SwerveModulePosition(distances[i], new Rotation2d(angles[i]));
+        }
+        return positions;
+    }
+
+    private static void assertPose(Pose2d expected, SwervePoseEstimator estimator, String message) {
+        assertEquals(expected.getX(), estimator.getX(), TOLERANCE, message);
+        assertEquals(expected.getY(), estimator.getY(), TOLERANCE, message);
+        assertEquals(0.0, expected.getRotation().minus(new Rotation2d(estimator.getTheta())).getRadians(), TOLERANCE, message);
+    }
+}
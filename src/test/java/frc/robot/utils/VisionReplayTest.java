@@ -0,0 +1,104 @@
+package frc.robot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import frc.robot.models.CameraConfig;
+import frc.robot.models.VisionFrame;
+import frc.robot.models.VisionFrameCodec;
+import frc.robot.models.VisionFrameFormat;
+import frc.robot.models.VisionObject;
+
+/** Replays small logs written by VisionRecorder, and a snapshot, and checks what comes out */
+class VisionReplayTest {
+    private static final int FRAMES = 6;
+
+    @TempDir
+    Path logs;
+
+    @Test
+    void replaysRecordedLog() throws IOException {
+        VisionRecorder recorder = new VisionRecorder(logs, 16, VisionRecorder.DropPolicy.DROP_NEWEST);
+        assertTrue(recorder.isAvailable());
+        VisionFrame frame = new VisionFrame();
+        int objects = 0;
+        int framesWithTags = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            // frame i sees i % 3 + 1 objects, alternating notes and tags
+            frame.count = i % 3 + 1;
+            for (int o = 0; o < frame.count; o++) {
+                String label = o % 2 == 0 ? "note" : "tag16h5: " + (o + 1);
+                set(frame, o, label, 10.0 * o, 0.0, 50.0 + i, 0.8);
+            }
+            frame.timestamp = 1.0 + i * 0.02;
+            frame.captureTimestamp = frame.timestamp - 0.05;
+            frame.sequence = i;
+            assertTrue(recorder.record(i % 2, frame, null));
+            objects += frame.count;
+            framesWithTags += frame.count > 1 ? 1 : 0;
+            if (i == 2) {
+                assertTrue(recorder.mark("auto start", frame.timestamp));
+            }
+        }
+        recorder.close();
+        assertEquals(FRAMES + 1, recorder.getRecordedCount());
+        assertEquals(0, recorder.getDroppedCount());
+
+        List<VisionReplay.RecordedFrame> frames = VisionReplay.load(List.of(logs), false);
+        assertEquals(FRAMES, frames.size(), "marks aren't frames");
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(i % 2, frames.get(i).camera);
+            assertEquals(1.0 + i * 0.02, frames.get(i).timestamp, 1e-9);
+            assertEquals(0.95 + i * 0.02, frames.get(i).captureTimestamp, 1e-9);
+        }
+
+        VisionReplay.Report binary = VisionReplay.replay(frames, new CameraConfig("Eclipse", VisionFrameFormat.BINARY), false);
+        assertEquals(0, binary.malformed);
+        assertEquals(objects, binary.objects);
+        assertEquals(2, binary.pipelines.size(), "one pipeline per camera");
+        assertEquals(framesWithTags, binary.hits[0], "frames with a tag");
+        assertEquals(FRAMES, binary.hits[1], "frames with a note");
+
+        // the JSON path sees the same objects
+        List<VisionReplay.RecordedFrame> jsonFrames = VisionReplay.load(List.of(logs), true);
+        VisionReplay.Report json = VisionReplay.replay(jsonFrames, new CameraConfig("Eclipse", VisionFrameFormat.JSON), true);
+        assertEquals(0, json.malformed);
+        assertEquals(objects, json.objects);
+        assertEquals(framesWithTags, json.hits[0]);
+    }
+
+    @Test
+    void replaysSnapshot() throws IOException {
+        Path snapshot = logs.resolve("snapshot.json");
+        Files.writeString(snapshot, "[{\"objectLabel\": \"note\", \"x\": 2, \"y\": 8, \"z\": 43, \"confidence\": 0.78},"
+            + " {\"objectLabel\": \"note\", \"x\": 0, \"y\": 0, \"z\": 0, \"confidence\": 0.5},"
+            + " {\"objectLabel\": \"tag36h11: 4\", \"x\": 14.0, \"y\": -2.3, \"z\": 36.5, \"confidence\": 1.0}]");
+
+        List<VisionReplay.RecordedFrame> frames = VisionReplay.load(List.of(snapshot), false);
+        assertEquals(1, frames.size());
+        VisionReplay.Report report = VisionReplay.replay(frames, new CameraConfig("Eclipse", VisionFrameFormat.BINARY), false);
+        assertEquals(0, report.malformed);
+        assertEquals(2, report.objects, "the zero-depth note is dropped");
+        assertEquals(1, report.hits[0]);
+        assertEquals(1, report.hits[1]);
+    }
+
+    private static void set(VisionFrame frame, int index, String label, double x, double y, double z, double confidence) {
+        VisionObject vo = frame.objects[index];
+        vo.objectLabel = label;
+        vo.x = x;
+        vo.y = y;
+        vo.z = z;
+        vo.confidence = confidence;
+        frame.classIds[index] = VisionFrameCodec.classIdOf(label);
+        frame.tagIds[index] = VisionFrameCodec.tagIdOf(label);
+    }
+}
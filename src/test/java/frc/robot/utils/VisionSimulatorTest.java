@@ -0,0 +1,130 @@
+package frc.robot.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.RawSubscriber;
+import edu.wpi.first.networktables.StringSubscriber;
+import edu.wpi.first.networktables.TimestampedRaw;
+import edu.wpi.first.networktables.TimestampedString;
+import frc.robot.Constants;
+import frc.robot.models.CameraConfig;
+import frc.robot.models.VisionFrameFormat;
+import frc.robot.models.VisionObject;
+
+/**
+ * Publishes frames from a VisionSimulator to a local NetworkTables instance and reads them back
+ * into a VisionPipeline, as ObjectTrackerSubsystem would.
+ */
+class VisionSimulatorTest {
+    private static final int FRAMES = 40;
+    private static final int OBJECTS = 6;
+
+    private NetworkTableInstance inst;
+    private VisionSimulator.Settings settings;
+
+    @BeforeEach
+    void setUp() {
+        inst = NetworkTableInstance.create();
+        settings = new VisionSimulator.Settings();
+        settings.objects = OBJECTS;
+        settings.labels = new String[] {"note", "tag36h11"};
+        settings.malformedRate = 0.25;
+        settings.seed = 7;
+    }
+
+    @AfterEach
+    void tearDown() {
+        inst.close();
+    }
+
+    @Test
+    void jsonFramesHoldTheSimulatedObjects() {
+        settings.binary = false;
+        NetworkTable table = inst.getTable("MonsterVision");
+        StringSubscriber subscriber = table.getStringTopic("ObjectTracker-" + settings.source).subscribe(
+            "", PubSubOption.keepDuplicates(true), PubSubOption.pollStorage(FRAMES));
+        VisionSimulator simulator = publishFrames();
+        VisionPipeline pipeline = new VisionPipeline(new CameraConfig(settings.source, VisionFrameFormat.JSON), null);
+
+        TimestampedString[] updates = subscriber.readQueue();
+        assertEquals(FRAMES, updates.length);
+        int parsed = 0;
+        for (TimestampedString update : updates) {
+            if (pipeline.ingestJson(update.value, update.timestamp * 1.0e-6)) {
+                parsed++;
+                checkObjects(pipeline);
+            }
+        }
+        checkCounts(simulator, pipeline, parsed);
+    }
+
+    @Test
+    void binaryFramesHoldTheSimulatedObjects() {
+        settings.binary = true;
+        NetworkTable table = inst.getTable("MonsterVision");
+        RawSubscriber subscriber = table.getRawTopic("ObjectTrackerBinary-" + settings.source).subscribe(
+            "raw", new byte[0], PubSubOption.keepDuplicates(true), PubSubOption.pollStorage(FRAMES));
+        VisionSimulator simulator = publishFrames();
+        VisionPipeline pipeline = new VisionPipeline(new CameraConfig(settings.source, VisionFrameFormat.BINARY), null);
+
+        TimestampedRaw[] updates = subscriber.readQueue();
+        assertEquals(FRAMES, updates.length);
+        int parsed = 0;
+        for (TimestampedRaw update : updates) {
+            if (pipeline.ingestBinary(update.value, update.timestamp * 1.0e-6)) {
+                parsed++;
+                checkObjects(pipeline);
+                // captured the simulated latency before it was published
+                assertEquals(settings.latency, update.timestamp * 1.0e-6 - pipeline.getLatestFrame().captureTimestamp, 0.01);
+            }
+        }
+        checkCounts(simulator, pipeline, parsed);
+    }
+
+    /** Steps the simulator and publishes a frame at a time, without its thread */
+    private VisionSimulator publishFrames() {
+        VisionSimulator simulator = new VisionSimulator(inst, settings);
+        for (int i = 0; i < FRAMES; i++) {
+            simulator.step(1.0 / settings.fps);
+            simulator.publish(i);
+        }
+        return simulator;
+    }
+
+    /** Every object the simulator has is in the frame, with its label and inside its box */
+    private static void checkObjects(VisionPipeline pipeline) {
+        assertEquals(OBJECTS, pipeline.numberOfObjects());
+        VisionObject[] objects = pipeline.getFoundObjects();
+        for (int i = 0; i < OBJECTS; i++) {
+            VisionObject vo = objects[i];
+            if (i % 2 == 0) {
+                assertEquals("note", vo.objectLabel);
+            } else {
+                assertTrue(vo.objectLabel.startsWith("tag36h11: "), vo.objectLabel);
+                assertEquals(i / 2 + 1, vo.getAprilTagID());
+            }
+            double forward = vo.z / Constants.VISION_UNITS_PER_METER;
+            double left = -vo.x / Constants.VISION_UNITS_PER_METER;
+            assertTrue(forward > 0.4 && forward < 6.1, "forward " + forward);
+            assertTrue(Math.abs(left) < 3.1, "left " + left);
+        }
+        assertEquals(OBJECTS / 2, pipeline.getObjectsOfType("note").length);
+        assertEquals(OBJECTS / 2, pipeline.getObjectsOfType("tag").length);
+    }
+
+    /** Every frame arrived, and exactly the ones sent truncated were rejected */
+    private static void checkCounts(VisionSimulator simulator, VisionPipeline pipeline, int parsed) {
+        assertEquals(FRAMES, simulator.getPublishedCount());
+        assertTrue(simulator.getMalformedCount() > 0, "some frames should have been sent truncated");
+        assertEquals(FRAMES - simulator.getMalformedCount(), parsed);
+        assertEquals(simulator.getMalformedCount(), pipeline.getMalformedFrameCount());
+    }
+}